@@ -0,0 +1,158 @@
+package org.lazywizard.console;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mirrors console output to Starsector.log from a background thread, so large listings and exception spam don't
+ * block the game thread on log4j. Messages are held in a bounded queue; if the writer falls too far behind, messages
+ * are dropped according to the {@link DropPolicy} and counted instead.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+class AsyncLogWriter implements Runnable
+{
+    private static final int MAX_BATCH_SIZE = 256;
+    private final Logger log;
+    private final BlockingQueue<LogEntry> queue;
+    private final DropPolicy dropPolicy;
+    private final AtomicLong totalDropped = new AtomicLong(0);
+    private final AtomicLong unreportedDrops = new AtomicLong(0);
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+
+    enum DropPolicy
+    {
+        /** When the queue is full, discard the message being logged. */
+        DROP_NEWEST,
+        /** When the queue is full, discard the oldest queued message to make room. */
+        DROP_OLDEST
+    }
+
+    AsyncLogWriter(Logger log, int queueSize, DropPolicy dropPolicy)
+    {
+        this.log = log;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.dropPolicy = dropPolicy;
+
+        thread = new Thread(this, "Console-LogWriter");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Queues a message to be logged. Never blocks.
+     */
+    void log(Level level, Object message, @Nullable Throwable ex)
+    {
+        // Don't bother queueing messages that would be filtered out anyway
+        if (!log.isEnabledFor(level))
+        {
+            return;
+        }
+
+        // Messages are converted here, as they may be mutable and not safe to read from another thread
+        final LogEntry entry = new LogEntry(level, String.valueOf(message), ex);
+        if (queue.offer(entry))
+        {
+            return;
+        }
+
+        if (dropPolicy == DropPolicy.DROP_OLDEST)
+        {
+            queue.poll();
+            queue.offer(entry);
+        }
+
+        totalDropped.incrementAndGet();
+        unreportedDrops.incrementAndGet();
+    }
+
+    long getTotalDropped()
+    {
+        return totalDropped.get();
+    }
+
+    int getQueued()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Stops the writer thread once all queued messages have been written.
+     */
+    void shutdown()
+    {
+        isRunning = false;
+        thread.interrupt();
+    }
+
+    @Override
+    public void run()
+    {
+        final List<LogEntry> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (isRunning || !queue.isEmpty())
+        {
+            try
+            {
+                final LogEntry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null)
+                {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            }
+            catch (InterruptedException ex)
+            {
+                // Interrupted by shutdown(); write whatever is left, then exit
+                queue.drainTo(batch);
+            }
+
+            for (LogEntry entry : batch)
+            {
+                if (entry.ex == null)
+                {
+                    log.log(entry.level, entry.message);
+                }
+                else
+                {
+                    log.log(entry.level, entry.message, entry.ex);
+                }
+            }
+            batch.clear();
+
+            final long dropped = unreportedDrops.getAndSet(0);
+            if (dropped > 0)
+            {
+                log.warn("Dropped " + dropped + " console messages while the log was backed up ("
+                        + totalDropped.get() + " total)");
+            }
+        }
+    }
+
+    private static final class LogEntry
+    {
+        private final Level level;
+        private final String message;
+        private final Throwable ex;
+
+        private LogEntry(Level level, String message, @Nullable Throwable ex)
+        {
+            this.level = level;
+            this.message = message;
+            this.ex = ex;
+        }
+    }
+}
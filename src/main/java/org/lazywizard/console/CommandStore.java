@@ -1,6 +1,7 @@
 package org.lazywizard.console;
 
 import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.ModSpecAPI;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONArray;
@@ -57,7 +58,7 @@ public class CommandStore
         tags.clear();
         final JSONArray commandData = Global.getSettings().getMergedSpreadsheetDataForMod(
                 "command", CommonStrings.PATH_CSV, CommonStrings.MOD_ID);
-        final ClassLoader loader = Global.getSettings().getScriptClassLoader();
+        final ScriptCommandCache loader = new ScriptCommandCache(Global.getSettings().getScriptClassLoader());
         for (int i = 0; i < commandData.length(); i++)
         {
             // Defined here so we can use them in the catch block
@@ -125,6 +126,7 @@ public class CommandStore
             }
         }
 
+        loader.save();
         Log.info("Loaded commands: " + CollectionUtils.implode(getLoadedCommands()));
     }
 
@@ -438,9 +440,14 @@ public class CommandStore
         private final String name, syntax, help, source;
         private final List<String> tags;
 
-        // TODO: This can be done through the API now
         private static String filterModPath(String fullPath)
         {
+            final ModSpecAPI mod = ContentIndex.getModForPath(fullPath);
+            if (mod != null)
+            {
+                return "\\mods\\" + mod.getDirName() + "\\";
+            }
+
             try
             {
                 String modPath = fullPath.replace("/", "\\");
@@ -22,6 +22,16 @@ public class CommandUtils
 {
     private static final boolean ENABLE_TYPO_CORRECTION = true;
     private static final String COMBAT_PDATA_ID = "lw_console_plugins";
+    private static final int MAX_CACHED_WRAPS = 128;
+    private static final int MAX_CACHED_WRAP_LENGTH = 4_096;
+    private static final Map<WrapKey, String> WRAP_CACHE = new LinkedHashMap<WrapKey, String>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<WrapKey, String> eldest)
+        {
+            return size() > MAX_CACHED_WRAPS;
+        }
+    };
 
     /**
      * Returns normalized score, with 0.0 meaning no similarity at all,
@@ -335,16 +345,44 @@ public class CommandUtils
      */
     public static String indent(String message, int indentation, @Nullable String existingIndentation)
     {
+        return wrap(message, indentation, existingIndentation, true);
+    }
+
+    private static String wrap(String message, int indentation, @Nullable String existingIndentation,
+                               boolean useCache)
+    {
+        final float fontSize = Console.getFontSize();
+        float maxWidth = Console.getScrollbackWidth();
         if (existingIndentation != null)
         {
-            final float maxWidth = Console.getScrollbackWidth() - (Console.getFont().calcWidth(
-                    existingIndentation, Console.getFontSize()));
-            return Console.getFont().wrapString(message, Console.getFontSize(),
-                    maxWidth, Float.MAX_VALUE, indentation);
+            maxWidth -= Console.getFont().calcWidth(existingIndentation, fontSize);
+        }
+
+        // Huge messages are rarely repeated and would crowd everything else out of the cache
+        if (!useCache || message.length() > MAX_CACHED_WRAP_LENGTH)
+        {
+            return Console.getFont().wrapString(message, fontSize, maxWidth, Float.MAX_VALUE, indentation);
+        }
+
+        // Identical listings tend to be printed repeatedly, so don't pay for wrapping them more than once
+        final WrapKey key = new WrapKey(message, fontSize, maxWidth, indentation);
+        synchronized (WRAP_CACHE)
+        {
+            final String wrapped = WRAP_CACHE.get(key);
+            if (wrapped != null)
+            {
+                return wrapped;
+            }
+        }
+
+        final String wrapped = Console.getFont().wrapString(message, fontSize, maxWidth, Float.MAX_VALUE,
+                indentation);
+        synchronized (WRAP_CACHE)
+        {
+            WRAP_CACHE.put(key, wrapped);
         }
 
-        return Console.getFont().wrapString(message, Console.getFontSize(),
-                Console.getScrollbackWidth(), Float.MAX_VALUE, indentation);
+        return wrapped;
     }
 
     /**
@@ -362,6 +400,49 @@ public class CommandUtils
         return indent(message, indentation, null);
     }
 
+    /**
+     * Indents and word-wraps a series of lines to fit within the console's overlay. Each line is wrapped on its own
+     * as it is appended, so a large listing is never wrapped as a single block. Lines are not cached, as a single
+     * long listing would otherwise evict every other cached message.
+     *
+     * @param lines       The lines to be indented. Each entry is converted with {@link Object#toString()}.
+     * @param indentation The number of spaces to indent each line with.
+     * @param output      The {@link StringBuilder} the indented lines will be appended to, separated by newlines.
+     *
+     * @return {@code output}, for chaining.
+     *
+     * @since 3.0
+     */
+    public static StringBuilder indentLines(Iterable<?> lines, int indentation, StringBuilder output)
+    {
+        boolean first = true;
+        for (Object line : lines)
+        {
+            if (!first)
+            {
+                output.append('\n');
+            }
+
+            output.append(wrap(String.valueOf(line), indentation, null, false));
+            first = false;
+        }
+
+        return output;
+    }
+
+    /**
+     * Discards all cached word-wrapping results. Only needed if the console font itself is replaced.
+     *
+     * @since 3.0
+     */
+    public static void clearWrapCache()
+    {
+        synchronized (WRAP_CACHE)
+        {
+            WRAP_CACHE.clear();
+        }
+    }
+
     @Nullable
     public static FactionAPI findBestFactionMatch(String name)
     {
@@ -809,6 +890,58 @@ public class CommandUtils
         return token.getCargo();
     }
 
+    /**
+     * Identifies a wrapped message by a 64-bit hash and its length rather than the text itself, so cached keys don't
+     * keep large messages alive. The font size, width and indentation are included as they also affect the layout.
+     */
+    private static final class WrapKey
+    {
+        private final long messageHash;
+        private final float fontSize, maxWidth;
+        private final int length, indentation, hash;
+
+        private WrapKey(String message, float fontSize, float maxWidth, int indentation)
+        {
+            // FNV-1a, which is far less likely to collide than String.hashCode() across similar listings
+            long fnv = 0xcbf29ce484222325L;
+            for (int i = 0; i < message.length(); i++)
+            {
+                fnv ^= message.charAt(i);
+                fnv *= 0x100000001b3L;
+            }
+
+            this.messageHash = fnv;
+            this.length = message.length();
+            this.fontSize = fontSize;
+            this.maxWidth = maxWidth;
+            this.indentation = indentation;
+
+            int result = (int) (fnv ^ (fnv >>> 32));
+            result = 31 * result + length;
+            result = 31 * result + Float.floatToIntBits(fontSize);
+            result = 31 * result + Float.floatToIntBits(maxWidth);
+            result = 31 * result + indentation;
+            hash = result;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (this == other) return true;
+            if (!(other instanceof WrapKey)) return false;
+
+            final WrapKey key = (WrapKey) other;
+            return messageHash == key.messageHash && length == key.length && indentation == key.indentation
+                    && fontSize == key.fontSize && maxWidth == key.maxWidth;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
     private CommandUtils()
     {
     }
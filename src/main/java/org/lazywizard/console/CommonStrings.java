@@ -37,6 +37,24 @@ public class CommonStrings
      * @since 3.0
      */
     public static final String PATH_COMMON_DATA = "config/lw_console_settings.json";
+    /**
+     * The path to the file in common data that caches compiled bytecode for loose script commands.
+     *
+     * @since 3.0
+     */
+    public static final String PATH_SCRIPT_CACHE = "config/lw_console_script_cache.json";
+    /**
+     * The folder in common data that ExportMarkets writes its snapshots to.
+     *
+     * @since 3.0
+     */
+    public static final String PATH_EXPORTS = "lw_console_exports/";
+    /**
+     * The path to the file in common data that caches which mod added each spreadsheet row.
+     *
+     * @since 3.0
+     */
+    public static final String PATH_CONTENT_INDEX = "config/lw_console_content_index.json";
     /**
      * The path to runcode_imports.csv, used for setting custom imports for the
      * RunCode command.
@@ -36,10 +36,15 @@ public class Console
 {
     private static final Logger Log = Global.getLogger(Console.class);
     private static LazyFont font;
+    // If enabled, console output is mirrored to the log from a background thread
+    @Nullable private static AsyncLogWriter asyncLog = null;
     // Stores the output of the console until it can be displayed
     private static StringBuilder output = new StringBuilder();
+    // The most recent table shown by a command, until it can be displayed
+    private static ConsoleTable<?> pendingTable = null;
     private static final CircularArray<String> previousCommands = new CircularArray<>(100);
     private static CommandContext currentContext = CommandContext.COMBAT_MISSION;
+    @Nullable private static BaseCommand executingCommand = null;
 
     /**
      * Forces the console to reload its settings from the settings file.
@@ -63,11 +68,74 @@ public class Console
         {
             throw new RuntimeException("Failed to load sprite font!", ex);
         }
+        CommandUtils.clearWrapCache();
 
         // What level to log console output at
         final Level logLevel = Level.toLevel(settingsFile.getString("consoleLogLevel"), Level.WARN);
         Global.getLogger(Console.class).setLevel(logLevel);
         Global.getLogger(CommandStore.class).setLevel(logLevel);
+
+        // Optionally move logging of console output off of the game thread
+        if (asyncLog != null)
+        {
+            asyncLog.shutdown();
+            asyncLog = null;
+        }
+        if (settingsFile.optBoolean("asyncLogging", false))
+        {
+            AsyncLogWriter.DropPolicy dropPolicy;
+            try
+            {
+                dropPolicy = AsyncLogWriter.DropPolicy.valueOf(
+                        settingsFile.optString("asyncLogDropPolicy", "DROP_NEWEST").toUpperCase());
+            }
+            catch (IllegalArgumentException ex)
+            {
+                dropPolicy = AsyncLogWriter.DropPolicy.DROP_NEWEST;
+            }
+
+            asyncLog = new AsyncLogWriter(Log, settingsFile.optInt("asyncLogQueueSize", 1024), dropPolicy);
+        }
+    }
+
+    /**
+     * Returns how many console messages were not written to the log because the asynchronous log writer fell behind.
+     *
+     * @return The number of dropped log messages, or 0 if asynchronous logging is disabled.
+     *
+     * @since 3.0
+     */
+    public static long getDroppedLogMessages()
+    {
+        return (asyncLog == null ? 0 : asyncLog.getTotalDropped());
+    }
+
+    /**
+     * Returns whether console output is written to the log from a background thread.
+     *
+     * @return {@code true} if the "asyncLogging" setting is enabled, {@code false} otherwise.
+     *
+     * @since 3.0
+     */
+    public static boolean isAsyncLoggingEnabled()
+    {
+        return asyncLog != null;
+    }
+
+    private static void log(Level level, Object message, @Nullable Throwable ex)
+    {
+        if (asyncLog != null)
+        {
+            asyncLog.log(level, message, ex);
+        }
+        else if (ex != null)
+        {
+            Log.log(level, message, ex);
+        }
+        else
+        {
+            Log.log(level, message);
+        }
     }
 
     public static ConsoleSettings getSettings()
@@ -80,6 +148,21 @@ public class Console
         return font;
     }
 
+    /**
+     * Checks whether a command was run directly by the console in response to player input, as opposed to being
+     * instantiated and run by another mod.
+     *
+     * @param command The command instance to check.
+     *
+     * @return {@code true} if {@code command} is the command the console is currently executing.
+     *
+     * @since 3.0
+     */
+    public static boolean isExecutedByConsole(BaseCommand command)
+    {
+        return command == executingCommand;
+    }
+
     public static CommandContext getContext()
     {
         return currentContext;
@@ -126,7 +209,7 @@ public class Console
         output.append('\n').append(message);
 
         // Also add to Starsector's log
-        Log.log(logLevel, message);
+        log(logLevel, message, null);
     }
 
     /**
@@ -164,6 +247,44 @@ public class Console
         showMessage(CommandUtils.indent(message.toString(), indentation), Level.INFO);
     }
 
+    /**
+     * Displays a series of indented lines to the user. Unlike
+     * {@link #showIndentedMessage(String, Object, int)}, each line is word-wrapped
+     * individually as it is added, which is much cheaper for long listings.
+     *
+     * @param preamble    An optional argument; this part of the message will not be indented.
+     * @param lines       The lines to show, one per line. Each entry is converted with {@link Object#toString()}.
+     * @param indentation The number of spaces to indent each line with.
+     *
+     * @since 3.0
+     */
+    public static void showIndentedLines(@Nullable String preamble, Iterable<?> lines, int indentation)
+    {
+        if (preamble != null && !preamble.isEmpty())
+        {
+            showMessage(preamble);
+        }
+
+        showMessage(CommandUtils.indentLines(lines, indentation, new StringBuilder()), Level.INFO);
+    }
+
+    /**
+     * Displays a table of results to the user. In the console overlay the table is shown one page at a time, and
+     * the player can page through it and re-sort it by column. Elsewhere only the first page is shown.
+     * <p>
+     * Any messages shown before this table will be displayed first. Only one table can be pending at a time; showing
+     * another table before the first is displayed will replace it.
+     *
+     * @param table The table to show.
+     *
+     * @since 3.0
+     */
+    public static void showTable(ConsoleTable<?> table)
+    {
+        pendingTable = table;
+        Log.info("Showing table: " + table.getTitle() + " (" + table.getNumRows() + " rows)");
+    }
+
     private static String findClassSource(String className)
     {
         try
@@ -238,7 +359,7 @@ public class Console
         }
         else
         {
-            Log.error("Console ran into exception: ", ex);
+            log(Level.ERROR, "Console ran into exception: ", ex);
         }
 
         showMessage(stackTrace.toString(), Level.ERROR);
@@ -268,6 +389,7 @@ public class Console
         if ("clear".equals(com))
         {
             output.setLength(0);
+            pendingTable = null;
             ConsoleOverlay.clear();
             return CommandResult.SUCCESS;
         }
@@ -326,7 +448,16 @@ public class Console
             else
             {
                 final BaseCommand command = stored.getCommandClass().newInstance();
-                result = command.runCommand(args, context);
+                final BaseCommand previous = executingCommand;
+                executingCommand = command;
+                try
+                {
+                    result = command.runCommand(args, context);
+                }
+                finally
+                {
+                    executingCommand = previous;
+                }
             }
 
             if (result == CommandResult.BAD_SYNTAX
@@ -418,6 +549,11 @@ public class Console
         {
             output = new StringBuilder();
         }
+
+        if (pendingTable != null && listener.showTable(pendingTable))
+        {
+            pendingTable = null;
+        }
     }
 
     static void advance(ConsoleListener listener)
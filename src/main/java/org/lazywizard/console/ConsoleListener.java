@@ -6,4 +6,5 @@ interface ConsoleListener
 {
     CommandContext getContext();
     boolean showOutput(String output);
+    boolean showTable(ConsoleTable<?> table);
 }
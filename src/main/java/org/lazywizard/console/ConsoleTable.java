@@ -0,0 +1,372 @@
+package org.lazywizard.console;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.*;
+
+/**
+ * A table of command results that is formatted lazily, one page at a time. Displaying a table through
+ * {@link Console#showTable(ConsoleTable)} lets the player page through and re-sort the results in the console overlay
+ * without re-running the command, and rows that are never viewed are never formatted.
+ * <p>
+ * Implementations only need to supply {@link #getValue(Object, int)}, which is called for visible rows and when
+ * sorting or filtering by a column.
+ *
+ * @param <T> The type of object each row represents.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public abstract class ConsoleTable<T>
+{
+    private static final String COLUMN_SEPARATOR = "  ";
+    private final List<Column> columns;
+    private final NumberFormat integerFormat = NumberFormat.getIntegerInstance();
+    private final NumberFormat decimalFormat = new DecimalFormat("#,##0.0#");
+    private List<T> rows;
+    private String title;
+    private int sortColumn = -1;
+    private boolean sortAscending = true;
+
+    /**
+     * The type of data a column contains. Determines how its values are formatted and sorted.
+     *
+     * @since 3.0
+     */
+    public enum ColumnType
+    {
+        /**
+         * Values are shown with {@link Object#toString()} and sorted alphabetically, ignoring case.
+         *
+         * @since 3.0
+         */
+        TEXT,
+        /**
+         * Values must be {@link Number}s, and are shown as whole numbers with grouping separators.
+         *
+         * @since 3.0
+         */
+        INTEGER,
+        /**
+         * Values must be {@link Number}s, and are shown with up to two decimal places.
+         *
+         * @since 3.0
+         */
+        DECIMAL
+    }
+
+    /**
+     * A named, typed column in a {@link ConsoleTable}.
+     *
+     * @since 3.0
+     */
+    public static final class Column
+    {
+        private final String name;
+        private final ColumnType type;
+
+        public Column(String name, ColumnType type)
+        {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public ColumnType getType()
+        {
+            return type;
+        }
+    }
+
+    /**
+     * Creates a new table.
+     *
+     * @param title   The title shown above each page of the table. Can be {@code null}.
+     * @param rows    The objects each row of the table will be generated from. The list is copied.
+     * @param columns The columns of the table, in display order.
+     *
+     * @since 3.0
+     */
+    protected ConsoleTable(@Nullable String title, Collection<? extends T> rows, Column... columns)
+    {
+        if (columns.length == 0)
+        {
+            throw new IllegalArgumentException("A table must have at least one column!");
+        }
+
+        this.title = title;
+        this.rows = new ArrayList<>(rows);
+        this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
+    /**
+     * Returns the raw value of a cell. Only called for rows that are about to be displayed, and for every row when
+     * the table is sorted or filtered by a column.
+     *
+     * @param row    The object this row is generated from.
+     * @param column The index of the column the value is for.
+     *
+     * @return The value of the cell. {@link ColumnType#INTEGER} and {@link ColumnType#DECIMAL} columns must return a
+     *         {@link Number}. Can be {@code null}.
+     *
+     * @since 3.0
+     */
+    @Nullable
+    protected abstract Object getValue(T row, int column);
+
+    @Nullable
+    public String getTitle()
+    {
+        return title;
+    }
+
+    public void setTitle(@Nullable String title)
+    {
+        this.title = title;
+    }
+
+    public List<Column> getColumns()
+    {
+        return columns;
+    }
+
+    public int getNumRows()
+    {
+        return rows.size();
+    }
+
+    public int getNumPages(int pageSize)
+    {
+        return Math.max(1, (rows.size() + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * @return The index of the column the table is currently sorted by, or -1 if it hasn't been sorted.
+     *
+     * @since 3.0
+     */
+    public int getSortColumn()
+    {
+        return sortColumn;
+    }
+
+    public boolean isSortAscending()
+    {
+        return sortAscending;
+    }
+
+    private String formatValue(@Nullable Object value, Column column)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+
+        switch (column.type)
+        {
+            case INTEGER:
+                return integerFormat.format(((Number) value).longValue());
+            case DECIMAL:
+                return decimalFormat.format(((Number) value).doubleValue());
+            default:
+                return value.toString();
+        }
+    }
+
+    /**
+     * Removes all rows that don't contain {@code filter} (ignoring case) in any of their columns. Cells are matched
+     * on their raw values rather than their formatted text, so filtering a large table stays cheap.
+     *
+     * @param filter The text to search for.
+     *
+     * @since 3.0
+     */
+    public void retainMatching(String filter)
+    {
+        filter = filter.toLowerCase();
+        final List<T> matching = new ArrayList<>();
+        for (T row : rows)
+        {
+            for (int i = 0; i < columns.size(); i++)
+            {
+                final Object value = getValue(row, i);
+                if (value != null && value.toString().toLowerCase().contains(filter))
+                {
+                    matching.add(row);
+                    break;
+                }
+            }
+        }
+
+        rows = matching;
+    }
+
+    /**
+     * Removes all rows after the first {@code maxRows}, in the table's current order.
+     *
+     * @param maxRows How many rows to keep.
+     *
+     * @since 3.0
+     */
+    public void truncate(int maxRows)
+    {
+        if (rows.size() > maxRows)
+        {
+            rows = new ArrayList<>(rows.subList(0, Math.max(0, maxRows)));
+        }
+    }
+
+    /**
+     * Sorts the table by the values of a single column. Only that column's values are generated.
+     *
+     * @param column    The index of the column to sort by.
+     * @param ascending Whether to sort in ascending or descending order.
+     *
+     * @since 3.0
+     */
+    public void sortBy(int column, boolean ascending)
+    {
+        final ColumnType type = columns.get(column).type;
+        final int numRows = rows.size();
+        final Object[] keys = new Object[numRows];
+        final Integer[] order = new Integer[numRows];
+        for (int i = 0; i < numRows; i++)
+        {
+            keys[i] = getValue(rows.get(i), column);
+            order[i] = i;
+        }
+
+        final int direction = (ascending ? 1 : -1);
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer o1, Integer o2)
+            {
+                final Object k1 = keys[o1], k2 = keys[o2];
+
+                // Empty cells always go last, regardless of sort direction
+                if (k1 == null) return (k2 == null ? 0 : 1);
+                if (k2 == null) return -1;
+
+                if (type != ColumnType.TEXT)
+                {
+                    return direction * Double.compare(((Number) k1).doubleValue(), ((Number) k2).doubleValue());
+                }
+
+                return direction * String.CASE_INSENSITIVE_ORDER.compare(k1.toString(), k2.toString());
+            }
+        });
+
+        final List<T> sorted = new ArrayList<>(numRows);
+        for (Integer index : order)
+        {
+            sorted.add(rows.get(index));
+        }
+
+        rows = sorted;
+        sortColumn = column;
+        sortAscending = ascending;
+    }
+
+    /**
+     * Sorts the table by a column, reversing the sort order if the table is already sorted by that column.
+     *
+     * @param column The index of the column to sort by.
+     *
+     * @since 3.0
+     */
+    public void toggleSort(int column)
+    {
+        sortBy(column, (column != sortColumn || !sortAscending));
+    }
+
+    private static void appendPadded(StringBuilder sb, String text, int width)
+    {
+        sb.append(text);
+        for (int i = text.length(); i < width; i++)
+        {
+            sb.append(' ');
+        }
+    }
+
+    /**
+     * Formats a single page of the table, including its title and column headers.
+     *
+     * @param page     The page to format, starting at 0.
+     * @param pageSize How many rows are on each page.
+     *
+     * @return The formatted page. Column widths are fitted to the rows on this page only.
+     *
+     * @since 3.0
+     */
+    public String formatPage(int page, int pageSize)
+    {
+        final int numColumns = columns.size();
+        final int first = Math.min(page * pageSize, rows.size()),
+                last = Math.min(first + pageSize, rows.size());
+
+        // Only the rows on this page are ever converted to strings
+        final String[][] cells = new String[last - first][numColumns];
+        final int[] widths = new int[numColumns];
+        for (int i = 0; i < numColumns; i++)
+        {
+            widths[i] = columns.get(i).name.length() + (i == sortColumn ? 2 : 0);
+        }
+        for (int row = first; row < last; row++)
+        {
+            final T data = rows.get(row);
+            for (int i = 0; i < numColumns; i++)
+            {
+                final String cell = formatValue(getValue(data, i), columns.get(i));
+                cells[row - first][i] = cell;
+                widths[i] = Math.max(widths[i], cell.length());
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder(64 * (cells.length + 3));
+        if (title != null && !title.isEmpty())
+        {
+            sb.append(title).append('\n');
+        }
+
+        // Column headers, with the sort direction shown on the sorted column
+        int totalWidth = 0;
+        for (int i = 0; i < numColumns; i++)
+        {
+            String header = columns.get(i).name;
+            if (i == sortColumn)
+            {
+                header += (sortAscending ? " +" : " -");
+            }
+
+            if (i > 0) sb.append(COLUMN_SEPARATOR);
+            if (i < numColumns - 1) appendPadded(sb, header, widths[i]);
+            else sb.append(header);
+            totalWidth += widths[i] + (i > 0 ? COLUMN_SEPARATOR.length() : 0);
+        }
+        sb.append('\n');
+        for (int i = 0; i < totalWidth; i++)
+        {
+            sb.append('-');
+        }
+
+        for (String[] row : cells)
+        {
+            sb.append('\n');
+            for (int i = 0; i < numColumns; i++)
+            {
+                if (i > 0) sb.append(COLUMN_SEPARATOR);
+                if (i < numColumns - 1) appendPadded(sb, row[i], widths[i]);
+                else sb.append(row[i]);
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,411 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.ModSpecAPI;
+import com.fs.starfarer.api.SettingsAPI;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+
+/**
+ * Records which mod added (or last replaced) each row of the core spreadsheets, so questions like "which mod added
+ * this hull?" or "what did this mod add?" don't require re-merging the spreadsheets.
+ * <p>
+ * The index is built once and saved to common data along with the game version, the list of enabled mods, and a hash
+ * of each tracked spreadsheet those mods contain. Later sessions with the same mods and unchanged spreadsheets reuse
+ * the saved index. Spreadsheets are merged one at a time on the calling thread, as the game's spreadsheet loading
+ * isn't thread-safe.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public final class ContentIndex
+{
+    private static final Logger Log = Global.getLogger(ContentIndex.class);
+    /**
+     * The mod ID used for rows that weren't added by any enabled mod.
+     *
+     * @since 3.0
+     */
+    public static final String CORE_ID = "starsector-core";
+    private static ContentIndex instance = null;
+    private final String fingerprint;
+    private final Map<Category, Map<String, String>> sources = new EnumMap<>(Category.class);
+    private final Map<Category, Map<String, String>> lowerIds = new EnumMap<>(Category.class);
+    private final Map<Category, Map<String, List<String>>> rowsByMod = new EnumMap<>(Category.class);
+
+    /**
+     * The spreadsheets tracked by the index.
+     *
+     * @since 3.0
+     */
+    public enum Category
+    {
+        HULLS("data/hulls/ship_data.csv", "Hulls"),
+        WINGS("data/hulls/wing_data.csv", "Wings"),
+        WEAPONS("data/weapons/weapon_data.csv", "Weapons"),
+        HULLMODS("data/hullmods/hull_mods.csv", "Hullmods"),
+        COMMODITIES("data/campaign/commodities.csv", "Commodities"),
+        SPECIAL_ITEMS("data/campaign/special_items.csv", "Special items"),
+        INDUSTRIES("data/campaign/industries.csv", "Industries"),
+        MARKET_CONDITIONS("data/campaign/market_conditions.csv", "Market conditions");
+
+        private final String csvPath, displayName;
+
+        Category(String csvPath, String displayName)
+        {
+            this.csvPath = csvPath;
+            this.displayName = displayName;
+        }
+
+        public String getCsvPath()
+        {
+            return csvPath;
+        }
+
+        public String getDisplayName()
+        {
+            return displayName;
+        }
+    }
+
+    /**
+     * Returns the index for the currently enabled mods, loading or building it if necessary.
+     *
+     * @since 3.0
+     */
+    public static synchronized ContentIndex getIndex()
+    {
+        final String fingerprint = getModFingerprint();
+        if (instance == null || !instance.fingerprint.equals(fingerprint))
+        {
+            final long startTime = System.nanoTime();
+            final String contentFingerprint = getContentFingerprint(fingerprint);
+            ContentIndex index = load(fingerprint, contentFingerprint);
+            if (index == null)
+            {
+                index = build(fingerprint);
+                index.save(contentFingerprint);
+            }
+
+            instance = index;
+            Log.info("Loaded content index in " + (System.nanoTime() - startTime) / 1_000_000 + "ms");
+        }
+
+        return instance;
+    }
+
+    /**
+     * Discards the index, including the copy in common data, so it is rebuilt from the spreadsheets when next used.
+     *
+     * @since 3.0
+     */
+    public static synchronized void clear()
+    {
+        instance = null;
+        try
+        {
+            Global.getSettings().writeTextFileToCommon(CommonStrings.PATH_CONTENT_INDEX, "");
+        }
+        catch (Exception ex)
+        {
+            Log.warn("Failed to clear saved content index", ex);
+        }
+    }
+
+    /**
+     * @return A string that changes whenever the game version or the enabled mods (or their versions) change.
+     */
+    static String getModFingerprint()
+    {
+        final SettingsAPI settings = Global.getSettings();
+        final StringBuilder sb = new StringBuilder(settings.getVersionString());
+        for (ModSpecAPI mod : settings.getModManager().getEnabledModsCopy())
+        {
+            sb.append('|').append(mod.getId()).append(':').append(mod.getVersion());
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Spreadsheets can be edited without changing a mod's version, so the saved index also checks the size and hash of
+     * every tracked spreadsheet that each enabled mod contains. Reading them is still far cheaper than merging them.
+     */
+    private static String getContentFingerprint(String modFingerprint)
+    {
+        final SettingsAPI settings = Global.getSettings();
+        final StringBuilder sb = new StringBuilder(modFingerprint);
+        for (ModSpecAPI mod : settings.getModManager().getEnabledModsCopy())
+        {
+            for (Category category : Category.values())
+            {
+                final String csv;
+                try
+                {
+                    csv = settings.loadText(category.csvPath, mod.getId());
+                }
+                catch (Exception ex)
+                {
+                    // This mod doesn't have this spreadsheet
+                    continue;
+                }
+
+                sb.append('|').append(mod.getId()).append('/').append(category.name()).append(':')
+                        .append(csv.length()).append(':').append(Integer.toHexString(csv.hashCode()));
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static String normalizePath(String path)
+    {
+        String normalized = path.replace('\\', '/').toLowerCase();
+        while (normalized.endsWith("/")) normalized = normalized.substring(0, normalized.length() - 1);
+        return normalized;
+    }
+
+    /**
+     * Finds the enabled mod a file belongs to.
+     *
+     * @param path The full path of a file, such as the {@code fs_rowSource} of a spreadsheet row.
+     *
+     * @return The mod whose folder contains {@code path}, or {@code null} if it's a core file or isn't in an enabled
+     *         mod.
+     *
+     * @since 3.0
+     */
+    @Nullable
+    public static ModSpecAPI getModForPath(String path)
+    {
+        final String normalized = normalizePath(path);
+        for (ModSpecAPI mod : Global.getSettings().getModManager().getEnabledModsCopy())
+        {
+            if (normalized.startsWith(normalizePath(mod.getPath()) + "/"))
+            {
+                return mod;
+            }
+        }
+
+        return null;
+    }
+
+    private ContentIndex(String fingerprint)
+    {
+        this.fingerprint = fingerprint;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Building">
+    private static ContentIndex build(String fingerprint)
+    {
+        // Map each mod's folder (both its full path and its name) to its ID once, rather than comparing every row
+        // against every mod
+        final Map<String, String> modsByPath = new HashMap<>();
+        for (ModSpecAPI mod : Global.getSettings().getModManager().getEnabledModsCopy())
+        {
+            modsByPath.put(normalizePath(mod.getPath()), mod.getId());
+            modsByPath.put(mod.getDirName().toLowerCase(), mod.getId());
+        }
+
+        final ContentIndex index = new ContentIndex(fingerprint);
+        for (Category category : Category.values())
+        {
+            Map<String, String> rows;
+            try
+            {
+                rows = readSources(category.csvPath, modsByPath);
+            }
+            catch (Exception ex)
+            {
+                Log.error("Failed to index " + category.csvPath, ex);
+                rows = Collections.emptyMap();
+            }
+
+            index.addCategory(category, rows);
+        }
+
+        return index;
+    }
+
+    private static Map<String, String> readSources(String csvPath, Map<String, String> modsByPath) throws Exception
+    {
+        final JSONArray csv = Global.getSettings().getMergedSpreadsheetDataForMod("id", csvPath, CORE_ID);
+        final Map<String, String> sources = new HashMap<>(csv.length() * 2);
+        final Map<String, String> resolved = new HashMap<>();
+        final String suffix = "/" + csvPath.toLowerCase();
+        for (int i = 0; i < csv.length(); i++)
+        {
+            final JSONObject row = csv.getJSONObject(i);
+            final String id = row.optString("id", "");
+            if (id.isEmpty())
+            {
+                continue;
+            }
+
+            // Rows from the same file share a source, so each file only needs to be resolved once
+            final String source = normalizePath(row.optString("fs_rowSource", ""));
+            String modId = resolved.get(source);
+            if (modId == null)
+            {
+                final String root = (source.endsWith(suffix)
+                        ? source.substring(0, source.length() - suffix.length()) : source);
+                modId = modsByPath.get(root);
+                if (modId == null) modId = modsByPath.get(root.substring(root.lastIndexOf('/') + 1));
+                if (modId == null) modId = CORE_ID;
+                resolved.put(source, modId);
+            }
+
+            sources.put(id, modId);
+        }
+
+        return sources;
+    }
+
+    private void addCategory(Category category, Map<String, String> rows)
+    {
+        final Map<String, String> lower = new HashMap<>(rows.size() * 2);
+        final Map<String, List<String>> byMod = new HashMap<>();
+        for (Map.Entry<String, String> row : rows.entrySet())
+        {
+            lower.put(row.getKey().toLowerCase(), row.getKey());
+            List<String> added = byMod.get(row.getValue());
+            if (added == null)
+            {
+                added = new ArrayList<>();
+                byMod.put(row.getValue(), added);
+            }
+
+            added.add(row.getKey());
+        }
+
+        for (List<String> added : byMod.values())
+        {
+            Collections.sort(added, String.CASE_INSENSITIVE_ORDER);
+        }
+
+        sources.put(category, rows);
+        lowerIds.put(category, lower);
+        rowsByMod.put(category, byMod);
+    }
+
+    @Nullable
+    private static ContentIndex load(String fingerprint, String contentFingerprint)
+    {
+        try
+        {
+            final String raw = Global.getSettings().readTextFileFromCommon(CommonStrings.PATH_CONTENT_INDEX);
+            if (raw.trim().isEmpty())
+            {
+                return null;
+            }
+
+            final JSONObject json = new JSONObject(raw);
+            if (!contentFingerprint.equals(json.optString("fingerprint")))
+            {
+                return null;
+            }
+
+            final ContentIndex index = new ContentIndex(fingerprint);
+            final JSONObject categories = json.getJSONObject("categories");
+            for (Category category : Category.values())
+            {
+                final JSONObject saved = categories.getJSONObject(category.name());
+                final Map<String, String> rows = new HashMap<>(saved.length() * 2);
+                for (Iterator<?> iter = saved.keys(); iter.hasNext(); )
+                {
+                    final String id = (String) iter.next();
+                    rows.put(id, saved.getString(id));
+                }
+
+                index.addCategory(category, rows);
+            }
+
+            return index;
+        }
+        catch (Exception ex)
+        {
+            Log.warn("Failed to load saved content index, it will be rebuilt", ex);
+            return null;
+        }
+    }
+
+    private void save(String contentFingerprint)
+    {
+        try
+        {
+            final JSONObject categories = new JSONObject();
+            for (Map.Entry<Category, Map<String, String>> entry : sources.entrySet())
+            {
+                categories.put(entry.getKey().name(), new JSONObject(entry.getValue()));
+            }
+
+            Global.getSettings().writeTextFileToCommon(CommonStrings.PATH_CONTENT_INDEX, new JSONObject()
+                    .put("fingerprint", contentFingerprint).put("categories", categories).toString());
+        }
+        catch (Exception ex)
+        {
+            Log.warn("Failed to save content index", ex);
+        }
+    }
+    //</editor-fold>
+
+    /**
+     * @return The IDs of every row in a spreadsheet that a mod added or replaced, sorted alphabetically.
+     *
+     * @since 3.0
+     */
+    public List<String> getRowsAddedByMod(Category category, String modId)
+    {
+        final List<String> rows = rowsByMod.get(category).get(modId);
+        return (rows == null ? Collections.<String>emptyList() : Collections.unmodifiableList(rows));
+    }
+
+    /**
+     * @return The ID of the mod that added (or last replaced) a row, {@link #CORE_ID} for vanilla rows, or
+     *         {@code null} if no row with that ID exists.
+     *
+     * @since 3.0
+     */
+    @Nullable
+    public String getSourceMod(Category category, String id)
+    {
+        return sources.get(category).get(id);
+    }
+
+    /**
+     * @return An unmodifiable map of every row ID in a spreadsheet to the ID of the mod that added it.
+     *
+     * @since 3.0
+     */
+    public Map<String, String> getSourceMods(Category category)
+    {
+        return Collections.unmodifiableMap(sources.get(category));
+    }
+
+    /**
+     * Finds every spreadsheet with a row matching an ID, ignoring case.
+     *
+     * @return A map of each matching category to the properly capitalized row ID and the ID of the mod that added it.
+     *
+     * @since 3.0
+     */
+    public Map<Category, Map.Entry<String, String>> findSourceMods(String id)
+    {
+        final String lower = id.toLowerCase();
+        final Map<Category, Map.Entry<String, String>> found = new EnumMap<>(Category.class);
+        for (Category category : Category.values())
+        {
+            final String rowId = lowerIds.get(category).get(lower);
+            if (rowId != null)
+            {
+                found.put(category, new AbstractMap.SimpleImmutableEntry<>(rowId, sources.get(category).get(rowId)));
+            }
+        }
+
+        return found;
+    }
+}
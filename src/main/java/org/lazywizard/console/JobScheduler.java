@@ -0,0 +1,341 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.EveryFrameScript;
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.SectorAPI;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs long campaign tasks a little at a time over many frames, so commands that touch every market, location or
+ * spec in a large sector don't freeze the game.
+ * <p>
+ * Jobs are driven by a single transient script, and only last as long as the current save is loaded. Jobs can only be
+ * submitted while the player is in the campaign itself, as the script doesn't run while the campaign is paused for
+ * combat. Each job gets
+ * its own per-frame time budget, and is told to do one small step of work at a time until the budget runs out.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public final class JobScheduler
+{
+    private static final Logger Log = Global.getLogger(JobScheduler.class);
+    /**
+     * The per-frame time budget used by jobs that don't specify their own, in milliseconds.
+     *
+     * @since 3.0
+     */
+    public static final int DEFAULT_BUDGET_MILLIS = 2;
+    private static SchedulerScript scheduler = null;
+    private static int nextId = 1;
+
+    private JobScheduler()
+    {
+    }
+
+    /**
+     * @return The script running jobs for the current sector, or {@code null} if there isn't one. A script left over
+     *         from a previously loaded save is dropped here, so its jobs don't keep that sector in memory.
+     */
+    @Nullable
+    private static SchedulerScript getActiveScheduler()
+    {
+        if (scheduler != null && (scheduler.isDone() || scheduler.sector.get() != Global.getSector()))
+        {
+            scheduler = null;
+        }
+
+        return scheduler;
+    }
+
+    private static SchedulerScript getScheduler()
+    {
+        if (getActiveScheduler() == null)
+        {
+            final SectorAPI sector = Global.getSector();
+            scheduler = new SchedulerScript(sector);
+            sector.addTransientScript(scheduler);
+        }
+
+        return scheduler;
+    }
+
+    /**
+     * Queues a job, starting it next frame. Must be called while a campaign is loaded.
+     *
+     * @return The ID of the job, used by {@link #cancel(int)}.
+     *
+     * @since 3.0
+     */
+    public static int submit(Job job)
+    {
+        if (job.id != 0)
+        {
+            throw new IllegalStateException("Job '" + job.name + "' has already been submitted!");
+        }
+
+        job.id = nextId++;
+        getScheduler().jobs.add(job);
+        return job.id;
+    }
+
+    /**
+     * @return Every job that hasn't finished yet, in the order they were submitted.
+     *
+     * @since 3.0
+     */
+    public static List<Job> getJobs()
+    {
+        final SchedulerScript active = getActiveScheduler();
+        if (active == null)
+        {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(new ArrayList<>(active.jobs));
+    }
+
+    /**
+     * Stops a job before its next step. Work it has already done is not undone.
+     *
+     * @return {@code true} if a running job with this ID was found.
+     *
+     * @since 3.0
+     */
+    public static boolean cancel(int id)
+    {
+        for (Job job : getJobs())
+        {
+            if (job.id == id && !job.isDone())
+            {
+                job.isCancelled = true;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops every running job.
+     *
+     * @return How many jobs were cancelled.
+     *
+     * @since 3.0
+     */
+    public static int cancelAll()
+    {
+        int total = 0;
+        for (Job job : getJobs())
+        {
+            if (!job.isDone())
+            {
+                job.isCancelled = true;
+                total++;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * A resumable task, split into steps that are each short enough to run several times in a single frame.
+     *
+     * @since 3.0
+     */
+    public abstract static class Job
+    {
+        private final String name;
+        private final long budgetNanos;
+        private int id = 0, lastReportedQuarter = 0;
+        private boolean isFinished = false, isCancelled = false, isWaiting = false;
+
+        /**
+         * @param name A short description of the job, shown in progress messages.
+         *
+         * @since 3.0
+         */
+        protected Job(String name)
+        {
+            this(name, DEFAULT_BUDGET_MILLIS);
+        }
+
+        /**
+         * @param name         A short description of the job, shown in progress messages.
+         * @param budgetMillis How long the job may run each frame. At least one step always runs.
+         *
+         * @since 3.0
+         */
+        protected Job(String name, int budgetMillis)
+        {
+            this.name = name;
+            this.budgetNanos = budgetMillis * 1_000_000L;
+        }
+
+        /**
+         * Does the next small piece of work.
+         *
+         * @return {@code true} once there is nothing left to do.
+         *
+         * @since 3.0
+         */
+        protected abstract boolean step();
+
+        /**
+         * @return How much of the job is done, from 0 to 1, or a negative number if unknown. Progress is reported to
+         *         the player at every quarter.
+         *
+         * @since 3.0
+         */
+        public float getProgress()
+        {
+            return -1f;
+        }
+
+        /**
+         * Called once after the last step. Jobs should report their results here.
+         *
+         * @since 3.0
+         */
+        protected void onFinished()
+        {
+        }
+
+        /**
+         * Called instead of {@link #onFinished()} if the job was cancelled or a step threw an exception.
+         *
+         * @since 3.0
+         */
+        protected void onCancelled()
+        {
+            Console.showMessage("Cancelled " + name + ".");
+        }
+
+        /**
+         * Skips the rest of this frame, for jobs that need to wait on something (such as the garbage collector)
+         * before continuing.
+         *
+         * @since 3.0
+         */
+        protected final void waitForNextFrame()
+        {
+            isWaiting = true;
+        }
+
+        /**
+         * @since 3.0
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @since 3.0
+         */
+        public int getId()
+        {
+            return id;
+        }
+
+        /**
+         * @since 3.0
+         */
+        public boolean isDone()
+        {
+            return isFinished || isCancelled;
+        }
+
+        private boolean advance()
+        {
+            if (isCancelled)
+            {
+                onCancelled();
+                return true;
+            }
+
+            final long start = System.nanoTime();
+            isWaiting = false;
+            try
+            {
+                do
+                {
+                    if (step())
+                    {
+                        isFinished = true;
+                        onFinished();
+                        return true;
+                    }
+                }
+                while (!isWaiting && System.nanoTime() - start < budgetNanos);
+            }
+            catch (Exception ex)
+            {
+                Log.error("Job '" + name + "' failed", ex);
+                Console.showException("Job '" + name + "' failed: ", ex);
+                isCancelled = true;
+                onCancelled();
+                return true;
+            }
+
+            final int quarter = (int) (getProgress() * 4f);
+            if (quarter > lastReportedQuarter && quarter < 4)
+            {
+                lastReportedQuarter = quarter;
+                Console.showMessage(Character.toUpperCase(name.charAt(0)) + name.substring(1) + ": "
+                        + (quarter * 25) + "% done...");
+            }
+
+            return false;
+        }
+    }
+
+    private static class SchedulerScript implements EveryFrameScript
+    {
+        private final WeakReference<SectorAPI> sector;
+        private final List<Job> jobs = new ArrayList<>();
+        private boolean isDone = false;
+
+        private SchedulerScript(SectorAPI sector)
+        {
+            this.sector = new WeakReference<>(sector);
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return isDone;
+        }
+
+        @Override
+        public boolean runWhilePaused()
+        {
+            return true;
+        }
+
+        @Override
+        public void advance(float amount)
+        {
+            // Jobs submitted while others run this frame start next frame
+            for (Job job : new ArrayList<>(jobs))
+            {
+                if (job.advance())
+                {
+                    jobs.remove(job);
+                }
+            }
+
+            // Once empty this script is removed, and a new one is created for the next job
+            if (jobs.isEmpty())
+            {
+                isDone = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.Global;
+import org.apache.log4j.Logger;
+import org.codehaus.janino.ClassLoaderIClassLoader;
+import org.codehaus.janino.IClass;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.UnitCompiler;
+import org.codehaus.janino.util.ClassFile;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads command classes for {@link CommandStore}. Commands shipped as loose .java files are compiled by the console
+ * itself rather than by the game's script classloader, and the resulting bytecode is saved to common data. On later
+ * launches (and reloads), unchanged scripts are defined straight from that bytecode instead of being compiled again.
+ * <p>
+ * Cached bytecode is keyed by a hash of the script's source along with the game version and the list of enabled mods
+ * (as any of those can change what a script compiles to). Only self-contained scripts are cached: a script that uses
+ * other loose classes is loaded through the script classloader instead, as cached bytecode could go stale when those
+ * classes change, and defining them a second time here would give them duplicate static state. The same goes for
+ * scripts that other loose scripts depend on. If anything goes wrong, the class is loaded through the script
+ * classloader as normal.
+ * <p>
+ * Entries for scripts that weren't loaded this time are dropped when the cache is saved.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+class ScriptCommandCache
+{
+    private static final Logger Log = Global.getLogger(ScriptCommandCache.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private final ClassLoader scriptLoader;
+    private final CachedClassLoader cachedLoader;
+    private final String environmentKey;
+    // Loose classes that the script classloader has been (or will be) asked to compile
+    private final Set<String> scriptDependencies = new HashSet<>();
+    private final Set<String> loadedFromCache = new HashSet<>();
+    private final Set<String> requested = new HashSet<>();
+    private JSONObject cache;
+    private boolean isDirty = false;
+
+    ScriptCommandCache(ClassLoader scriptLoader)
+    {
+        this.scriptLoader = scriptLoader;
+        this.cachedLoader = new CachedClassLoader(scriptLoader);
+        this.environmentKey = ContentIndex.getModFingerprint();
+
+        try
+        {
+            final String raw = Global.getSettings().readTextFileFromCommon(CommonStrings.PATH_SCRIPT_CACHE);
+            cache = (raw.trim().isEmpty() ? new JSONObject() : new JSONObject(raw));
+        }
+        catch (Exception ex)
+        {
+            Log.warn("Failed to read script command cache, it will be rebuilt", ex);
+            cache = new JSONObject();
+        }
+    }
+
+    /**
+     * Loads a command class, using cached bytecode if the class is a loose script that hasn't changed.
+     */
+    Class<?> loadClass(String className) throws ClassNotFoundException
+    {
+        // By convention loose scripts live under data/, anything else is compiled code in a jar
+        if (!className.startsWith("data."))
+        {
+            return scriptLoader.loadClass(className);
+        }
+
+        requested.add(className);
+        final String source = loadSource(className);
+        if (source == null)
+        {
+            return scriptLoader.loadClass(className);
+        }
+
+        try
+        {
+            final String hash = hash(source + '\n' + environmentKey);
+            JSONObject entry = cache.optJSONObject(className);
+            if (entry == null || !hash.equals(entry.optString("hash")) || !entry.has("dependencies"))
+            {
+                entry = compile(className, source, hash);
+                cache.put(className, entry);
+                isDirty = true;
+                Log.debug("Compiled " + className + " and added it to script cache");
+            }
+
+            // Whatever this script uses will be compiled by the script loader, so it mustn't be defined here as well
+            final JSONArray dependencies = entry.getJSONArray("dependencies");
+            for (int i = 0; i < dependencies.length(); i++)
+            {
+                final String dependency = dependencies.getString(i);
+                scriptDependencies.add(dependency);
+                if (loadedFromCache.contains(dependency))
+                {
+                    Log.warn(className + " uses " + dependency + ", which was already loaded from script cache;"
+                            + " it will be loaded through the script loader from now on");
+                    markUncached(dependency);
+                }
+            }
+
+            if (!entry.has("classes") || scriptDependencies.contains(className))
+            {
+                markUncached(className);
+                return scriptLoader.loadClass(className);
+            }
+
+            final JSONObject classes = entry.getJSONObject("classes");
+            for (Iterator<?> iter = classes.keys(); iter.hasNext(); )
+            {
+                final String name = (String) iter.next();
+                cachedLoader.addClass(name, fromHex(classes.getString(name)));
+            }
+
+            final Class<?> loaded = cachedLoader.loadClass(className);
+            loadedFromCache.add(className);
+            Log.debug("Loaded " + className + " from script cache");
+            return loaded;
+        }
+        catch (Exception | LinkageError ex)
+        {
+            Log.warn("Failed to load " + className + " through script cache, falling back to script loader", ex);
+            return scriptLoader.loadClass(className);
+        }
+    }
+
+    /**
+     * Stops caching bytecode for a script, so it's loaded through the script classloader on later launches.
+     */
+    private void markUncached(String className)
+    {
+        final JSONObject entry = cache.optJSONObject(className);
+        if (entry != null && entry.has("classes"))
+        {
+            entry.remove("classes");
+            isDirty = true;
+        }
+    }
+
+    /**
+     * Writes any newly compiled scripts to common data, and drops entries for scripts that are no longer loaded. Call
+     * once all commands have been loaded.
+     */
+    void save()
+    {
+        final List<String> unused = new ArrayList<>();
+        for (Iterator<?> iter = cache.keys(); iter.hasNext(); )
+        {
+            final String className = (String) iter.next();
+            if (!requested.contains(className))
+            {
+                unused.add(className);
+            }
+        }
+
+        for (String className : unused)
+        {
+            cache.remove(className);
+            isDirty = true;
+        }
+
+        if (!isDirty)
+        {
+            return;
+        }
+
+        try
+        {
+            Global.getSettings().writeTextFileToCommon(CommonStrings.PATH_SCRIPT_CACHE, cache.toString());
+            isDirty = false;
+        }
+        catch (Exception ex)
+        {
+            Log.warn("Failed to save script command cache", ex);
+        }
+    }
+
+    @Nullable
+    private static String loadSource(String className)
+    {
+        try
+        {
+            return Global.getSettings().loadText(className.replace('.', '/') + ".java");
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Compiles a script, noting every other loose class it uses. Bytecode is only kept if it doesn't use any.
+     */
+    private JSONObject compile(String className, String source, String hash) throws Exception
+    {
+        final Set<String> used = new HashSet<>();
+        final Parser parser = new Parser(new Scanner(className, new StringReader(source)));
+        final Java.CompilationUnit unit = parser.parseCompilationUnit();
+        final UnitCompiler compiler = new UnitCompiler(unit, new ClassLoaderIClassLoader(scriptLoader)
+        {
+            @Override
+            protected IClass findIClass(String descriptor) throws ClassNotFoundException
+            {
+                final IClass found = super.findIClass(descriptor);
+                if (found != null && descriptor.startsWith("Ldata/"))
+                {
+                    used.add(descriptor.substring(1, descriptor.length() - 1).replace('/', '.'));
+                }
+
+                return found;
+            }
+        });
+
+        final JSONObject classes = new JSONObject();
+        for (ClassFile classFile : compiler.compileUnit(true, true, true))
+        {
+            classes.put(classFile.getThisClassName(), toHex(classFile.toByteArray()));
+        }
+
+        // Classes declared by the script itself don't count, and nested classes belong to their outer class's script
+        final List<String> dependencies = new ArrayList<>();
+        for (String name : used)
+        {
+            final int nested = name.indexOf('$');
+            final String outer = (nested < 0 ? name : name.substring(0, nested));
+            if (!classes.has(name) && !outer.equals(className) && !dependencies.contains(outer))
+            {
+                dependencies.add(outer);
+            }
+        }
+
+        final JSONObject entry = new JSONObject().put("hash", hash).put("dependencies", new JSONArray(dependencies));
+        if (dependencies.isEmpty())
+        {
+            entry.put("classes", classes);
+        }
+
+        return entry;
+    }
+
+    private static String hash(String text) throws Exception
+    {
+        return toHex(MessageDigest.getInstance("SHA-1").digest(text.getBytes(UTF_8)));
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+
+        return new String(chars);
+    }
+
+    private static byte[] fromHex(String hex)
+    {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Defines cached classes on demand, and delegates everything else to the script classloader.
+     */
+    private static class CachedClassLoader extends ClassLoader
+    {
+        private final Map<String, byte[]> bytecode = new HashMap<>();
+
+        private CachedClassLoader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        private void addClass(String name, byte[] classBytes)
+        {
+            bytecode.put(name, classBytes);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            synchronized (getClassLoadingLock(name))
+            {
+                // Cached classes must be defined here rather than by the parent, which would compile them from source
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null && bytecode.containsKey(name))
+                {
+                    loaded = findClass(name);
+                }
+
+                if (loaded == null)
+                {
+                    return super.loadClass(name, resolve);
+                }
+
+                if (resolve)
+                {
+                    resolveClass(loaded);
+                }
+
+                return loaded;
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException
+        {
+            final byte[] classBytes = bytecode.remove(name);
+            if (classBytes == null)
+            {
+                throw new ClassNotFoundException(name);
+            }
+
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+    }
+}
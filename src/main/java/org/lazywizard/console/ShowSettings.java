@@ -349,18 +349,27 @@ public class ShowSettings implements BaseCommand
 
         private void saveOptions()
         {
-            settings.setOutputColor(new Color(red, green, blue));
-            settings.setFontScaling(fontScale);
-            settings.setTypoCorrectionThreshold(threshold);
-            settings.setMaxScrollback(scrollback);
-            settings.setDefaultCombatCheatTarget(defaultTarget);
-            settings.setUseHomeForStorage(homeStorage);
-            settings.setDevModeTogglesDebugFlags(devModeFlags);
-            settings.setShowBackground(showBackground);
-            settings.setShowEnteredCommands(showCommands);
-            settings.setShowMemoryUsage(showMemory);
-            settings.setShowCursorIndex(showIndex);
-            settings.setShowExceptionDetails(showExceptions);
+            // Write every changed setting to disk at once instead of once per setting
+            settings.beginTransaction();
+            try
+            {
+                settings.setOutputColor(new Color(red, green, blue));
+                settings.setFontScaling(fontScale);
+                settings.setTypoCorrectionThreshold(threshold);
+                settings.setMaxScrollback(scrollback);
+                settings.setDefaultCombatCheatTarget(defaultTarget);
+                settings.setUseHomeForStorage(homeStorage);
+                settings.setDevModeTogglesDebugFlags(devModeFlags);
+                settings.setShowBackground(showBackground);
+                settings.setShowEnteredCommands(showCommands);
+                settings.setShowMemoryUsage(showMemory);
+                settings.setShowCursorIndex(showIndex);
+                settings.setShowExceptionDetails(showExceptions);
+            }
+            finally
+            {
+                settings.commitTransaction();
+            }
         }
 
         @Override
@@ -107,6 +107,7 @@ public class AddCondition implements BaseCommand
         }
 
         market.reapplyConditions();
+        SectorIndex.invalidate();
         Console.showMessage("Added condition '" + id + "' to market '" + market.getName() + "'.");
         return CommandResult.SUCCESS;
     }
@@ -126,6 +126,7 @@ public class AddIndustry implements BaseCommand
             market.addIndustry(id, params);
             market.getIndustry(id).finishBuildingOrUpgrading();
             market.reapplyIndustries();
+            SectorIndex.invalidate();
             Console.showMessage("Added industry '" + id + "' to market '" + market.getName() + "' with params " +
                     CollectionUtils.implode(params) + ".");
             return CommandResult.SUCCESS;
@@ -135,6 +136,7 @@ public class AddIndustry implements BaseCommand
             market.addIndustry(id);
             market.getIndustry(id).finishBuildingOrUpgrading();
             market.reapplyIndustries();
+            SectorIndex.invalidate();
             Console.showMessage("Added industry '" + id + "' to market '" + market.getName() + "'.");
             return CommandResult.SUCCESS;
         }
@@ -16,7 +16,6 @@ import java.util.*;
 
 import static org.lazywizard.console.CommandUtils.findBestFactionMatch;
 
-// TODO: This needs cleanup after adding the optional faction argument (supporting logic is ugly)
 // TODO: Add resetblueprints command
 public class AllBlueprints implements BaseCommand
 {
@@ -72,16 +71,16 @@ public class AllBlueprints implements BaseCommand
             args = "all";
         }
 
-        final Set<FactionAPI> factions = new HashSet<>();
-        boolean unlockShips = false, unlockWings = false,
-                unlockWeapons = false, unlockIndustries = false;
+        final Set<FactionAPI> factions = new LinkedHashSet<>();
+        final Set<BlueprintIndex.Type> types = EnumSet.noneOf(BlueprintIndex.Type.class);
+        boolean showDetails = false;
         for (String arg : args.split(" "))
         {
             switch (arg.toLowerCase())
             {
                 case "ship":
                 case "ships":
-                    unlockShips = true;
+                    types.add(BlueprintIndex.Type.SHIPS);
                     break;
                 case "wing":
                 case "wings":
@@ -89,18 +88,23 @@ public class AllBlueprints implements BaseCommand
                 case "fighters":
                 case "lpc":
                 case "lpcs":
-                    unlockWings = true;
+                    types.add(BlueprintIndex.Type.WINGS);
                     break;
                 case "weapon":
                 case "weapons":
-                    unlockWeapons = true;
+                    types.add(BlueprintIndex.Type.WEAPONS);
                     break;
                 case "industry":
                 case "industries":
-                    unlockIndustries = true;
+                    types.add(BlueprintIndex.Type.INDUSTRIES);
                     break;
                 case "all":
-                    unlockShips = unlockWings = unlockWeapons /*= unlockIndustries*/ = true;
+                    Collections.addAll(types, BlueprintIndex.Type.SHIPS, BlueprintIndex.Type.WINGS,
+                            BlueprintIndex.Type.WEAPONS);
+                    break;
+                case "details":
+                case "verbose":
+                    showDetails = true;
                     break;
                 default:
                     final FactionAPI faction = findBestFactionMatch(arg);
@@ -115,10 +119,11 @@ public class AllBlueprints implements BaseCommand
             }
         }
 
-        // No arguments defaults to all, but isn't detected if you passed in a list of factions
-        if (!unlockShips && !unlockWings && !unlockWeapons && !unlockIndustries && !factions.isEmpty())
+        // No arguments defaults to all, but isn't detected if you passed in a list of factions or 'details'
+        if (types.isEmpty())
         {
-            unlockShips = unlockWings = unlockWeapons /*= unlockIndustries*/ = true;
+            Collections.addAll(types, BlueprintIndex.Type.SHIPS, BlueprintIndex.Type.WINGS,
+                    BlueprintIndex.Type.WEAPONS);
         }
 
         if (!factions.isEmpty())
@@ -133,159 +138,32 @@ public class AllBlueprints implements BaseCommand
                     + CollectionUtils.implode(names) + ".");
         }
 
+        // Blueprints known by several of the chosen factions are only unlocked and listed once
+        final BlueprintIndex index = BlueprintIndex.getIndex();
         final FactionAPI player = Global.getSector().getPlayerFaction();
-        if (unlockShips)
-        {
-            final List<String> unlocked = new ArrayList<>();
-            for (ShipHullSpecAPI spec : Global.getSettings().getAllShipHullSpecs())
-            {
-                if (isLearnable(spec) && !player.knowsShip(spec.getHullId()))
-                {
-                    if (factions.isEmpty())
-                    {
-                        player.addKnownShip(spec.getHullId(), true);
-                        unlocked.add(spec.getHullId() + " (" + spec.getHullNameWithDashClass() + ")");
-                    }
-                    else
-                    {
-                        for (FactionAPI faction : factions)
-                        {
-                            if (faction.knowsShip(spec.getHullId()))
-                            {
-                                player.addKnownShip(spec.getHullId(), true);
-                                unlocked.add(spec.getHullId() + " (" + spec.getHullNameWithDashClass() + ")");
-                            }
-                        }
-                    }
-                }
-            }
-
-            if (unlocked.isEmpty())
-            {
-                Console.showMessage("You already know all unlockable ships!");
-            }
-            else
-            {
-                Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
-                Console.showIndentedMessage("Unlocked " + unlocked.size() + " ships:",
-                        CollectionUtils.implode(unlocked), 3);
-            }
-        }
-
-        if (unlockWings)
-        {
-            final List<String> unlocked = new ArrayList<>();
-            for (FighterWingSpecAPI spec : Global.getSettings().getAllFighterWingSpecs())
-            {
-                if (isLearnable(spec) && !player.knowsFighter(spec.getId()))
-                {
-                    if (factions.isEmpty())
-                    {
-                        player.addKnownFighter(spec.getId(), true);
-                        unlocked.add(spec.getId() + " (" + spec.getWingName() + ")");
-                    }
-                    else
-                    {
-                        for (FactionAPI faction : factions)
-                        {
-                            if (faction.knowsFighter(spec.getId()))
-                            {
-                                player.addKnownFighter(spec.getId(), true);
-                                unlocked.add(spec.getId() + " (" + spec.getWingName() + ")");
-                            }
-                        }
-                    }
-                }
-            }
-
-            if (unlocked.isEmpty())
-            {
-                Console.showMessage("You already know all unlockable fighter wings!");
-            }
-            else
-            {
-                Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
-                Console.showIndentedMessage("Unlocked " + unlocked.size() + " fighter wings:",
-                        CollectionUtils.implode(unlocked), 3);
-            }
-        }
-
-        if (unlockWeapons)
+        final List<String> summary = new ArrayList<>();
+        for (BlueprintIndex.Type type : types)
         {
-            final List<String> unlocked = new ArrayList<>();
-            for (WeaponSpecAPI spec : Global.getSettings().getAllWeaponSpecs())
-            {
-                if (isLearnable(spec) && !player.knowsWeapon(spec.getWeaponId()))
-                {
-                    if (factions.isEmpty())
-                    {
-                        player.addKnownWeapon(spec.getWeaponId(), true);
-                        unlocked.add(spec.getWeaponId() + " (" + spec.getWeaponName() + ")");
-                    }
-                    else
-                    {
-                        for (FactionAPI faction : factions)
-                        {
-                            if (faction.knowsWeapon(spec.getWeaponId()))
-                            {
-                                player.addKnownWeapon(spec.getWeaponId(), true);
-                                unlocked.add(spec.getWeaponId() + " (" + spec.getWeaponName() + ")");
-                            }
-                        }
-                    }
-                }
-            }
+            final Set<String> toUnlock = index.getUnknown(player, type, factions);
+            BlueprintIndex.unlock(player, type, toUnlock);
+            summary.add(toUnlock.size() + " " + type.getDisplayName());
 
-            if (unlocked.isEmpty())
-            {
-                Console.showMessage("You already know all unlockable weapons!");
-            }
-            else
+            if (showDetails && !toUnlock.isEmpty())
             {
-                Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
-                Console.showIndentedMessage("Unlocked " + unlocked.size() + " weapons:",
-                        CollectionUtils.implode(unlocked), 3);
-            }
-        }
-
-        if (unlockIndustries)
-        {
-            final List<String> unlocked = new ArrayList<>();
-            for (IndustrySpecAPI spec : Global.getSettings().getAllIndustrySpecs())
-            {
-                if (isLearnable(spec) && !player.knowsIndustry(spec.getId()))
+                final List<String> unlocked = new ArrayList<>(toUnlock.size());
+                for (String id : toUnlock)
                 {
-                    if (factions.isEmpty())
-                    {
-                        player.addKnownIndustry(spec.getId());
-                        unlocked.add(spec.getId() + " (" + spec.getName() + ")");
-                    }
-                    else
-                    {
-                        for (FactionAPI faction : factions)
-                        {
-                            if (faction.knowsIndustry(spec.getId()))
-                            {
-                                player.addKnownIndustry(spec.getId());
-                                unlocked.add(spec.getId() + " (" + spec.getName() + ")");
-                            }
-                        }
-                    }
+                    unlocked.add(id + " (" + index.getName(type, id) + ")");
                 }
-            }
 
-            if (unlocked.isEmpty())
-            {
-                Console.showMessage("You already know all unlockable industries!");
-            }
-            else
-            {
                 Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
-                Console.showIndentedMessage("Unlocked " + unlocked.size() + " industries:",
+                Console.showIndentedMessage("Unlocked " + unlocked.size() + " " + type.getDisplayName() + ":",
                         CollectionUtils.implode(unlocked), 3);
             }
         }
 
+        Console.showMessage("Unlocked " + CollectionUtils.implode(summary) + "."
+                + (showDetails ? "" : " Use 'allblueprints " + args + " details' to list them."));
         return CommandResult.SUCCESS;
     }
 }
@@ -1,22 +1,26 @@
 package org.lazywizard.console.commands;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.FleetDataAPI;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.combat.ShipHullSpecAPI;
 import com.fs.starfarer.api.fleet.FleetMemberAPI;
 import com.fs.starfarer.api.fleet.FleetMemberType;
 import org.lazywizard.console.BaseCommand;
-import org.lazywizard.console.BaseCommand.CommandContext;
-import org.lazywizard.console.BaseCommand.CommandResult;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ContentIndex;
+import org.lazywizard.console.ContentIndex.Category;
+import org.lazywizard.console.JobScheduler;
+
+import java.util.*;
 
 public class AllHulls implements BaseCommand
 {
+    private static final int CHUNK_SIZE = 25;
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -26,11 +30,18 @@ public class AllHulls implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        FleetDataAPI target;
-        String targetName;
-        int total = 0;
+        if (BulkInsert.isRunning())
+        {
+            Console.showMessage("Error: wait for the current insertion to finish first!");
+            return CommandResult.ERROR;
+        }
+
+        final BulkInsert.Filter filter = BulkInsert.Filter.parse(args);
+        args = filter.getTarget();
+        final FleetDataAPI target;
+        final String targetName;
 
-        if (args == null || args.isEmpty())
+        if (args.isEmpty())
         {
             target = Storage.retrieveStorageFleetData();
             targetName = "storage (use 'storage' to retrieve)";
@@ -69,25 +80,61 @@ public class AllHulls implements BaseCommand
             targetName = token.getFullName();
         }
 
-        final Set<String> ids = new LinkedHashSet<>(Global.getSector().getAllEmptyVariantIds());
+        final Set<String> existing = new HashSet<>();
         for (FleetMemberAPI tmp : target.getMembersListCopy())
         {
             if (!tmp.isFighterWing() && tmp.getVariant().isEmptyHullVariant())
             {
-                ids.remove(tmp.getVariant().getHullVariantId());
+                existing.add(tmp.getVariant().getHullVariantId());
+            }
+        }
+
+        // Skins aren't in ship_data.csv, so they're credited to the mod that added their base hull
+        final Map<String, String> sourceMods = (filter.hasMod()
+                ? ContentIndex.getIndex().getSourceMods(Category.HULLS) : Collections.<String, String>emptyMap());
+        final List<String> ids = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(Global.getSector().getAllEmptyVariantIds()))
+        {
+            if (existing.contains(id))
+            {
+                continue;
+            }
+
+            if (filter.isEmpty())
+            {
+                ids.add(id);
+                continue;
+            }
+
+            final ShipHullSpecAPI spec = Global.getSettings().getVariant(id).getHullSpec();
+            String source = sourceMods.get(spec.getHullId());
+            if (source == null) source = sourceMods.get(spec.getBaseHullId());
+            if (filter.matches(source, spec.getHullSize().name(), spec.getTags()))
+            {
+                ids.add(id);
             }
         }
 
-        for (String id : ids)
+        if (ids.isEmpty())
         {
-            FleetMemberAPI tmp = Global.getFactory().createFleetMember(
-                    FleetMemberType.SHIP, id);
-            tmp.getRepairTracker().setMothballed(true);
-            target.addFleetMember(tmp);
-            total++;
+            Console.showMessage("No missing ships" + filter + " found.");
+            return CommandResult.SUCCESS;
         }
 
-        Console.showMessage("Added " + total + " ships to " + targetName + ".");
+        final int jobId = JobScheduler.submit(new BulkInsert.InsertJob(ids, CHUNK_SIZE, "ships", targetName)
+        {
+            @Override
+            protected int insert(String id)
+            {
+                final FleetMemberAPI tmp = Global.getFactory().createFleetMember(FleetMemberType.SHIP, id);
+                tmp.getRepairTracker().setMothballed(true);
+                target.addFleetMember(tmp);
+                return 1;
+            }
+        });
+
+        Console.showMessage("Adding " + ids.size() + " ships" + filter + " to " + targetName
+                + " as job " + jobId + "...");
         return CommandResult.SUCCESS;
     }
 }
@@ -3,17 +3,23 @@ package org.lazywizard.console.commands;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.CargoAPI.CargoItemType;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.loading.WeaponSpecAPI;
 import org.lazywizard.console.BaseCommand;
-import org.lazywizard.console.BaseCommand.CommandContext;
-import org.lazywizard.console.BaseCommand.CommandResult;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ContentIndex;
+import org.lazywizard.console.ContentIndex.Category;
+import org.lazywizard.console.JobScheduler;
+
+import java.util.*;
 
 public class AllWeapons implements BaseCommand
 {
     private static final int MAX_STACK_SIZE = 1_000;
+    private static final int CHUNK_SIZE = 100;
 
     @Override
     public CommandResult runCommand(String args, CommandContext context)
@@ -24,11 +30,18 @@ public class AllWeapons implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        CargoAPI target;
-        String targetName;
-        int total = 0;
+        if (BulkInsert.isRunning())
+        {
+            Console.showMessage("Error: wait for the current insertion to finish first!");
+            return CommandResult.ERROR;
+        }
+
+        final BulkInsert.Filter filter = BulkInsert.Filter.parse(args);
+        args = filter.getTarget();
+        final CargoAPI target;
+        final String targetName;
 
-        if (args == null || args.isEmpty())
+        if (args.isEmpty())
         {
             target = Storage.retrieveStorage();
             targetName = "storage (use 'storage' to retrieve)";
@@ -53,14 +66,62 @@ public class AllWeapons implements BaseCommand
             targetName = tmp.getFullName();
         }
 
-        for (String id : Global.getSector().getAllWeaponIds())
+        // Read what's already there once, rather than searching the cargo again for every weapon
+        final Map<String, Integer> existing = new HashMap<>();
+        for (CargoStackAPI stack : target.getStacksCopy())
+        {
+            if (!stack.isNull() && stack.isWeaponStack())
+            {
+                final String id = stack.getWeaponSpecIfWeapon().getWeaponId();
+                final Integer count = existing.get(id);
+                existing.put(id, (count == null ? 0 : count) + (int) stack.getSize());
+            }
+        }
+
+        final Map<String, String> sourceMods = (filter.hasMod()
+                ? ContentIndex.getIndex().getSourceMods(Category.WEAPONS) : Collections.<String, String>emptyMap());
+        final List<String> ids = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(Global.getSector().getAllWeaponIds()))
+        {
+            final Integer count = existing.get(id);
+            if (count != null && count >= MAX_STACK_SIZE)
+            {
+                continue;
+            }
+
+            if (filter.isEmpty())
+            {
+                ids.add(id);
+                continue;
+            }
+
+            final WeaponSpecAPI spec = Global.getSettings().getWeaponSpec(id);
+            if (filter.matches(sourceMods.get(id), spec.getSize().name(), spec.getTags()))
+            {
+                ids.add(id);
+            }
+        }
+
+        if (ids.isEmpty())
         {
-            int amount = MAX_STACK_SIZE - target.getNumWeapons(id);
-            target.addItems(CargoItemType.WEAPONS, id, amount);
-            total += amount;
+            Console.showMessage("No missing weapons" + filter + " found.");
+            return CommandResult.SUCCESS;
         }
 
-        Console.showMessage("Added " + total + " weapons to " + targetName + ".");
+        final int jobId = JobScheduler.submit(new BulkInsert.InsertJob(ids, CHUNK_SIZE, "weapons", targetName)
+        {
+            @Override
+            protected int insert(String id)
+            {
+                final Integer count = existing.get(id);
+                final int amount = MAX_STACK_SIZE - (count == null ? 0 : count);
+                target.addItems(CargoItemType.WEAPONS, id, amount);
+                return amount;
+            }
+        });
+
+        Console.showMessage("Adding " + ids.size() + " types of weapon" + filter + " to " + targetName
+                + " as job " + jobId + "...");
         return CommandResult.SUCCESS;
     }
 }
@@ -1,20 +1,24 @@
 package org.lazywizard.console.commands;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.CargoStackAPI;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.loading.FighterWingSpecAPI;
 import org.lazywizard.console.BaseCommand;
-import org.lazywizard.console.BaseCommand.CommandContext;
-import org.lazywizard.console.BaseCommand.CommandResult;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ContentIndex;
+import org.lazywizard.console.ContentIndex.Category;
+import org.lazywizard.console.JobScheduler;
+
+import java.util.*;
 
 public class AllWings implements BaseCommand
 {
+    private static final int CHUNK_SIZE = 100;
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -24,11 +28,24 @@ public class AllWings implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
+        if (BulkInsert.isRunning())
+        {
+            Console.showMessage("Error: wait for the current insertion to finish first!");
+            return CommandResult.ERROR;
+        }
+
+        final BulkInsert.Filter filter = BulkInsert.Filter.parse(args);
+        if (filter.hasSize())
+        {
+            Console.showMessage("Error: fighter wings don't have a size!");
+            return CommandResult.ERROR;
+        }
+
+        args = filter.getTarget();
         final CargoAPI target;
-        String targetName;
-        int total = 0;
+        final String targetName;
 
-        if (args == null || args.isEmpty())
+        if (args.isEmpty())
         {
             target = Storage.retrieveStorage();
             targetName = "storage (use 'storage' to retrieve)";
@@ -53,22 +70,57 @@ public class AllWings implements BaseCommand
             targetName = token.getFullName();
         }
 
-        final Set<String> ids = new LinkedHashSet<>(Global.getSector().getAllFighterWingIds());
+        final Set<String> existing = new HashSet<>();
         for (CargoStackAPI tmp : target.getStacksCopy())
         {
             if (!tmp.isNull() && tmp.isFighterWingStack())
             {
-                ids.remove(tmp.getFighterWingSpecIfWing().getId());
+                existing.add(tmp.getFighterWingSpecIfWing().getId());
             }
         }
 
-        for (String id : ids)
+        final Map<String, String> sourceMods = (filter.hasMod()
+                ? ContentIndex.getIndex().getSourceMods(Category.WINGS) : Collections.<String, String>emptyMap());
+        final List<String> ids = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(Global.getSector().getAllFighterWingIds()))
         {
-            target.addFighters(id, 100);
-            total++;
+            if (existing.contains(id))
+            {
+                continue;
+            }
+
+            if (filter.isEmpty())
+            {
+                ids.add(id);
+                continue;
+            }
+
+            final FighterWingSpecAPI spec = Global.getSettings().getFighterWingSpec(id);
+            if (filter.matches(sourceMods.get(id), null, spec.getTags()))
+            {
+                ids.add(id);
+            }
         }
 
-        Console.showMessage("Added " + total + " stacks of wing LPCs to " + targetName + ".");
+        if (ids.isEmpty())
+        {
+            Console.showMessage("No missing wing LPCs" + filter + " found.");
+            return CommandResult.SUCCESS;
+        }
+
+        final int jobId = JobScheduler.submit(new BulkInsert.InsertJob(ids, CHUNK_SIZE, "stacks of wing LPCs",
+                targetName)
+        {
+            @Override
+            protected int insert(String id)
+            {
+                target.addFighters(id, 100);
+                return 1;
+            }
+        });
+
+        Console.showMessage("Adding " + ids.size() + " wing LPCs" + filter + " to " + targetName
+                + " as job " + jobId + "...");
         return CommandResult.SUCCESS;
     }
 }
@@ -52,8 +52,6 @@ public class BlockRetreat implements BaseCommand
 
     private static class BlockRetreatPlugin extends CheatPlugin
     {
-        private static final float TIME_BETWEEN_CHECKS = 1f;
-        private float nextCheck = TIME_BETWEEN_CHECKS;
         private boolean endedCombat = false;
 
         @Override
@@ -77,25 +75,24 @@ public class BlockRetreat implements BaseCommand
             if (endedCombat) return;
 
             // Ensure battle ends when all enemies are defeated
-            nextCheck -= amount;
-            if (nextCheck <= 0f)
+            if (Global.getCombatEngine().getFleetManager(FleetSide.ENEMY).getDeployedCopy().isEmpty())
             {
-                if (Global.getCombatEngine().getFleetManager(FleetSide.ENEMY).getDeployedCopy().isEmpty())
-                {
-                    Log.info("Forcing player victory");
-                    Global.getCombatEngine().endCombat(1f, FleetSide.PLAYER);
-                    endedCombat = true;
-                    return;
-                }
-
-                nextCheck = TIME_BETWEEN_CHECKS;
+                Log.info("Forcing player victory");
+                Global.getCombatEngine().endCombat(1f, FleetSide.PLAYER);
+                endedCombat = true;
             }
         }
 
         @Override
         public boolean runWhilePaused()
         {
-            return true;
+            return false;
+        }
+
+        @Override
+        public float getInterval()
+        {
+            return 1f;
         }
     }
 }
@@ -0,0 +1,162 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.SettingsAPI;
+import com.fs.starfarer.api.campaign.FactionAPI;
+import com.fs.starfarer.api.combat.ShipHullSpecAPI;
+import com.fs.starfarer.api.loading.FighterWingSpecAPI;
+import com.fs.starfarer.api.loading.IndustrySpecAPI;
+import com.fs.starfarer.api.loading.WeaponSpecAPI;
+
+import java.util.*;
+
+/**
+ * Every learnable blueprint, grouped by type. Built once per session, as blueprint tags can't change after loading.
+ * <p>
+ * Which blueprints a faction knows is read from the faction's own known-blueprint sets when needed, as that changes
+ * during play.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+final class BlueprintIndex
+{
+    private static BlueprintIndex instance = null;
+    private final Map<Type, Map<String, String>> learnable = new EnumMap<>(Type.class);
+
+    enum Type
+    {
+        SHIPS("ships"),
+        WINGS("fighter wings"),
+        WEAPONS("weapons"),
+        INDUSTRIES("industries");
+
+        private final String displayName;
+
+        Type(String displayName)
+        {
+            this.displayName = displayName;
+        }
+
+        String getDisplayName()
+        {
+            return displayName;
+        }
+    }
+
+    static synchronized BlueprintIndex getIndex()
+    {
+        if (instance == null)
+        {
+            instance = new BlueprintIndex();
+        }
+
+        return instance;
+    }
+
+    private BlueprintIndex()
+    {
+        final SettingsAPI settings = Global.getSettings();
+        final Map<String, String> ships = new HashMap<>(), wings = new HashMap<>(), weapons = new HashMap<>(),
+                industries = new HashMap<>();
+        for (ShipHullSpecAPI spec : settings.getAllShipHullSpecs())
+        {
+            if (AllBlueprints.isLearnable(spec)) ships.put(spec.getHullId(), spec.getHullNameWithDashClass());
+        }
+        for (FighterWingSpecAPI spec : settings.getAllFighterWingSpecs())
+        {
+            if (AllBlueprints.isLearnable(spec)) wings.put(spec.getId(), spec.getWingName());
+        }
+        for (WeaponSpecAPI spec : settings.getAllWeaponSpecs())
+        {
+            if (AllBlueprints.isLearnable(spec)) weapons.put(spec.getWeaponId(), spec.getWeaponName());
+        }
+        for (IndustrySpecAPI spec : settings.getAllIndustrySpecs())
+        {
+            if (AllBlueprints.isLearnable(spec)) industries.put(spec.getId(), spec.getName());
+        }
+
+        learnable.put(Type.SHIPS, ships);
+        learnable.put(Type.WINGS, wings);
+        learnable.put(Type.WEAPONS, weapons);
+        learnable.put(Type.INDUSTRIES, industries);
+    }
+
+    /**
+     * @return The display name of a learnable blueprint, or {@code null} if it isn't learnable.
+     */
+    String getName(Type type, String id)
+    {
+        return learnable.get(type).get(id);
+    }
+
+    private static Collection<String> getKnown(FactionAPI faction, Type type)
+    {
+        switch (type)
+        {
+            case SHIPS:
+                return faction.getKnownShips();
+            case WINGS:
+                return faction.getKnownFighters();
+            case WEAPONS:
+                return faction.getKnownWeapons();
+            default:
+                return faction.getKnownIndustries();
+        }
+    }
+
+    /**
+     * Returns every learnable blueprint the player doesn't know yet, without duplicates.
+     *
+     * @param sources Only include blueprints known by at least one of these factions. If empty, all learnable
+     *                blueprints are included.
+     */
+    Set<String> getUnknown(FactionAPI player, Type type, Collection<FactionAPI> sources)
+    {
+        final Map<String, String> all = learnable.get(type);
+        final Set<String> candidates;
+        if (sources.isEmpty())
+        {
+            candidates = new HashSet<>(all.keySet());
+        }
+        else
+        {
+            candidates = new HashSet<>();
+            for (FactionAPI faction : sources)
+            {
+                for (String id : getKnown(faction, type))
+                {
+                    if (all.containsKey(id)) candidates.add(id);
+                }
+            }
+        }
+
+        candidates.removeAll(getKnown(player, type));
+        return candidates;
+    }
+
+    /**
+     * Teaches the player every blueprint in {@code ids}, which should come from
+     * {@link #getUnknown(FactionAPI, Type, Collection)}.
+     */
+    static void unlock(FactionAPI player, Type type, Collection<String> ids)
+    {
+        for (String id : ids)
+        {
+            switch (type)
+            {
+                case SHIPS:
+                    player.addKnownShip(id, true);
+                    break;
+                case WINGS:
+                    player.addKnownFighter(id, true);
+                    break;
+                case WEAPONS:
+                    player.addKnownWeapon(id, true);
+                    break;
+                default:
+                    player.addKnownIndustry(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.lazywizard.console.commands;
+
+import org.jetbrains.annotations.Nullable;
+import org.lazywizard.console.Console;
+import org.lazywizard.console.JobScheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Shared by AllHulls, AllWeapons and AllWings. Parses their filters, and adds the matching items a chunk at a time
+ * through the {@link JobScheduler} so adding everything from a large mod pack doesn't freeze the game or exhaust the
+ * heap.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+final class BulkInsert
+{
+    private static final long MIN_FREE_HEAP = 128L * 1024 * 1024;
+    private static final int MAX_LOW_MEMORY_FRAMES = 60;
+
+    private BulkInsert()
+    {
+    }
+
+    private static long getFreeHeap()
+    {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    static boolean isRunning()
+    {
+        for (JobScheduler.Job job : JobScheduler.getJobs())
+        {
+            if (job instanceof InsertJob && !job.isDone()) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * The {@code mod:}, {@code size:} and {@code tag:} terms of a command's arguments. Anything else is the target.
+     */
+    static final class Filter
+    {
+        @Nullable private final String mod, size, tag;
+        private final String target;
+
+        private Filter(@Nullable String mod, @Nullable String size, @Nullable String tag, String target)
+        {
+            this.mod = mod;
+            this.size = size;
+            this.tag = tag;
+            this.target = target;
+        }
+
+        static Filter parse(String args)
+        {
+            String mod = null, size = null, tag = null;
+            final List<String> target = new ArrayList<>();
+            for (String term : args.trim().split("\\s+"))
+            {
+                final String lower = term.toLowerCase();
+                if (lower.startsWith("mod:")) mod = lower.substring("mod:".length());
+                else if (lower.startsWith("size:")) size = lower.substring("size:".length());
+                else if (lower.startsWith("tag:")) tag = lower.substring("tag:".length());
+                else if (!term.isEmpty()) target.add(term);
+            }
+
+            final StringBuilder sb = new StringBuilder();
+            for (String term : target)
+            {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(term);
+            }
+
+            return new Filter(mod, size, tag, sb.toString());
+        }
+
+        /**
+         * @return The arguments left over once the filters are removed.
+         */
+        String getTarget()
+        {
+            return target;
+        }
+
+        boolean hasSize()
+        {
+            return size != null;
+        }
+
+        /**
+         * Only filters by mod need the {@link org.lazywizard.console.ContentIndex}, which may have to merge every
+         * mod's spreadsheets the first time it's used.
+         */
+        boolean hasMod()
+        {
+            return mod != null;
+        }
+
+        /**
+         * @return {@code true} if there are no filter terms, so every item matches without looking up its spec.
+         */
+        boolean isEmpty()
+        {
+            return mod == null && size == null && tag == null;
+        }
+
+        /**
+         * @param sourceMod The mod that added the item, from {@link org.lazywizard.console.ContentIndex}.
+         * @param itemSize  The item's size, or {@code null} if it doesn't have one.
+         * @param tags      The item's tags.
+         */
+        boolean matches(@Nullable String sourceMod, @Nullable String itemSize, Collection<String> tags)
+        {
+            if (mod != null && (sourceMod == null || !sourceMod.equalsIgnoreCase(mod))) return false;
+            if (size != null && (itemSize == null || !itemSize.toLowerCase().startsWith(size))) return false;
+            if (tag == null) return true;
+
+            for (String itemTag : tags)
+            {
+                if (itemTag.equalsIgnoreCase(tag)) return true;
+            }
+
+            return false;
+        }
+
+        @Override
+        public String toString()
+        {
+            final StringBuilder sb = new StringBuilder();
+            if (mod != null) sb.append(" from mod '").append(mod).append('\'');
+            if (size != null) sb.append(" of size '").append(size).append('\'');
+            if (tag != null) sb.append(" tagged '").append(tag).append('\'');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Adds one chunk of items per step. Free heap is checked before every chunk, and the job gives up if memory
+     * doesn't recover after a second or so.
+     */
+    abstract static class InsertJob extends JobScheduler.Job
+    {
+        private final List<String> ids;
+        private final int chunkSize;
+        private final String itemName, targetName;
+        private int next = 0, added = 0, lowMemoryFrames = 0;
+        private boolean isLowOnMemory = false;
+
+        InsertJob(List<String> ids, int chunkSize, String itemName, String targetName)
+        {
+            super("adding " + itemName + " to " + targetName);
+            this.ids = ids;
+            this.chunkSize = chunkSize;
+            this.itemName = itemName;
+            this.targetName = targetName;
+        }
+
+        /**
+         * @return How many of the item were actually added.
+         */
+        protected abstract int insert(String id);
+
+        @Override
+        protected boolean step()
+        {
+            if (getFreeHeap() < MIN_FREE_HEAP)
+            {
+                // Give the garbage collector a chance to catch up before giving up entirely
+                isLowOnMemory = (++lowMemoryFrames > MAX_LOW_MEMORY_FRAMES);
+                waitForNextFrame();
+                return isLowOnMemory;
+            }
+
+            lowMemoryFrames = 0;
+            final int end = Math.min(next + chunkSize, ids.size());
+            while (next < end)
+            {
+                added += insert(ids.get(next++));
+            }
+
+            return next >= ids.size();
+        }
+
+        @Override
+        public float getProgress()
+        {
+            return next / (float) ids.size();
+        }
+
+        @Override
+        protected void onFinished()
+        {
+            Console.showMessage("Added " + added + " " + itemName + " to " + targetName + "." + (isLowOnMemory
+                    ? "\nStopped early as the game is low on memory! Use a filter to add fewer at once." : ""));
+        }
+
+        @Override
+        protected void onCancelled()
+        {
+            Console.showMessage("Cancelled after adding " + added + " " + itemName + " to " + targetName + ".");
+        }
+    }
+}
@@ -21,6 +21,7 @@ public class DestroyColony implements BaseCommand
 
         final MarketAPI market = context.getMarket();
         DecivTracker.decivilize(market, true);
+        SectorIndex.invalidate();
         MarketCMD.addBombardVisual(market.getPrimaryEntity());
         Global.getSector().getCampaignUI().getCurrentInteractionDialog().dismiss();
         Console.showMessage("Colony " + market.getName() + " destroyed. You monster.");
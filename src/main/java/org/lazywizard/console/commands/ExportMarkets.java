@@ -0,0 +1,315 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import com.fs.starfarer.api.fleet.FleetMemberAPI;
+import org.apache.log4j.Logger;
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommonStrings;
+import org.lazywizard.console.Console;
+import org.lazywizard.console.ConsoleTable;
+import org.lazywizard.console.ConsoleTable.Column;
+import org.lazywizard.console.ConsoleTable.ColumnType;
+import org.lazywizard.console.JobScheduler;
+import org.lazywizard.console.commands.FindItem.PriceData;
+import org.lazywizard.console.commands.InventoryIndex.ItemType;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * Writes every market's stock to a CSV file in common data, or compares two such files. Exports run as a
+ * {@link JobScheduler} job so large sectors don't freeze the game, and never restock or otherwise modify any cargo.
+ */
+public class ExportMarkets implements BaseCommand
+{
+    private static final Logger Log = Global.getLogger(ExportMarkets.class);
+    private static final String HEADER = "market,faction,submarket,type,item,quantity,price,legal";
+    private static WeakReference<ExportJob> current = null;
+
+    private static String getPath(String file)
+    {
+        return CommonStrings.PATH_EXPORTS + file + ".csv";
+    }
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (!context.isCampaignAccessible())
+        {
+            Console.showMessage(CommonStrings.ERROR_CAMPAIGN_ONLY);
+            return CommandResult.WRONG_CONTEXT;
+        }
+
+        final String[] tmp = args.trim().split("\\s+");
+        for (String file : tmp)
+        {
+            if (!file.matches("[\\w\\-]*"))
+            {
+                Console.showMessage("Error: file names can only contain letters, numbers, - and _.");
+                return CommandResult.ERROR;
+            }
+        }
+
+        if (tmp.length == 3 && "diff".equalsIgnoreCase(tmp[0]))
+        {
+            return diff(tmp[1], tmp[2]);
+        }
+
+        if (tmp.length != 1 || tmp[0].isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        // Exports run as a job, and jobs can only be submitted from the campaign itself (the same check Jobs uses)
+        if (!context.isInCampaign())
+        {
+            Console.showMessage(CommonStrings.ERROR_CAMPAIGN_ONLY);
+            return CommandResult.WRONG_CONTEXT;
+        }
+
+        final ExportJob running = (current == null ? null : current.get());
+        if (running != null && !running.isDone())
+        {
+            Console.showMessage("Error: an export is already in progress!");
+            return CommandResult.ERROR;
+        }
+
+        final ExportJob job = new ExportJob(tmp[0]);
+        final int jobId = JobScheduler.submit(job);
+        current = new WeakReference<>(job);
+        Console.showMessage("Exporting " + job.submarkets.size() + " submarkets to " + getPath(tmp[0])
+                + " in common data as job " + jobId + ". You'll be notified when it's finished.");
+        return CommandResult.SUCCESS;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Diff">
+    private static Map<String, float[]> readSnapshot(String file) throws IOException
+    {
+        final Map<String, float[]> rows = new HashMap<>();
+        final String[] lines = Global.getSettings().readTextFileFromCommon(getPath(file)).split("\n");
+        for (String line : lines)
+        {
+            if (line.isEmpty() || line.startsWith("#") || line.equals(HEADER))
+            {
+                continue;
+            }
+
+            final String[] fields = line.split(",");
+            if (fields.length != 8)
+            {
+                continue;
+            }
+
+            // Hulls are exported one row per ship, so they're merged here, keeping the cheapest price
+            final String key = fields[0] + ',' + fields[2] + ',' + fields[3] + ',' + fields[4];
+            final float quantity = Float.parseFloat(fields[5]), price = Float.parseFloat(fields[6]);
+            final float[] existing = rows.get(key);
+            if (existing == null)
+            {
+                rows.put(key, new float[]{quantity, price});
+            }
+            else
+            {
+                existing[0] += quantity;
+                existing[1] = Math.min(existing[1], price);
+            }
+        }
+
+        return rows;
+    }
+
+    private static CommandResult diff(String oldFile, String newFile)
+    {
+        final Map<String, float[]> oldRows, newRows;
+        try
+        {
+            oldRows = readSnapshot(oldFile);
+            newRows = readSnapshot(newFile);
+        }
+        catch (IOException | NumberFormatException ex)
+        {
+            Console.showException("Failed to read snapshots: ", ex);
+            return CommandResult.ERROR;
+        }
+
+        final Set<String> keys = new HashSet<>(oldRows.keySet());
+        keys.addAll(newRows.keySet());
+        final List<String[]> changes = new ArrayList<>();
+        final List<float[]> values = new ArrayList<>();
+        int added = 0, removed = 0;
+        for (String key : keys)
+        {
+            final float[] before = oldRows.get(key), after = newRows.get(key);
+            if (before != null && after != null && before[0] == after[0] && Math.abs(before[1] - after[1]) < 0.5f)
+            {
+                continue;
+            }
+
+            if (before == null) added++;
+            if (after == null) removed++;
+            changes.add(key.split(","));
+            values.add(new float[]{before == null ? 0f : before[0], after == null ? 0f : after[0],
+                    before == null ? Float.NaN : before[1], after == null ? Float.NaN : after[1]});
+        }
+
+        final List<Integer> rows = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) rows.add(i);
+        final ConsoleTable<Integer> table = new ConsoleTable<Integer>("Found " + changes.size()
+                + " changed listings between " + oldFile + " and " + newFile + " (" + added + " new, " + removed
+                + " gone):", rows, new Column("Market", ColumnType.TEXT), new Column("Submarket", ColumnType.TEXT),
+                new Column("Item", ColumnType.TEXT), new Column("Old Qty", ColumnType.DECIMAL),
+                new Column("New Qty", ColumnType.DECIMAL), new Column("Change", ColumnType.DECIMAL),
+                new Column("Old Price", ColumnType.INTEGER), new Column("New Price", ColumnType.INTEGER))
+        {
+            @Override
+            protected Object getValue(Integer row, int column)
+            {
+                final String[] key = changes.get(row);
+                final float[] value = values.get(row);
+                switch (column)
+                {
+                    case 0:
+                        return key[0];
+                    case 1:
+                        return key[1];
+                    case 2:
+                        return key[3];
+                    case 3:
+                        return value[0];
+                    case 4:
+                        return value[1];
+                    case 5:
+                        return value[1] - value[0];
+                    case 6:
+                        return (Float.isNaN(value[2]) ? null : value[2]);
+                    default:
+                        return (Float.isNaN(value[3]) ? null : value[3]);
+                }
+            }
+        };
+
+        table.sortBy(0, true);
+        Console.showTable(table);
+        return CommandResult.SUCCESS;
+    }
+    //</editor-fold>
+
+    private static class ExportJob extends JobScheduler.Job
+    {
+        private final String file;
+        private final List<SubmarketAPI> submarkets = new ArrayList<>();
+        private final StringBuilder output = new StringBuilder(1 << 16);
+        private int nextSubmarket = 0, totalRows = 0;
+
+        private ExportJob(String file)
+        {
+            super("exporting markets to " + getPath(file));
+            this.file = file;
+            for (MarketAPI market : Global.getSector().getEconomy().getMarketsCopy())
+            {
+                submarkets.addAll(market.getSubmarketsCopy());
+            }
+
+            output.append("# ").append(Global.getSector().getClock().getDateString()).append('\n')
+                    .append(HEADER).append('\n');
+        }
+
+        @Override
+        protected boolean step()
+        {
+            // Submarkets are exported one per step, so a frame is never held up by more than one large submarket
+            if (nextSubmarket < submarkets.size())
+            {
+                exportSubmarket(submarkets.get(nextSubmarket++));
+            }
+
+            return nextSubmarket >= submarkets.size();
+        }
+
+        @Override
+        public float getProgress()
+        {
+            return (submarkets.isEmpty() ? 1f : nextSubmarket / (float) submarkets.size());
+        }
+
+        private void exportSubmarket(SubmarketAPI submarket)
+        {
+            // Submarkets of decivilized markets may have been removed since the export started
+            final MarketAPI market = submarket.getMarket();
+            if (market == null || !market.hasSubmarket(submarket.getSpecId()))
+            {
+                return;
+            }
+
+            final CargoAPI cargo = submarket.getCargo();
+            for (CargoStackAPI stack : cargo.getStacksCopy())
+            {
+                if (stack.isWeaponStack())
+                {
+                    append(InventoryIndex.getPriceData(submarket, ItemType.WEAPON,
+                            stack.getWeaponSpecIfWeapon().getWeaponId(), stack, null, (int) stack.getSize()), "weapon",
+                            stack.getSize());
+                }
+                else if (stack.isFighterWingStack())
+                {
+                    append(InventoryIndex.getPriceData(submarket, ItemType.WING,
+                            stack.getFighterWingSpecIfWing().getId(), stack, null, (int) stack.getSize()), "wing",
+                            stack.getSize());
+                }
+                else if (stack.isCommodityStack())
+                {
+                    append(InventoryIndex.getPriceData(submarket, ItemType.COMMODITY,
+                            stack.getCommodityId(), stack, null, (int) stack.getSize()), "commodity",
+                            stack.getSize());
+                }
+            }
+
+            // Mothballed ships are listed individually, as each can have a different price
+            for (FleetMemberAPI ship : cargo.getMothballedShips().getMembersListCopy())
+            {
+                append(InventoryIndex.getPriceData(submarket, ItemType.HULL, ship.getHullId(), null, ship, 1),
+                        "hull", 1f);
+            }
+        }
+
+        /**
+         * @param quantity The exact amount in stock. Commodity stacks can hold fractions of a unit, which the
+         *                 {@link PriceData} quantity would round away.
+         */
+        private void append(PriceData data, String type, float quantity)
+        {
+            final SubmarketAPI submarket = data.getSubmarket();
+            output.append(submarket.getMarket().getId()).append(',')
+                    .append(submarket.getMarket().getFactionId()).append(',')
+                    .append(submarket.getSpecId()).append(',')
+                    .append(type).append(',')
+                    .append(data.getItem()).append(',')
+                    .append(quantity == (int) quantity ? String.valueOf((int) quantity) : String.valueOf(quantity))
+                    .append(',')
+                    .append(Math.round(data.getPrice())).append(',')
+                    .append(data.isIllegal() ? '0' : '1').append('\n');
+            totalRows++;
+        }
+
+        @Override
+        protected void onFinished()
+        {
+            try
+            {
+                Global.getSettings().writeTextFileToCommon(getPath(file), output.toString());
+                Console.showMessage("Exported " + totalRows + " listings from " + submarkets.size()
+                        + " submarkets to " + getPath(file) + ".");
+            }
+            catch (IOException ex)
+            {
+                Log.error("Failed to write market export", ex);
+                Console.showException("Failed to write " + getPath(file) + ": ", ex);
+            }
+        }
+    }
+}
@@ -1,19 +1,17 @@
 package org.lazywizard.console.commands;
 
 import com.fs.starfarer.api.Global;
-import com.fs.starfarer.api.campaign.CargoAPI;
-import com.fs.starfarer.api.campaign.CargoAPI.CargoItemType;
-import com.fs.starfarer.api.campaign.CargoStackAPI;
 import com.fs.starfarer.api.campaign.LocationAPI;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
-import com.fs.starfarer.api.campaign.SubmarketPlugin.TransferAction;
-import com.fs.starfarer.api.campaign.econ.MarketAPI;
 import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
-import com.fs.starfarer.api.impl.campaign.submarkets.BaseSubmarketPlugin;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ConsoleTable;
+import org.lazywizard.console.ConsoleTable.Column;
+import org.lazywizard.console.ConsoleTable.ColumnType;
+import org.lazywizard.lazylib.CollectionUtils;
 import org.lazywizard.lazylib.MathUtils;
 
 import java.text.NumberFormat;
@@ -21,13 +19,9 @@ import java.util.*;
 
 // TODO: Potentially split into FindItem, FindWeapon, FindWing and FindHullmod?
 // FIXME: Prices are sometimes incorrect
-// FIXME: Stacks over 10k (ex: fuel) report incorrect totals
 public class FindItem implements BaseCommand
 {
-    private static float getPrice()
-    {
-        return 0f; // TODO
-    }
+    static final String PROBE_ARG = "probe";
 
     @Override
     public CommandResult runCommand(String args, CommandContext context)
@@ -43,148 +37,165 @@ public class FindItem implements BaseCommand
             return CommandResult.BAD_SYNTAX;
         }
 
-        boolean isWeapon = false, isWing = false;
+        // Several items can be searched for at once, ex: 'finditem hammer, sabot, supplies'
         final List allWeps = Global.getSector().getAllWeaponIds(),
                 allWings = Global.getSector().getAllFighterWingIds(),
                 allItems = Global.getSector().getEconomy().getAllCommodityIds();
-        final Map.Entry<String, List<String>> bestMatch =
-                CommandUtils.findBestStringMatch(args, allWeps, allWings, allItems);
-        final String id = bestMatch.getKey();
-        if (id == null)
+        final Map<String, InventoryIndex.ItemType> ids = new LinkedHashMap<>();
+        boolean probeOnly = false;
+        for (String arg : args.split("[\\s,]+"))
         {
-            Console.showMessage("No weapons, LPCs or commodities found with id '"
-                    + args + "'.\nUse \"list commodities\", \"list wings\" or \"list weapons\""
-                    + " to show all valid options.");
-            return CommandResult.ERROR;
-        }
+            if (arg.isEmpty()) continue;
+            if (PROBE_ARG.equalsIgnoreCase(arg))
+            {
+                probeOnly = true;
+                continue;
+            }
 
-        final Collection<String> source = bestMatch.getValue();
-        if (source == allWeps)
-            isWeapon = true;
-        else if (source == allWings)
-            isWing = true;
+            final Map.Entry<String, List<String>> bestMatch =
+                    CommandUtils.findBestStringMatch(arg, allWeps, allWings, allItems);
+            final String id = bestMatch.getKey();
+            if (id == null)
+            {
+                Console.showMessage("No weapons, LPCs or commodities found with id '"
+                        + arg + "'.\nUse \"list commodities\", \"list wings\" or \"list weapons\""
+                        + " to show all valid options.");
+                return CommandResult.ERROR;
+            }
 
-        // Weapon analysis has to be done through a cargo stack
-        CargoStackAPI stack = null;
-        final float weaponPriceMod = Global.getSettings().getFloat("nonEconItemBuyPriceMult"),
-                wingPriceMod = Global.getSettings().getFloat("shipBuyPriceMult");
-        if (isWeapon || isWing)
+            final Collection<String> source = bestMatch.getValue();
+            ids.put(id, (source == allWeps ? InventoryIndex.ItemType.WEAPON : (source == allWings
+                    ? InventoryIndex.ItemType.WING : InventoryIndex.ItemType.COMMODITY)));
+        }
+
+        if (ids.isEmpty())
         {
-            CargoAPI tmp = Global.getFactory().createCargo(false);
-            tmp.addItems(isWeapon ? CargoItemType.WEAPONS : CargoItemType.FIGHTER_CHIP, id, 1);
-            stack = tmp.getStacksCopy().get(0);
+            return CommandResult.BAD_SYNTAX;
         }
 
+        return showResults(ids, probeOnly);
+    }
+
+    /**
+     * Looks up every item in a single pass over the inventory index and shows where they can be found.
+     */
+    static CommandResult showResults(Map<String, InventoryIndex.ItemType> ids, boolean probeOnly)
+    {
+        final InventoryIndex index = InventoryIndex.getIndex();
+        index.refresh(probeOnly);
+
         final List<PriceData> found = new ArrayList<>(), foundFree = new ArrayList<>();
-        for (final MarketAPI market : Global.getSector().getEconomy().getMarketsCopy())
+        for (Map.Entry<String, InventoryIndex.ItemType> entry : ids.entrySet())
         {
-            for (final SubmarketAPI submarket : market.getSubmarketsCopy())
+            for (PriceData data : index.find(entry.getValue(), entry.getKey()))
             {
-                if (submarket.getPlugin() instanceof BaseSubmarketPlugin)
+                if (data.getSubmarket().getPlugin().isFreeTransfer())
                 {
-                    final BaseSubmarketPlugin plugin = (BaseSubmarketPlugin) submarket.getPlugin();
-                    plugin.updateCargoPrePlayerInteraction();
+                    foundFree.add(data);
                 }
-
-                final int total = (int) submarket.getCargo().getQuantity(
-                        (isWeapon ? CargoItemType.WEAPONS : (isWing ? CargoItemType.FIGHTER_CHIP : CargoItemType.RESOURCES)), id);
-                if (total > 0)
+                else
                 {
-                    float price;
-                    boolean isIllegal, isFree = false;
-
-                    if (submarket.getPlugin().isFreeTransfer())
-                    {
-                        price = 0;
-                        isIllegal = false;
-                        isFree = true;
-                    }
-                    else if (isWeapon || isWing)
-                    {
-                        price = stack.getBaseValuePerUnit() * (isWeapon ? weaponPriceMod : wingPriceMod);
-                        price += (price * submarket.getTariff());
-                        isIllegal = submarket.getPlugin().isIllegalOnSubmarket(
-                                stack, TransferAction.PLAYER_BUY);
-                    }
-                    else
-                    {
-                        price = market.getSupplyPrice(id, 1f, true);
-                        price += (price * submarket.getTariff());
-                        isIllegal = submarket.getPlugin().isIllegalOnSubmarket(
-                                id, TransferAction.PLAYER_BUY);
-                    }
-
-                    if (isFree)
-                    {
-                        foundFree.add(new PriceData(submarket, price, total, isIllegal));
-                    }
-                    else
-                    {
-                        found.add(new PriceData(submarket, price, total, isIllegal));
-                    }
+                    found.add(data);
                 }
             }
         }
 
+        final String desc;
+        if (ids.size() > 1)
+        {
+            desc = "any of " + CollectionUtils.implode(ids.keySet());
+        }
+        else
+        {
+            final Map.Entry<String, InventoryIndex.ItemType> entry = ids.entrySet().iterator().next();
+            desc = getTypeName(entry.getValue()) + " '" + entry.getKey() + "'";
+        }
+
         if (found.isEmpty() && foundFree.isEmpty())
         {
-            Console.showMessage("No " + (isWeapon ? "weapons" : (isWing ? "LPCs" : "commodities"))
-                    + " with id '" + id + "' are available! Try using \"ForceMarketUpdate\".");
+            Console.showMessage("No markets have " + desc + " available! Try using \"ForceMarketUpdate\""
+                    + (probeOnly ? " or searching without '" + PROBE_ARG + "'." : "."));
             return CommandResult.SUCCESS;
         }
 
-        final Comparator<PriceData> comparator = new SortByMarketDistance(
-                Global.getSector().getPlayerFleet());
+        final SectorEntityToken player = Global.getSector().getPlayerFleet();
+        sortByDistance(found, player);
+        sortByDistance(foundFree, player);
+        Console.showTable(createTable("Found " + found.size() + " markets with " + desc + " for sale and "
+                + foundFree.size() + " storage tabs with it stored in them:", found, foundFree, ids.size() > 1));
+        return CommandResult.SUCCESS;
+    }
 
-        if (!found.isEmpty())
+    private static String getTypeName(InventoryIndex.ItemType type)
+    {
+        switch (type)
         {
-            Console.showMessage("Found " + found.size() + " markets with "
-                    + (isWeapon ? "weapon '" : (isWing ? "LPC '" : "commodity '")) + id + "' for sale:");
-            Collections.sort(found, comparator);
-            for (final PriceData data : found)
-            {
-                final SubmarketAPI submarket = data.submarket;
-                Console.showMessage(" - " + data.getAvailable() + " available for "
-                        + data.getFormattedPrice() + " credits each at "
-                        + submarket.getMarket().getName() + "'s "
-                        + submarket.getNameOneLine() + " submarket ("
-                        + submarket.getFaction().getDisplayName() + ", "
-                        + submarket.getMarket().getPrimaryEntity()
-                        .getContainingLocation().getName()
-                        + (data.isIllegal() ? ", restricted)" : ")"));
-            }
+            case WEAPON:
+                return "weapon";
+            case WING:
+                return "LPC";
+            case HULL:
+                return "hull";
+            default:
+                return "commodity";
         }
+    }
 
-        if (!foundFree.isEmpty())
+    // Markets selling the item are listed first, followed by storage tabs, each sorted by distance
+    static ConsoleTable<PriceData> createTable(String title, List<PriceData> found, List<PriceData> foundFree,
+                                               final boolean showItem)
+    {
+        final List<PriceData> rows = new ArrayList<>(found.size() + foundFree.size());
+        rows.addAll(found);
+        rows.addAll(foundFree);
+        final List<Column> columns = new ArrayList<>();
+        if (showItem) columns.add(new Column("Item", ColumnType.TEXT));
+        Collections.addAll(columns, new Column("Available", ColumnType.INTEGER),
+                new Column("Price", ColumnType.INTEGER), new Column("Market", ColumnType.TEXT), new Column("Submarket", ColumnType.TEXT),
+                new Column("Faction", ColumnType.TEXT), new Column("Location", ColumnType.TEXT),
+                new Column("Status", ColumnType.TEXT));
+        return new ConsoleTable<PriceData>(title, rows, columns.toArray(new Column[columns.size()]))
         {
-            Console.showMessage("Found " + foundFree.size() + " storage tabs with "
-                    + (isWeapon ? "weapon '" : (isWing ? "LPC '" : "commodity '")) + id + "' stored in them:");
-            Collections.sort(foundFree, comparator);
-            for (final PriceData data : foundFree)
+            @Override
+            protected Object getValue(PriceData data, int column)
             {
-                final SubmarketAPI submarket = data.submarket;
-                Console.showMessage(" - " + data.getAvailable() + " available at "
-                        + submarket.getMarket().getName() + "'s "
-                        + submarket.getNameOneLine() + " submarket ("
-                        + submarket.getFaction().getDisplayName() + ", "
-                        + submarket.getMarket().getPrimaryEntity()
-                        .getContainingLocation().getName() + ")");
+                final SubmarketAPI submarket = data.getSubmarket();
+                final boolean isFree = submarket.getPlugin().isFreeTransfer();
+                switch (showItem ? column : column + 1)
+                {
+                    case 0:
+                        return data.getItem();
+                    case 1:
+                        return data.totalAvailable;
+                    case 2:
+                        return (isFree ? null : Math.round(data.getPrice()));
+                    case 3:
+                        return submarket.getMarket().getName();
+                    case 4:
+                        return submarket.getNameOneLine();
+                    case 5:
+                        return submarket.getFaction().getDisplayName();
+                    case 6:
+                        return submarket.getMarket().getPrimaryEntity().getContainingLocation().getName();
+                    default:
+                        return (isFree ? "storage" : (data.isIllegal() ? "restricted" : "for sale"));
+                }
             }
-        }
-
-        return CommandResult.SUCCESS;
+        };
     }
 
     static class PriceData
     {
         private final SubmarketAPI submarket;
+        private final String item;
         private final float pricePer;
         private final int totalAvailable;
         private final boolean isIllegal;
 
-        PriceData(SubmarketAPI submarket, float pricePer, int totalAvailable, boolean isIllegal)
+        PriceData(SubmarketAPI submarket, String item, float pricePer, int totalAvailable, boolean isIllegal)
         {
             this.submarket = submarket;
+            this.item = item;
             this.pricePer = pricePer;
             this.totalAvailable = totalAvailable;
             this.isIllegal = isIllegal;
@@ -195,6 +206,16 @@ public class FindItem implements BaseCommand
             return submarket;
         }
 
+        String getItem()
+        {
+            return item;
+        }
+
+        int getQuantity()
+        {
+            return totalAvailable;
+        }
+
         String getMarketName()
         {
             return submarket.getMarket().getName() + " " + submarket.getNameOneLine();
@@ -221,64 +242,54 @@ public class FindItem implements BaseCommand
         }
     }
 
-    static class SortByMarketDistance implements Comparator<PriceData>
+    /**
+     * Sorts markets in the same system as {@code token} first by their distance to it, then markets in other systems
+     * by hyperspace distance, then markets without an entity. Each distance is only calculated once.
+     */
+    static void sortByDistance(List<PriceData> data, SectorEntityToken token)
     {
-        private final SectorEntityToken token;
-        private final LocationAPI location;
-
-        SortByMarketDistance(SectorEntityToken token)
-        {
-            this.token = token;
-            location = token.getContainingLocation();
-        }
-
-        @Override
-        public int compare(PriceData o1, PriceData o2)
+        final LocationAPI location = token.getContainingLocation();
+        final int size = data.size();
+        final int[] tiers = new int[size];
+        final float[] distances = new float[size];
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
         {
-            // Ensure there's an entity associated with this market
-            final SectorEntityToken t1 = o1.getSubmarket().getMarket().getPrimaryEntity(),
-                    t2 = o2.getSubmarket().getMarket().getPrimaryEntity();
-            if (t1 == null)
+            order[i] = i;
+            final SectorEntityToken entity = data.get(i).getSubmarket().getMarket().getPrimaryEntity();
+            if (entity == null)
             {
-                //System.out.println(o1.getMarket().getName() + "'s primary entity was null!");
-                return 1;
+                tiers[i] = 2;
             }
-            if (t2 == null)
+            else if (entity.getContainingLocation() == location)
             {
-                //System.out.println(o2.getMarket().getName() + "'s primary entity was null!");
-                return -1;
+                distances[i] = MathUtils.getDistanceSquared(token, entity);
             }
-
-            // If both markets are in another system, sort by hyperspace distance
-            final LocationAPI l1 = t1.getContainingLocation(),
-                    l2 = t2.getContainingLocation();
-            if (l1 != location && l2 != location)
+            else
             {
-                //System.out.println(t1.getFullName() + " and " + t2.getFullName()
-                //        + " are in another system.");
-                return Float.compare(MathUtils.getDistanceSquared(
-                        token.getLocationInHyperspace(), t1.getLocationInHyperspace()),
-                        MathUtils.getDistanceSquared(token.getLocationInHyperspace(),
-                                t2.getLocationInHyperspace()));
+                tiers[i] = 1;
+                distances[i] = MathUtils.getDistanceSquared(token.getLocationInHyperspace(),
+                        entity.getLocationInHyperspace());
             }
+        }
 
-            // If only one market is in the same system as the sort token, things are simple
-            if (l1 == location && l2 != location)
-            {
-                //System.out.println(t1.getFullName() + " is in the same system.");
-                return -1;
-            }
-            if (l2 == location && l1 != location)
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer o1, Integer o2)
             {
-                //System.out.println(t2.getFullName() + " is in the same system.");
-                return 1;
+                if (tiers[o1] != tiers[o2]) return Integer.compare(tiers[o1], tiers[o2]);
+                return Float.compare(distances[o1], distances[o2]);
             }
+        });
 
-            // If both locations are in the same system as sort token, sort by local distance
-            //System.out.println(t1.getFullName() + " and " + t2.getFullName()
-            //        + " are in the same system.");
-            return Float.compare(MathUtils.getDistanceSquared(token, t1),
-                    MathUtils.getDistanceSquared(token, t2));
+        final List<PriceData> sorted = new ArrayList<>(size);
+        for (Integer index : order)
+        {
+            sorted.add(data.get(index));
         }
+
+        data.clear();
+        data.addAll(sorted);
     }
 }
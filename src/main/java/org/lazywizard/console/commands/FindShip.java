@@ -1,18 +1,13 @@
 package org.lazywizard.console.commands;
 
 import com.fs.starfarer.api.Global;
-import com.fs.starfarer.api.campaign.SubmarketPlugin.TransferAction;
-import com.fs.starfarer.api.campaign.econ.MarketAPI;
-import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
-import com.fs.starfarer.api.fleet.FleetMemberAPI;
-import com.fs.starfarer.api.impl.campaign.submarkets.BaseSubmarketPlugin;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
-import org.lazywizard.console.commands.FindItem.PriceData;
 
-import java.util.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 // FIXME: Prices are sometimes incorrect
 public class FindShip implements BaseCommand
@@ -31,136 +26,50 @@ public class FindShip implements BaseCommand
             return CommandResult.BAD_SYNTAX;
         }
 
-        if (args.endsWith("_wing"))
+        // Several hulls can be searched for at once, ex: 'findship onslaught, paragon'
+        final Map<String, InventoryIndex.ItemType> ids = new LinkedHashMap<>();
+        boolean probeOnly = false;
+        for (String arg : args.split("[\\s,]+"))
         {
-            return new FindItem().runCommand(args, context);
-        }
-
-        if (args.endsWith("_Hull"))
-        {
-            args = args.substring(0, args.lastIndexOf("_Hull"));
-        }
-
-        String id = CommandUtils.findBestStringMatch(args + "_Hull", Global.getSector().getAllEmptyVariantIds());
-        if (id == null)
-        {
-            id = CommandUtils.findBestStringMatch(args + "_wing",
-                    Global.getSector().getAllFighterWingIds());
-            if (id != null)
+            if (arg.isEmpty()) continue;
+            if (FindItem.PROBE_ARG.equalsIgnoreCase(arg))
             {
-                return new FindItem().runCommand(args + "_wing", context);
+                probeOnly = true;
+                continue;
             }
 
-            Console.showMessage("No hull found with base id '" + args
-                    + "'!\nUse \"list hulls\" to show all valid options.");
-            return CommandResult.ERROR;
-        }
-
-        id = id.substring(0, id.lastIndexOf("_Hull"));
-
-        //System.out.println(id);
-
-        //final float shipPriceMod = Global.getSettings().getFloat("shipBuyPriceMult"); // Unused?
-        final List<PriceData> found = new ArrayList<>(),
-                foundFree = new ArrayList<>();
-        for (MarketAPI market : Global.getSector().getEconomy().getMarketsCopy())
-        {
-            for (SubmarketAPI submarket : market.getSubmarketsCopy())
+            if (arg.endsWith("_Hull"))
             {
-                if (submarket.getPlugin() instanceof BaseSubmarketPlugin)
-                {
-                    final BaseSubmarketPlugin plugin = (BaseSubmarketPlugin) submarket.getPlugin();
-                    plugin.updateCargoPrePlayerInteraction();
-                }
-
-                int total = 0;
-                boolean isFirstFound = true;
-                float price = 0f;
-                boolean isIllegal = false, isFree = false;
-                for (FleetMemberAPI member : submarket.getCargo().getMothballedShips().getMembersListCopy())
-                {
-                    if (member.getHullId().equalsIgnoreCase(id))
-                    {
-                        total++;
-
-                        if (isFirstFound)
-                        {
-                            isFirstFound = false;
-
-                            if (submarket.getPlugin().isFreeTransfer())
-                            {
-                                price = 0;
-                                isIllegal = false;
-                                isFree = true;
-                            }
-                            else
-                            {
-                                price = member.getBaseBuyValue();
-                                price += (price * submarket.getTariff());
-                                isIllegal = submarket.getPlugin().isIllegalOnSubmarket(
-                                        member, TransferAction.PLAYER_BUY);
-                            }
-                        }
-                    }
-                }
-
-                if (total > 0)
-                {
-                    if (isFree)
-                    {
-                        foundFree.add(new PriceData(submarket, price, total, isIllegal));
-                    }
-                    else
-                    {
-                        found.add(new PriceData(submarket, price, total, isIllegal));
-                    }
-                }
+                arg = arg.substring(0, arg.lastIndexOf("_Hull"));
             }
-        }
-
-        if (found.isEmpty() && foundFree.isEmpty())
-        {
-            Console.showMessage("No hulls with id '" + id + "' are available! Try using \"ForceMarketUpdate\".");
-            return CommandResult.SUCCESS;
-        }
 
-        final Comparator<PriceData> comparator = new FindItem.SortByMarketDistance(
-                Global.getSector().getPlayerFleet());
+            String id = (arg.endsWith("_wing") ? null
+                    : CommandUtils.findBestStringMatch(arg + "_Hull", Global.getSector().getAllEmptyVariantIds()));
+            if (id != null)
+            {
+                ids.put(id.substring(0, id.lastIndexOf("_Hull")), InventoryIndex.ItemType.HULL);
+                continue;
+            }
 
-        if (!found.isEmpty())
-        {
-            Console.showMessage("Found " + found.size() + " markets with hull '" + id + "' for sale:");
-            Collections.sort(found, comparator);
-            for (final PriceData data : found)
+            // Fighter wings are sold as LPCs, so search for those instead
+            id = CommandUtils.findBestStringMatch(arg.endsWith("_wing") ? arg : arg + "_wing",
+                    Global.getSector().getAllFighterWingIds());
+            if (id != null)
             {
-                final SubmarketAPI submarket = data.getSubmarket();
-                Console.showMessage(" - " + data.getAvailable() + " available for "
-                        + data.getFormattedPrice() + " credits at "
-                        + submarket.getMarket().getName() + "'s "
-                        + submarket.getNameOneLine() + " submarket ("
-                        + submarket.getFaction().getDisplayName() + ", "
-                        + submarket.getMarket().getPrimaryEntity()
-                        .getContainingLocation().getName()
-                        + (data.isIllegal() ? ", restricted)" : ")"));
+                ids.put(id, InventoryIndex.ItemType.WING);
+                continue;
             }
+
+            Console.showMessage("No hull found with base id '" + arg
+                    + "'!\nUse \"list hulls\" to show all valid options.");
+            return CommandResult.ERROR;
         }
 
-        if (!foundFree.isEmpty())
+        if (ids.isEmpty())
         {
-            Console.showMessage("Found " + foundFree.size() + " storage tabs with hull '" + id + "' stored in them:");
-            Collections.sort(foundFree, comparator);
-            for (final PriceData data : foundFree)
-            {
-                final SubmarketAPI submarket = data.getSubmarket();
-                Console.showMessage(" - " + data.getAvailable() + " available at "
-                        + submarket.getMarket().getName() + "'s "
-                        + submarket.getNameOneLine() + " submarket ("
-                        + submarket.getFaction().getDisplayName() + ", "
-                        + submarket.getMarket().getPrimaryEntity()
-                        .getContainingLocation().getName() + ")");
-            }
+            return CommandResult.BAD_SYNTAX;
         }
 
-        return CommandResult.SUCCESS;
+        return FindItem.showResults(ids, probeOnly);
     }
 }
@@ -8,6 +8,10 @@ import com.fs.starfarer.api.impl.campaign.submarkets.BaseSubmarketPlugin;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.JobScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class ForceMarketUpdate implements BaseCommand
 {
@@ -20,45 +24,100 @@ public class ForceMarketUpdate implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        int totalMarkets = 0, totalSubmarkets = 0, failedSubmarkets = 0;
-        for (MarketAPI market : Global.getSector().getEconomy().getMarketsCopy())
+        final List<MarketAPI> markets = Global.getSector().getEconomy().getMarketsCopy();
+        final List<SubmarketAPI> submarkets = new ArrayList<>();
+        for (MarketAPI market : markets)
         {
-            totalMarkets++;
             for (SubmarketAPI submarket : market.getSubmarketsCopy())
             {
-                // Ignore storage tabs
-                if (Submarkets.SUBMARKET_STORAGE.equals(submarket.getSpec().getId()))
+                // Ignore storage tabs, and only update submarkets that implement BaseSubmarketPlugin
+                // (guaranteed to have the proper fields)
+                if (!Submarkets.SUBMARKET_STORAGE.equals(submarket.getSpec().getId())
+                        && submarket.getPlugin() instanceof BaseSubmarketPlugin)
                 {
-                    continue;
-                }
-
-                // Only update submarkets that implement BaseSubmarketPlugin (guaranteed to have the proper fields)
-                if (submarket.getPlugin() instanceof BaseSubmarketPlugin)
-                {
-                    try
-                    {
-                        final BaseSubmarketPlugin plugin = (BaseSubmarketPlugin) submarket.getPlugin();
-                        plugin.setSinceSWUpdate(plugin.getMinSWUpdateInterval() + 1f);
-                        plugin.setSinceLastCargoUpdate(plugin.getMinSWUpdateInterval() + 1f);
-                        plugin.updateCargoPrePlayerInteraction();
-                        plugin.setSinceSWUpdate(0f);
-                        plugin.setSinceLastCargoUpdate(0f);
-                        totalSubmarkets++;
-                    }
-                    catch (Exception ex)
-                    {
-                        Console.showException("Failed to update submarket '" + submarket.getName() + "' (" +
-                                submarket.getSpecId() + ") in market '" + market.getName() + "' (" +
-                                market.getId() + "): ", ex);
-                        failedSubmarkets++;
-                    }
+                    submarkets.add(submarket);
                 }
             }
         }
 
-        Console.showMessage("Updated inventory for " + totalSubmarkets
-                + " submarkets in " + totalMarkets + " markets." + (failedSubmarkets > 0 ?
-                " " + failedSubmarkets + " submarkets failed to update." : ""));
+        // Regenerating cargo is expensive, so large sectors are updated over several frames
+        final int jobId = JobScheduler.submit(new UpdateJob(submarkets, markets.size()));
+        Console.showMessage("Updating inventory for " + submarkets.size() + " submarkets in " + markets.size()
+                + " markets as job " + jobId + "...");
         return CommandResult.SUCCESS;
     }
+
+    private static class UpdateJob extends JobScheduler.Job
+    {
+        private final List<SubmarketAPI> submarkets;
+        private final int totalMarkets;
+        private int nextSubmarket = 0, totalSubmarkets = 0, failedSubmarkets = 0;
+
+        private UpdateJob(List<SubmarketAPI> submarkets, int totalMarkets)
+        {
+            super("market update");
+            this.submarkets = submarkets;
+            this.totalMarkets = totalMarkets;
+        }
+
+        @Override
+        protected boolean step()
+        {
+            if (nextSubmarket < submarkets.size())
+            {
+                update(submarkets.get(nextSubmarket++));
+            }
+
+            return nextSubmarket >= submarkets.size();
+        }
+
+        private void update(SubmarketAPI submarket)
+        {
+            // Submarkets of decivilized markets may have been removed since the update started
+            final MarketAPI market = submarket.getMarket();
+            if (market == null || !market.hasSubmarket(submarket.getSpecId()))
+            {
+                return;
+            }
+
+            try
+            {
+                final BaseSubmarketPlugin plugin = (BaseSubmarketPlugin) submarket.getPlugin();
+                plugin.setSinceSWUpdate(plugin.getMinSWUpdateInterval() + 1f);
+                plugin.setSinceLastCargoUpdate(plugin.getMinSWUpdateInterval() + 1f);
+                plugin.updateCargoPrePlayerInteraction();
+                plugin.setSinceSWUpdate(0f);
+                plugin.setSinceLastCargoUpdate(0f);
+                totalSubmarkets++;
+            }
+            catch (Exception ex)
+            {
+                Console.showException("Failed to update submarket '" + submarket.getName() + "' (" +
+                        submarket.getSpecId() + ") in market '" + market.getName() + "' (" +
+                        market.getId() + "): ", ex);
+                failedSubmarkets++;
+            }
+        }
+
+        @Override
+        public float getProgress()
+        {
+            return (submarkets.isEmpty() ? 1f : nextSubmarket / (float) submarkets.size());
+        }
+
+        @Override
+        protected void onFinished()
+        {
+            Console.showMessage("Updated inventory for " + totalSubmarkets
+                    + " submarkets in " + totalMarkets + " markets." + (failedSubmarkets > 0 ?
+                    " " + failedSubmarkets + " submarkets failed to update." : ""));
+        }
+
+        @Override
+        protected void onCancelled()
+        {
+            Console.showMessage("Cancelled market update after updating " + totalSubmarkets + " of "
+                    + submarkets.size() + " submarkets.");
+        }
+    }
 }
@@ -61,8 +61,9 @@ public class God implements BaseCommand
 
     private static class GodPlugin extends CheatPlugin
     {
+        // Modifiers persist, so they only need to be applied once per ship
         @Override
-        public void advance(@NotNull ShipAPI ship, float amount)
+        public void onShipAdded(@NotNull ShipAPI ship)
         {
             final MutableShipStatsAPI stats = ship.getMutableStats();
             stats.getCombatEngineRepairTimeMult().modifyMult(CHEAT_ID, 0f);
@@ -75,6 +76,12 @@ public class God implements BaseCommand
             stats.getArmorDamageTakenMult().modifyMult(CHEAT_ID, 0.00001f);
         }
 
+        @Override
+        public void onShipRemoved(@NotNull ShipAPI ship)
+        {
+            unapply(ship);
+        }
+
         @Override
         public void unapply(@NotNull ShipAPI ship)
         {
@@ -1,7 +1,10 @@
 package org.lazywizard.console.commands;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.combat.BaseEveryFrameCombatPlugin;
@@ -73,22 +76,58 @@ public class InfiniteAmmo implements BaseCommand
 
     private static class InfiniteAmmoPlugin extends CheatPlugin
     {
+        // Only weapons that use ammo need to be checked each frame
+        private final Map<ShipAPI, List<WeaponAPI>> ammoWeapons = new HashMap<>();
 
         @Override
-        public void advance(@NotNull ShipAPI ship, float amount)
+        public void onShipAdded(@NotNull ShipAPI ship)
         {
+            final List<WeaponAPI> weapons = new ArrayList<>();
             for (WeaponAPI wep : ship.getAllWeapons())
             {
-                wep.resetAmmo();
+                if (wep.usesAmmo())
+                {
+                    weapons.add(wep);
+                }
+            }
+
+            ammoWeapons.put(ship, weapons);
+        }
+
+        @Override
+        public void onShipRemoved(@NotNull ShipAPI ship)
+        {
+            ammoWeapons.remove(ship);
+        }
+
+        @Override
+        public void advance(@NotNull ShipAPI ship, float amount)
+        {
+            final List<WeaponAPI> weapons = ammoWeapons.get(ship);
+            if (weapons != null)
+            {
+                for (WeaponAPI wep : weapons)
+                {
+                    if (isMissingAmmo(wep))
+                    {
+                        wep.resetAmmo();
+                    }
+                }
             }
 
             final ShipSystemAPI system = ship.getSystem();
-            if (system != null && system.getAmmo() < system.getMaxAmmo())
+            if (isMissingAmmo(system))
             {
                 system.setAmmo(system.getMaxAmmo());
             }
         }
 
+        @Override
+        public void unapply(@NotNull ShipAPI ship)
+        {
+            ammoWeapons.remove(ship);
+        }
+
         @Override
         public boolean runWhilePaused()
         {
@@ -10,6 +10,9 @@ import org.lazywizard.console.cheatmanager.CheatTarget;
 import org.lazywizard.console.cheatmanager.CombatCheatManager;
 import org.lazywizard.lazylib.CollectionUtils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class InfiniteCR implements BaseCommand
 {
     private static final String CHEAT_ID = "lw_console_infinitecr";
@@ -60,18 +63,43 @@ public class InfiniteCR implements BaseCommand
 
     private static class InfiniteCRPlugin extends CheatPlugin
     {
+        // Peak time is extended in steps of this many seconds instead of every frame
+        private static final float PEAK_TIME_BUFFER = 10f;
+        private final Map<ShipAPI, Float> peakTimeAdded = new HashMap<>();
+
         @Override
         public void advance(@NotNull ShipAPI ship, float amount)
         {
             if (ship.losesCRDuringCombat())
             {
-                ship.setCurrentCR(Math.max(ship.getCurrentCR(), ship.getCRAtDeployment()));
-                ship.getMutableStats().getPeakCRDuration().modifyFlat(
-                        "lw_console", ship.getTimeDeployedForCRReduction()
-                                * ship.getMutableStats().getCRLossPerSecondPercent().getBonusMult());
+                if (isBelow(ship.getCurrentCR(), ship.getCRAtDeployment()))
+                {
+                    ship.setCurrentCR(ship.getCRAtDeployment());
+                }
+
+                final float needed = ship.getTimeDeployedForCRReduction()
+                        * ship.getMutableStats().getCRLossPerSecondPercent().getBonusMult();
+                final Float added = peakTimeAdded.get(ship);
+                if (added == null || added < needed)
+                {
+                    ship.getMutableStats().getPeakCRDuration().modifyFlat("lw_console", needed + PEAK_TIME_BUFFER);
+                    peakTimeAdded.put(ship, needed + PEAK_TIME_BUFFER);
+                }
             }
         }
 
+        @Override
+        public void onShipRemoved(@NotNull ShipAPI ship)
+        {
+            peakTimeAdded.remove(ship);
+        }
+
+        @Override
+        public void unapply(@NotNull ShipAPI ship)
+        {
+            peakTimeAdded.remove(ship);
+        }
+
         @Override
         public boolean runWhilePaused()
         {
@@ -1,17 +1,18 @@
 package org.lazywizard.console.commands;
 
-import java.lang.ref.WeakReference;
-import com.fs.starfarer.api.EveryFrameScript;
 import com.fs.starfarer.api.Global;
-import com.fs.starfarer.api.campaign.CampaignFleetAPI;
+import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.SectorAPI;
+import org.jetbrains.annotations.NotNull;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.cheatmanager.CampaignCheatManager;
+import org.lazywizard.console.cheatmanager.CampaignCheatPlugin;
 
 public class InfiniteFuel implements BaseCommand
 {
-    private static WeakReference<SectorAPI> lastSector = new WeakReference<>(null);
+    private static final String CHEAT_ID = "lw_console_infinitefuel";
 
     @Override
     public CommandResult runCommand(String args, CommandContext context)
@@ -22,57 +23,53 @@ public class InfiniteFuel implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        SectorAPI tmp = lastSector.get();
-        if (tmp != null && tmp == Global.getSector())
+        if (CampaignCheatManager.isEnabled(CHEAT_ID))
         {
-            Global.getSector().removeTransientScriptsOfClass(InfiniteFuelScript.class);
-            lastSector.clear();
+            CampaignCheatManager.disableCheat(CHEAT_ID);
             Console.showMessage("Infinite fuel disabled.");
             return CommandResult.SUCCESS;
         }
 
-        CampaignFleetAPI player = Global.getSector().getPlayerFleet();
-        Global.getSector().addTransientScript(new InfiniteFuelScript(player));
-        lastSector = new WeakReference<>(Global.getSector());
+        CampaignCheatManager.enableCheat(CHEAT_ID, "Infinite Fuel", new InfiniteFuelPlugin());
         Console.showMessage("Infinite fuel enabled.");
         return CommandResult.SUCCESS;
     }
 
-    private static class InfiniteFuelScript implements EveryFrameScript
+    private static class InfiniteFuelPlugin extends CampaignCheatPlugin
     {
-        private final CampaignFleetAPI fleet;
         private float fuel;
 
-        private InfiniteFuelScript(CampaignFleetAPI fleet)
+        private static CargoAPI getCargo()
         {
-            this.fleet = fleet;
+            return Global.getSector().getPlayerFleet().getCargo();
         }
 
         @Override
-        public boolean isDone()
+        public void onStart(@NotNull SectorAPI sector)
         {
-            return false;
+            fuel = getCargo().getFuel();
         }
 
+        // Support for market transactions and quest rewards
         @Override
-        public boolean runWhilePaused()
+        public void onResume()
         {
-            return true;
+            fuel = getCargo().getFuel();
         }
 
         @Override
         public void advance(float amount)
         {
-            float currentFuel = fleet.getCargo().getFuel();
-
-            // Support for market transactions and quest rewards
-            if (Global.getSector().isPaused() || currentFuel > fuel)
+            final CargoAPI cargo = getCargo();
+            final float currentFuel = cargo.getFuel();
+            if (currentFuel > fuel)
             {
                 fuel = currentFuel;
-                return;
             }
-
-            fleet.getCargo().addFuel(fuel - fleet.getCargo().getFuel());
+            else if (currentFuel < fuel)
+            {
+                cargo.addFuel(fuel - currentFuel);
+            }
         }
     }
 }
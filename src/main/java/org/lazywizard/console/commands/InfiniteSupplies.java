@@ -1,19 +1,18 @@
 package org.lazywizard.console.commands;
 
-import java.lang.ref.WeakReference;
-import com.fs.starfarer.api.EveryFrameScript;
 import com.fs.starfarer.api.Global;
-import com.fs.starfarer.api.campaign.CampaignFleetAPI;
+import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.SectorAPI;
+import org.jetbrains.annotations.NotNull;
 import org.lazywizard.console.BaseCommand;
-import org.lazywizard.console.BaseCommand.CommandContext;
-import org.lazywizard.console.BaseCommand.CommandResult;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.cheatmanager.CampaignCheatManager;
+import org.lazywizard.console.cheatmanager.CampaignCheatPlugin;
 
 public class InfiniteSupplies implements BaseCommand
 {
-    private static WeakReference<SectorAPI> lastSector = new WeakReference<>(null);
+    private static final String CHEAT_ID = "lw_console_infinitesupplies";
 
     @Override
     public CommandResult runCommand(String args, CommandContext context)
@@ -24,57 +23,53 @@ public class InfiniteSupplies implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        SectorAPI tmp = lastSector.get();
-        if (tmp != null && tmp == Global.getSector())
+        if (CampaignCheatManager.isEnabled(CHEAT_ID))
         {
-            Global.getSector().removeTransientScriptsOfClass(InfiniteSuppliesScript.class);
-            lastSector.clear();
+            CampaignCheatManager.disableCheat(CHEAT_ID);
             Console.showMessage("Infinite supplies disabled.");
             return CommandResult.SUCCESS;
         }
 
-        CampaignFleetAPI player = Global.getSector().getPlayerFleet();
-        Global.getSector().addTransientScript(new InfiniteSuppliesScript(player));
-        lastSector = new WeakReference<>(Global.getSector());
+        CampaignCheatManager.enableCheat(CHEAT_ID, "Infinite Supplies", new InfiniteSuppliesPlugin());
         Console.showMessage("Infinite supplies enabled.");
         return CommandResult.SUCCESS;
     }
 
-    private static class InfiniteSuppliesScript implements EveryFrameScript
+    private static class InfiniteSuppliesPlugin extends CampaignCheatPlugin
     {
-        private final CampaignFleetAPI fleet;
         private float supplies;
 
-        private InfiniteSuppliesScript(CampaignFleetAPI fleet)
+        private static CargoAPI getCargo()
         {
-            this.fleet = fleet;
+            return Global.getSector().getPlayerFleet().getCargo();
         }
 
         @Override
-        public boolean isDone()
+        public void onStart(@NotNull SectorAPI sector)
         {
-            return false;
+            supplies = getCargo().getSupplies();
         }
 
+        // Support for market transactions and quest rewards
         @Override
-        public boolean runWhilePaused()
+        public void onResume()
         {
-            return true;
+            supplies = getCargo().getSupplies();
         }
 
         @Override
         public void advance(float amount)
         {
-            float currentSupplies = fleet.getCargo().getSupplies();
-
-            // Support for market transactions and quest rewards
-            if (Global.getSector().isPaused() || currentSupplies > supplies)
+            final CargoAPI cargo = getCargo();
+            final float currentSupplies = cargo.getSupplies();
+            if (currentSupplies > supplies)
             {
                 supplies = currentSupplies;
-                return;
             }
-
-            fleet.getCargo().addSupplies(supplies - fleet.getCargo().getSupplies());
+            else if (currentSupplies < supplies)
+            {
+                cargo.addSupplies(supplies - currentSupplies);
+            }
         }
     }
 }
@@ -0,0 +1,373 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.CargoAPI;
+import com.fs.starfarer.api.campaign.CargoStackAPI;
+import com.fs.starfarer.api.campaign.SectorAPI;
+import com.fs.starfarer.api.campaign.SubmarketPlugin;
+import com.fs.starfarer.api.campaign.SubmarketPlugin.TransferAction;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
+import com.fs.starfarer.api.fleet.FleetMemberAPI;
+import com.fs.starfarer.api.impl.campaign.submarkets.BaseSubmarketPlugin;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.lazywizard.console.commands.FindItem.PriceData;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * An index of what every submarket in the sector has in stock, used by FindItem and FindShip.
+ * <p>
+ * Each submarket's cargo is only re-read when it has visibly changed since it was last indexed, and lookups return
+ * the listings for an item directly instead of scanning every market. Prices and legality are only worked out for the
+ * listings a lookup returns, so they always reflect the current economy.
+ * <p>
+ * Only market, submarket and item IDs are stored, never game objects, so holding the index statically doesn't keep an
+ * old sector in memory after another save is loaded. Submarkets are looked up again by ID when a lookup needs them.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+final class InventoryIndex
+{
+    private static final Logger Log = Global.getLogger(InventoryIndex.class);
+    private static InventoryIndex instance = null;
+    private final WeakReference<SectorAPI> sector;
+    private final Map<String, SubmarketEntry> submarkets = new HashMap<>();
+    private final Map<String, List<Listing>> listings = new HashMap<>();
+
+    enum ItemType
+    {
+        COMMODITY, WEAPON, WING, HULL
+    }
+
+    private InventoryIndex(SectorAPI sector)
+    {
+        this.sector = new WeakReference<>(sector);
+    }
+
+    static InventoryIndex getIndex()
+    {
+        final SectorAPI sector = Global.getSector();
+        if (instance == null || instance.sector.get() != sector)
+        {
+            instance = new InventoryIndex(sector);
+        }
+
+        return instance;
+    }
+
+    private static String getKey(ItemType type, String id)
+    {
+        return type.ordinal() + ":" + id.toLowerCase();
+    }
+
+    private static String getKey(MarketAPI market, SubmarketAPI submarket)
+    {
+        return market.getId() + ":" + submarket.getSpecId();
+    }
+
+    /**
+     * Brings the index up to date with every submarket in the sector.
+     *
+     * @param probeOnly If {@code true}, cargo is only read as it is. Otherwise submarkets that haven't restocked in
+     *                  the last day are asked to do so first, as they would if the player opened them.
+     */
+    void refresh(boolean probeOnly)
+    {
+        final Set<String> seen = new HashSet<>();
+        int reindexed = 0;
+        for (MarketAPI market : sector.get().getEconomy().getMarketsCopy())
+        {
+            for (SubmarketAPI submarket : market.getSubmarketsCopy())
+            {
+                final String submarketKey = getKey(market, submarket);
+                seen.add(submarketKey);
+                if (!probeOnly && submarket.getPlugin() instanceof BaseSubmarketPlugin)
+                {
+                    final BaseSubmarketPlugin plugin = (BaseSubmarketPlugin) submarket.getPlugin();
+                    if (plugin.getSinceLastCargoUpdate() >= 1f)
+                    {
+                        plugin.updateCargoPrePlayerInteraction();
+                    }
+                }
+
+                final CargoAPI cargo = submarket.getCargo();
+                final List<CargoStackAPI> stacks = cargo.getStacksCopy();
+                final List<FleetMemberAPI> ships = cargo.getMothballedShips().getMembersListCopy();
+                final int signature = getSignature(cargo, stacks, ships);
+                final SubmarketEntry entry = submarkets.get(submarketKey);
+                if (entry != null && entry.signature == signature)
+                {
+                    continue;
+                }
+
+                if (entry != null) removeListings(entry);
+                submarkets.put(submarketKey, index(market.getId(), submarket.getSpecId(), signature, stacks, ships));
+                reindexed++;
+            }
+        }
+
+        // Drop submarkets that were removed or whose market decivilized
+        for (Iterator<Map.Entry<String, SubmarketEntry>> iter = submarkets.entrySet().iterator(); iter.hasNext(); )
+        {
+            final Map.Entry<String, SubmarketEntry> entry = iter.next();
+            if (!seen.contains(entry.getKey()))
+            {
+                removeListings(entry.getValue());
+                iter.remove();
+            }
+        }
+
+        Log.debug("Re-indexed " + reindexed + " of " + seen.size() + " submarkets");
+    }
+
+    private static int getSignature(CargoAPI cargo, List<CargoStackAPI> stacks, List<FleetMemberAPI> ships)
+    {
+        int signature = stacks.size();
+        signature = signature * 31 + ships.size();
+        signature = signature * 31 + Float.floatToIntBits(cargo.getSpaceUsed());
+        signature = signature * 31 + Float.floatToIntBits(cargo.getFuel());
+        signature = signature * 31 + cargo.getTotalCrew();
+        for (FleetMemberAPI ship : ships)
+        {
+            signature = signature * 31 + ship.getHullId().hashCode();
+        }
+
+        return signature;
+    }
+
+    private SubmarketEntry index(String marketId, String submarketId, int signature, List<CargoStackAPI> stacks,
+                                 List<FleetMemberAPI> ships)
+    {
+        final Map<String, Listing> found = new HashMap<>();
+        for (CargoStackAPI stack : stacks)
+        {
+            final String key;
+            if (stack.isWeaponStack())
+            {
+                key = getKey(ItemType.WEAPON, stack.getWeaponSpecIfWeapon().getWeaponId());
+            }
+            else if (stack.isFighterWingStack())
+            {
+                key = getKey(ItemType.WING, stack.getFighterWingSpecIfWing().getId());
+            }
+            else if (stack.isCommodityStack())
+            {
+                key = getKey(ItemType.COMMODITY, stack.getCommodityId());
+            }
+            else
+            {
+                continue;
+            }
+
+            final Listing listing = found.get(key);
+            if (listing == null)
+            {
+                found.put(key, new Listing(marketId, submarketId, stack.getSize()));
+            }
+            else
+            {
+                listing.quantity += stack.getSize();
+            }
+        }
+
+        for (FleetMemberAPI ship : ships)
+        {
+            final String key = getKey(ItemType.HULL, ship.getHullId());
+            final Listing listing = found.get(key);
+            if (listing == null)
+            {
+                found.put(key, new Listing(marketId, submarketId, 1f));
+            }
+            else
+            {
+                listing.quantity++;
+            }
+        }
+
+        for (Map.Entry<String, Listing> entry : found.entrySet())
+        {
+            List<Listing> forKey = listings.get(entry.getKey());
+            if (forKey == null)
+            {
+                forKey = new ArrayList<>();
+                listings.put(entry.getKey(), forKey);
+            }
+
+            forKey.add(entry.getValue());
+        }
+
+        return new SubmarketEntry(marketId, submarketId, signature, found.keySet());
+    }
+
+    private void removeListings(SubmarketEntry entry)
+    {
+        for (String key : entry.keys)
+        {
+            final List<Listing> forKey = listings.get(key);
+            if (forKey == null)
+            {
+                continue;
+            }
+
+            for (Iterator<Listing> iter = forKey.iterator(); iter.hasNext(); )
+            {
+                final Listing listing = iter.next();
+                if (listing.marketId.equals(entry.marketId) && listing.submarketId.equals(entry.submarketId))
+                {
+                    iter.remove();
+                }
+            }
+
+            if (forKey.isEmpty()) listings.remove(key);
+        }
+    }
+
+    /**
+     * Returns every submarket stocking an item, with current prices. Call {@link #refresh(boolean)} first.
+     */
+    List<PriceData> find(ItemType type, String id)
+    {
+        final List<Listing> forKey = listings.get(getKey(type, id));
+        if (forKey == null)
+        {
+            return Collections.emptyList();
+        }
+
+        final List<PriceData> found = new ArrayList<>(forKey.size());
+        for (Listing listing : forKey)
+        {
+            final MarketAPI market = sector.get().getEconomy().getMarket(listing.marketId);
+            final SubmarketAPI submarket = (market == null ? null : market.getSubmarket(listing.submarketId));
+            if (submarket == null)
+            {
+                continue;
+            }
+
+            // Weapons, wings and hulls are priced from a sample of the item, found again in the submarket's cargo
+            CargoStackAPI stack = null;
+            FleetMemberAPI ship = null;
+            if (type == ItemType.WEAPON || type == ItemType.WING)
+            {
+                stack = findStack(submarket.getCargo(), type, id);
+                if (stack == null) continue;
+            }
+            else if (type == ItemType.HULL)
+            {
+                ship = findShip(submarket.getCargo(), id);
+                if (ship == null) continue;
+            }
+
+            found.add(getPriceData(submarket, type, id, stack, ship, (int) listing.quantity));
+        }
+
+        return found;
+    }
+
+    @Nullable
+    private static CargoStackAPI findStack(CargoAPI cargo, ItemType type, String id)
+    {
+        for (CargoStackAPI stack : cargo.getStacksCopy())
+        {
+            if (type == ItemType.WEAPON && stack.isWeaponStack()
+                    && stack.getWeaponSpecIfWeapon().getWeaponId().equalsIgnoreCase(id))
+            {
+                return stack;
+            }
+
+            if (type == ItemType.WING && stack.isFighterWingStack()
+                    && stack.getFighterWingSpecIfWing().getId().equalsIgnoreCase(id))
+            {
+                return stack;
+            }
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static FleetMemberAPI findShip(CargoAPI cargo, String hullId)
+    {
+        for (FleetMemberAPI ship : cargo.getMothballedShips().getMembersListCopy())
+        {
+            if (ship.getHullId().equalsIgnoreCase(hullId))
+            {
+                return ship;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Works out what the player would pay for an item in a submarket, and whether they're allowed to buy it there.
+     *
+     * @param stack A stack of the item, required for weapons and LPCs.
+     * @param ship  A ship with the hull, required for hulls.
+     */
+    static PriceData getPriceData(SubmarketAPI submarket, ItemType type, String id, @Nullable CargoStackAPI stack,
+                                  @Nullable FleetMemberAPI ship, int quantity)
+    {
+        final SubmarketPlugin plugin = submarket.getPlugin();
+        if (plugin.isFreeTransfer())
+        {
+            return new PriceData(submarket, id, 0f, quantity, false);
+        }
+
+        float price;
+        boolean isIllegal;
+        switch (type)
+        {
+            case WEAPON:
+            case WING:
+                price = stack.getBaseValuePerUnit() * Global.getSettings().getFloat(
+                        type == ItemType.WEAPON ? "nonEconItemBuyPriceMult" : "shipBuyPriceMult");
+                isIllegal = plugin.isIllegalOnSubmarket(stack, TransferAction.PLAYER_BUY);
+                break;
+            case HULL:
+                price = ship.getBaseBuyValue();
+                isIllegal = plugin.isIllegalOnSubmarket(ship, TransferAction.PLAYER_BUY);
+                break;
+            default:
+                price = submarket.getMarket().getSupplyPrice(id, 1f, true);
+                isIllegal = plugin.isIllegalOnSubmarket(id, TransferAction.PLAYER_BUY);
+        }
+
+        price += (price * submarket.getTariff());
+        return new PriceData(submarket, id, price, quantity, isIllegal);
+    }
+
+    /**
+     * Stock of a single item in a single submarket.
+     */
+    private static final class Listing
+    {
+        private final String marketId, submarketId;
+        private float quantity;
+
+        private Listing(String marketId, String submarketId, float quantity)
+        {
+            this.marketId = marketId;
+            this.submarketId = submarketId;
+            this.quantity = quantity;
+        }
+    }
+
+    private static final class SubmarketEntry
+    {
+        private final String marketId, submarketId;
+        private final int signature;
+        private final Set<String> keys;
+
+        private SubmarketEntry(String marketId, String submarketId, int signature, Set<String> keys)
+        {
+            this.marketId = marketId;
+            this.submarketId = submarketId;
+            this.signature = signature;
+            this.keys = keys;
+        }
+    }
+}
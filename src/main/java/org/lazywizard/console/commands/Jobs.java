@@ -0,0 +1,76 @@
+package org.lazywizard.console.commands;
+
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommonStrings;
+import org.lazywizard.console.Console;
+import org.lazywizard.console.JobScheduler;
+import org.lazywizard.console.JobScheduler.Job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Jobs implements BaseCommand
+{
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (!context.isInCampaign())
+        {
+            Console.showMessage(CommonStrings.ERROR_CAMPAIGN_ONLY);
+            return CommandResult.WRONG_CONTEXT;
+        }
+
+        final String[] tmp = args.trim().toLowerCase().split("\\s+");
+        if (tmp.length == 2 && "cancel".equals(tmp[0]))
+        {
+            if ("all".equals(tmp[1]))
+            {
+                Console.showMessage("Cancelled " + JobScheduler.cancelAll() + " jobs.");
+                return CommandResult.SUCCESS;
+            }
+
+            final int id;
+            try
+            {
+                id = Integer.parseInt(tmp[1]);
+            }
+            catch (NumberFormatException ex)
+            {
+                return CommandResult.BAD_SYNTAX;
+            }
+
+            if (!JobScheduler.cancel(id))
+            {
+                Console.showMessage("Error: no running job with ID " + id + "!");
+                return CommandResult.ERROR;
+            }
+
+            Console.showMessage("Job " + id + " will stop next frame.");
+            return CommandResult.SUCCESS;
+        }
+
+        if (!tmp[0].isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        final List<String> lines = new ArrayList<>();
+        for (Job job : JobScheduler.getJobs())
+        {
+            if (job.isDone()) continue;
+
+            final float progress = job.getProgress();
+            lines.add(job.getId() + ": " + job.getName() + (progress < 0f ? ""
+                    : " (" + Math.round(progress * 100f) + "% done)"));
+        }
+
+        if (lines.isEmpty())
+        {
+            Console.showMessage("No jobs are running.");
+            return CommandResult.SUCCESS;
+        }
+
+        Console.showIndentedLines("Running jobs:", lines, 3);
+        return CommandResult.SUCCESS;
+    }
+}
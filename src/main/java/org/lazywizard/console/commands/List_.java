@@ -20,6 +20,9 @@ import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ConsoleTable;
+import org.lazywizard.console.ConsoleTable.Column;
+import org.lazywizard.console.ConsoleTable.ColumnType;
 import org.lazywizard.lazylib.CollectionUtils;
 
 import java.lang.ref.SoftReference;
@@ -98,13 +101,24 @@ public class List_ implements BaseCommand
         }
     }
 
-    private static final int LEN = 4;
+    private static final Column ID_COLUMN = new Column("ID", ColumnType.TEXT),
+            NAME_COLUMN = new Column("Name", ColumnType.TEXT);
 
-    private static String pad(String prefix)
+    // Names are only looked up for rows that are actually displayed or filtered on
+    private abstract static class IdTable extends ConsoleTable<String>
     {
-        final int len = LEN - (prefix.length() % LEN);
-        if (len == 0 || len == LEN) return prefix;
-        return String.format("%s%" + len + "s", prefix, "");
+        private IdTable(Collection<String> ids)
+        {
+            super(null, ids, ID_COLUMN, NAME_COLUMN);
+        }
+
+        abstract String getName(String id);
+
+        @Override
+        protected Object getValue(String id, int column)
+        {
+            return (column == 0 ? id : getName(id));
+        }
     }
 
     private static void wrongContext(String param)
@@ -112,6 +126,47 @@ public class List_ implements BaseCommand
         Console.showMessage("Error: the argument '" + param + "' is campaign-only.");
     }
 
+    // Hulls and weapons support attribute queries (ex: 'list weapons size:large type:energy op<20 sort:-range')
+    private static CommandResult listSpecs(SpecIndex.Kind kind, String param, String args)
+    {
+        final SpecIndex index = SpecIndex.getIndex(kind);
+        final String query = (args.indexOf(' ') < 0 ? "" : args.substring(args.indexOf(' ') + 1).trim());
+        String sort = null;
+        for (String term : query.split("\\s+"))
+        {
+            if (term.startsWith("sort:"))
+            {
+                sort = term.substring("sort:".length());
+            }
+        }
+
+        final ConsoleTable<Integer> table;
+        try
+        {
+            final BitSet rows = index.query(query);
+            table = index.createTable(null, rows, sort);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            Console.showMessage("Error: " + ex.getMessage() + " Valid attributes for " + param + ": "
+                    + CollectionUtils.implode(index.getAttributeKeys()) + ".");
+            return CommandResult.ERROR;
+        }
+
+        table.setTitle("Listing " + (query.isEmpty() ? "all " + table.getNumRows() + " " + param
+                : table.getNumRows() + " " + param + " matching \"" + query + "\"") + ":");
+        Console.showTable(table);
+
+        if (query.isEmpty() && table.getNumRows() > 5)
+        {
+            Console.showMessage("\nThe results can be filtered by name or attribute (ex: 'list " + param
+                    + " hound', 'list " + param + " " + (kind == SpecIndex.Kind.WEAPONS
+                    ? "size:large type:energy op<20" : "size:capital sort:-fp") + "').");
+        }
+
+        return CommandResult.SUCCESS;
+    }
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -176,7 +231,8 @@ public class List_ implements BaseCommand
         final LocationAPI loc = sector.getCurrentLocation();
         final CampaignFleetAPI player = sector.getPlayerFleet();
         boolean newLinePerItem = false;
-        List<String> ids;
+        List<String> ids = null;
+        ConsoleTable<?> table = null;
         switch (param)
         {
             case "commands":
@@ -214,81 +270,102 @@ public class List_ implements BaseCommand
                 }
                 break;
             case "mods":
-                newLinePerItem = true;
                 param = "enabled mods";
-                ids = new ArrayList<>();
-                for (ModSpecAPI mod : settings.getModManager().getEnabledModsCopy())
+                table = new ConsoleTable<ModSpecAPI>(null, settings.getModManager().getEnabledModsCopy(),
+                        ID_COLUMN, NAME_COLUMN, new Column("Author", ColumnType.TEXT),
+                        new Column("Version", ColumnType.TEXT), new Column("Type", ColumnType.TEXT))
                 {
-                    ids.add(mod.getId() + " (" + mod.getName() + " by " + mod.getAuthor()
-                            + ", version " + mod.getVersion()
-                            + (mod.isTotalConversion() ? ", total conversion" : "")
-                            + (mod.isUtility() ? ", utility" : "") + ")");
-                }
+                    @Override
+                    protected Object getValue(ModSpecAPI mod, int column)
+                    {
+                        switch (column)
+                        {
+                            case 0:
+                                return mod.getId();
+                            case 1:
+                                return mod.getName();
+                            case 2:
+                                return mod.getAuthor();
+                            case 3:
+                                return mod.getVersion();
+                            default:
+                                return (mod.isTotalConversion() ? "total conversion"
+                                        : (mod.isUtility() ? "utility" : ""));
+                        }
+                    }
+                };
                 break;
             case "ships":
             case "hulls":
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (String fullId : sector.getAllEmptyVariantIds())
-                {
-                    final String id = fullId.substring(0, fullId.lastIndexOf("_Hull"));
-                    ids.add(pad(id) + " (" + settings.getHullSpec(id).getHullNameWithDashClass() + ")");
-                }
-                break;
+                return listSpecs(SpecIndex.Kind.HULLS, param, args);
             case "variants":
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (String id : settings.getAllVariantIds())
+                table = new IdTable(settings.getAllVariantIds())
                 {
-                    ids.add(pad(id) + " (" + settings.getVariant(id).getFullDesignationWithHullName() + ")");
-                }
+                    @Override
+                    String getName(String id)
+                    {
+                        return settings.getVariant(id).getFullDesignationWithHullName();
+                    }
+                };
                 break;
             case "wings":
             case "fighters":
             case "squadrons":
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (String id : sector.getAllFighterWingIds())
+                table = new IdTable(sector.getAllFighterWingIds())
                 {
-                    ids.add(pad(id) + " (" + settings.getFighterWingSpec(id).getWingName() + ")");
-                }
+                    @Override
+                    String getName(String id)
+                    {
+                        return settings.getFighterWingSpec(id).getWingName();
+                    }
+                };
                 break;
             case "weapons":
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (String id : sector.getAllWeaponIds())
-                {
-                    ids.add(pad(id) + " (" + settings.getWeaponSpec(id).getWeaponName() + ")");
-                }
-                break;
+                return listSpecs(SpecIndex.Kind.WEAPONS, param, args);
             case "hullmods":
             case "modspecs":
-                newLinePerItem = true;
                 ids = new ArrayList<>();
                 for (HullModSpecAPI spec : Global.getSettings().getAllHullModSpecs())
                 {
                     if (!spec.isHidden())
                     {
-                        ids.add(pad(spec.getId()) + " (" + spec.getDisplayName() + ")");
+                        ids.add(spec.getId());
                     }
                 }
+                table = new IdTable(ids)
+                {
+                    @Override
+                    String getName(String id)
+                    {
+                        return settings.getHullModSpec(id).getDisplayName();
+                    }
+                };
                 break;
             case "commodities":
             case "items":
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (String id : sector.getEconomy().getAllCommodityIds())
+                table = new IdTable(sector.getEconomy().getAllCommodityIds())
                 {
-                    ids.add(pad(id) + " (" + settings.getCommoditySpec(id).getName() + ")");
-                }
+                    @Override
+                    String getName(String id)
+                    {
+                        return settings.getCommoditySpec(id).getName();
+                    }
+                };
                 break;
             case "specials":
-                newLinePerItem = true;
                 ids = new ArrayList<>();
                 for (SpecialItemSpecAPI spec : Global.getSettings().getAllSpecialItemSpecs())
                 {
-                    ids.add(pad(spec.getId()) + " (" + spec.getName() + ")");
+                    ids.add(spec.getId());
                 }
+                table = new IdTable(ids)
+                {
+                    @Override
+                    String getName(String id)
+                    {
+                        return settings.getSpecialItemSpec(id).getName();
+                    }
+                };
                 break;
             case "systems":
             case "locations":
@@ -298,22 +375,36 @@ public class List_ implements BaseCommand
                     return CommandResult.WRONG_CONTEXT;
                 }
 
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                ids.add(sector.getHyperspace().getId());
-                for (LocationAPI location : sector.getStarSystems())
+                final List<LocationAPI> locations = new ArrayList<>();
+                locations.add(sector.getHyperspace());
+                locations.addAll(sector.getStarSystems());
+                table = new ConsoleTable<LocationAPI>(null, locations, ID_COLUMN, NAME_COLUMN)
                 {
-                    ids.add(pad(location.getId()) + " (" + location.getName() + ")");
-                }
+                    @Override
+                    protected Object getValue(LocationAPI location, int column)
+                    {
+                        return (column == 0 ? location.getId() : location.getName());
+                    }
+                };
                 break;
             case "factions":
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (FactionAPI faction : sector.getAllFactions())
+                table = new ConsoleTable<FactionAPI>(null, sector.getAllFactions(), ID_COLUMN, NAME_COLUMN,
+                        new Column("Visibility", ColumnType.TEXT))
                 {
-                    ids.add(pad(faction.getId()) + " (" + faction.getDisplayNameLong() +
-                            (faction.isShowInIntelTab() ? "" : ", hidden") + ")");
-                }
+                    @Override
+                    protected Object getValue(FactionAPI faction, int column)
+                    {
+                        switch (column)
+                        {
+                            case 0:
+                                return faction.getId();
+                            case 1:
+                                return faction.getDisplayNameLong();
+                            default:
+                                return (faction.isShowInIntelTab() ? "" : "hidden");
+                        }
+                    }
+                };
                 break;
             case "bases":
                 if (!context.isCampaignAccessible())
@@ -354,13 +445,24 @@ public class List_ implements BaseCommand
                     return CommandResult.WRONG_CONTEXT;
                 }
 
-                newLinePerItem = true;
                 param = "planets in current system";
-                ids = new ArrayList<>();
-                for (PlanetAPI planet : loc.getPlanets())
+                table = new ConsoleTable<PlanetAPI>(null, loc.getPlanets(), ID_COLUMN, NAME_COLUMN,
+                        new Column("Type", ColumnType.TEXT))
                 {
-                    ids.add(pad(planet.getId()) + " (" + planet.getFullName() + (planet.isStar() ? ", star)" : ")"));
-                }
+                    @Override
+                    protected Object getValue(PlanetAPI planet, int column)
+                    {
+                        switch (column)
+                        {
+                            case 0:
+                                return planet.getId();
+                            case 1:
+                                return planet.getFullName();
+                            default:
+                                return (planet.isStar() ? "star" : planet.getTypeNameWithWorld());
+                        }
+                    }
+                };
                 break;
             case "stations":
                 if (!context.isCampaignAccessible())
@@ -369,13 +471,16 @@ public class List_ implements BaseCommand
                     return CommandResult.WRONG_CONTEXT;
                 }
 
-                newLinePerItem = true;
                 param = "stations in current system";
-                ids = new ArrayList<>();
-                for (SectorEntityToken station : loc.getEntitiesWithTag(Tags.STATION))
+                table = new ConsoleTable<SectorEntityToken>(null, loc.getEntitiesWithTag(Tags.STATION),
+                        ID_COLUMN, NAME_COLUMN)
                 {
-                    ids.add(pad(station.getId()) + " (" + station.getFullName() + ")");
-                }
+                    @Override
+                    protected Object getValue(SectorEntityToken station, int column)
+                    {
+                        return (column == 0 ? station.getId() : station.getFullName());
+                    }
+                };
                 break;
             case "markets":
                 if (!context.isCampaignAccessible())
@@ -384,33 +489,54 @@ public class List_ implements BaseCommand
                     return CommandResult.WRONG_CONTEXT;
                 }
 
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (MarketAPI market : sector.getEconomy().getMarketsCopy())
+                table = new ConsoleTable<MarketAPI>(null, sector.getEconomy().getMarketsCopy(), ID_COLUMN,
+                        NAME_COLUMN, new Column("Location", ColumnType.TEXT), new Column("Faction", ColumnType.TEXT),
+                        new Column("Relation", ColumnType.TEXT), new Column("Size", ColumnType.INTEGER))
                 {
-                    ids.add(pad(market.getId() + " in " + market.getContainingLocation().getName())
-                            + " (" + market.getFaction().getDisplayName() + ", "
-                            + (market.getFaction() == null ? "no faction)"
-                            : market.getFaction().getRelationshipLevel(
-                            player.getFaction()).getDisplayName() + ")"));
-                }
+                    @Override
+                    protected Object getValue(MarketAPI market, int column)
+                    {
+                        switch (column)
+                        {
+                            case 0:
+                                return market.getId();
+                            case 1:
+                                return market.getName();
+                            case 2:
+                                return market.getContainingLocation().getName();
+                            case 3:
+                                return (market.getFaction() == null ? "no faction"
+                                        : market.getFaction().getDisplayName());
+                            case 4:
+                                return (market.getFaction() == null ? null
+                                        : market.getFaction().getRelationshipLevel(
+                                        player.getFaction()).getDisplayName());
+                            default:
+                                return market.getSize();
+                        }
+                    }
+                };
                 break;
             case "conditions":
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (Pair<String, String> pair : getMarketConditionIdsWithNames())
+                table = new ConsoleTable<Pair<String, String>>(null, getMarketConditionIdsWithNames(),
+                        ID_COLUMN, NAME_COLUMN)
                 {
-                    final String id = pair.one, name = pair.two;
-                    ids.add(pad(id) + ((name == null || name.isEmpty()) ? "" : " (" + name + ")"));
-                }
+                    @Override
+                    protected Object getValue(Pair<String, String> pair, int column)
+                    {
+                        return (column == 0 ? pair.one : pair.two);
+                    }
+                };
                 break;
             case "industries":
-                newLinePerItem = true;
-                ids = new ArrayList<>();
-                for (IndustrySpecAPI spec : settings.getAllIndustrySpecs())
+                table = new ConsoleTable<IndustrySpecAPI>(null, settings.getAllIndustrySpecs(), ID_COLUMN, NAME_COLUMN)
                 {
-                    ids.add(pad(spec.getId()) + " (" + spec.getName() + ")");
-                }
+                    @Override
+                    protected Object getValue(IndustrySpecAPI spec, int column)
+                    {
+                        return (column == 0 ? spec.getId() : spec.getName());
+                    }
+                };
                 break;
             case "submarkets":
                 newLinePerItem = true;
@@ -440,34 +566,63 @@ public class List_ implements BaseCommand
 
         // Support for further filtering results
         final boolean useFilter = (tmp.length > 1);
-        if (useFilter)
+        final String filter = (useFilter ? args.substring(args.indexOf(' ') + 1) : null);
+        final int numResults;
+        if (table != null)
         {
-            final String filter = args.substring(args.indexOf(' ') + 1);
-            param += " containing \"" + filter + "\"";
-
-            for (Iterator<String> iter = ids.iterator(); iter.hasNext(); )
+            if (useFilter)
             {
-                String id = iter.next().toLowerCase();
-                if (!id.contains(filter))
-                {
-                    iter.remove();
-                }
+                table.retainMatching(filter);
+                param = table.getNumRows() + " " + param + " containing \"" + filter + "\"";
+            }
+            else
+            {
+                param = "all " + table.getNumRows() + " " + param;
             }
 
-            param = ids.size() + " " + param;
+            // Tabular results are only formatted a page at a time, as the player views them
+            table.setTitle("Listing " + param + ":");
+            table.sortBy(0, true);
+            Console.showTable(table);
+            numResults = table.getNumRows();
         }
         else
         {
-            param = "all " + ids.size() + " " + param;
-        }
+            if (useFilter)
+            {
+                param += " containing \"" + filter + "\"";
 
-        // Format and print the list of valid IDs
-        Collections.sort(ids, String.CASE_INSENSITIVE_ORDER);
-        final String results = CollectionUtils.implode(ids, (newLinePerItem ? "\n" : ", "));
-        Console.showIndentedMessage("Listing " + param + ":", results, 3);
+                for (Iterator<String> iter = ids.iterator(); iter.hasNext(); )
+                {
+                    String id = iter.next().toLowerCase();
+                    if (!id.contains(filter))
+                    {
+                        iter.remove();
+                    }
+                }
+
+                param = ids.size() + " " + param;
+            }
+            else
+            {
+                param = "all " + ids.size() + " " + param;
+            }
+
+            // Format and print the list of valid IDs
+            Collections.sort(ids, String.CASE_INSENSITIVE_ORDER);
+            if (newLinePerItem)
+            {
+                Console.showIndentedLines("Listing " + param + ":", ids, 3);
+            }
+            else
+            {
+                Console.showIndentedMessage("Listing " + param + ":", CollectionUtils.implode(ids, ", "), 3);
+            }
+            numResults = ids.size();
+        }
 
         // Notify about the filter feature
-        if (!useFilter && ids.size() > 5)
+        if (!useFilter && numResults > 5)
         {
             Console.showMessage("\nThe results can be filtered with 'list " + args + " <filter>' to make " +
                     "finding a specific entry easier (ex: 'list ships hound' or 'list markets hegemony').");
@@ -3,111 +3,63 @@ package org.lazywizard.console.commands;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.ModManagerAPI;
 import com.fs.starfarer.api.ModSpecAPI;
-import org.apache.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandUtils;
+import org.lazywizard.console.ContentIndex;
+import org.lazywizard.console.ContentIndex.Category;
 import org.lazywizard.console.Console;
 import org.lazywizard.lazylib.CollectionUtils;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 // TODO: A lot of these static methods should be moved to LazyLib's ModUtils
 public class ModInfo implements BaseCommand
 {
-    private static final Logger Log = Global.getLogger(ModInfo.class);
-
-    // Only works with core CSVs
-    private static List<String> getRowsAddedByMod(String csvPath, String column, ModSpecAPI mod)
+    private static List<String> getRowsAddedByMod(Category category, ModSpecAPI mod)
     {
-        final String modDir = mod.getDirName() + "/" + csvPath;
-        final JSONArray csv;
-        try
-        {
-            csv = Global.getSettings().getMergedSpreadsheetDataForMod(column, csvPath, "starsector-core");
-        }
-        catch (Exception ex)
-        {
-            // Not actually an error, just means that mod doesn't override the core CSV
-            Log.error("Failed to open " + csvPath, ex);
-            return Collections.emptyList();
-        }
-
-        final List<String> added = new ArrayList<>(csv.length());
-        try
-        {
-            for (int i = 0; i < csv.length(); i++)
-            {
-                final JSONObject row = csv.getJSONObject(i);
-
-                // Skip empty rows
-                final String id = row.getString(column);
-                if (id.isEmpty())
-                {
-                    continue;
-                }
-
-                // Skip rows not from that mod
-                final String source = row.getString("fs_rowSource");
-                //System.out.print(id + ": " + modDir + " vs " + source + ", ");
-                if (source == null || !source.endsWith(modDir))
-                {
-                    //System.out.println("MISMATCH");
-                    continue;
-                }
-
-                //System.out.println("MATCH");
-                added.add(id);
-            }
-        }
-        catch (Exception ex)
-        {
-            // Okay, this one's actually an error
-            Log.error("Failed to parse " + csvPath, ex);
-            return Collections.emptyList();
-        }
-
-        Collections.sort(added, String.CASE_INSENSITIVE_ORDER);
-        return added;
+        return ContentIndex.getIndex().getRowsAddedByMod(category, mod.getId());
     }
 
     public static List<String> getShipsAddedByMod(ModSpecAPI mod)
     {
-        return getRowsAddedByMod("data/hulls/ship_data.csv", "id", mod);
+        return getRowsAddedByMod(Category.HULLS, mod);
     }
 
     public static List<String> getWingsAddedByMod(ModSpecAPI mod)
     {
-        return getRowsAddedByMod("data/hulls/wing_data.csv", "id", mod);
+        return getRowsAddedByMod(Category.WINGS, mod);
     }
 
     public static List<String> getWeaponsAddedByMod(ModSpecAPI mod)
     {
-        return getRowsAddedByMod("data/weapons/weapon_data.csv", "id", mod);
+        return getRowsAddedByMod(Category.WEAPONS, mod);
+    }
+
+    public static List<String> getHullmodsAddedByMod(ModSpecAPI mod)
+    {
+        return getRowsAddedByMod(Category.HULLMODS, mod);
     }
 
     public static List<String> getCommoditiesAddedByMod(ModSpecAPI mod)
     {
-        return getRowsAddedByMod("data/campaign/commodities.csv", "id", mod);
+        return getRowsAddedByMod(Category.COMMODITIES, mod);
     }
 
     public static List<String> getSpecialItemsAddedByMod(ModSpecAPI mod)
     {
-        return getRowsAddedByMod("data/campaign/special_items.csv", "id", mod);
+        return getRowsAddedByMod(Category.SPECIAL_ITEMS, mod);
     }
 
     public static List<String> getIndustriesAddedByMod(ModSpecAPI mod)
     {
-        return getRowsAddedByMod("data/campaign/industries.csv", "id", mod);
+        return getRowsAddedByMod(Category.INDUSTRIES, mod);
     }
 
     public static List<String> getMarketConditionsAddedByMod(ModSpecAPI mod)
     {
-        return getRowsAddedByMod("data/campaign/market_conditions.csv", "id", mod);
+        return getRowsAddedByMod(Category.MARKET_CONDITIONS, mod);
     }
 
     private static String pad(int length, char padWith)
@@ -166,6 +118,7 @@ public class ModInfo implements BaseCommand
             final List<String> addedShips = getShipsAddedByMod(mod),
                     addedWings = getWingsAddedByMod(mod),
                     addedWeapons = getWeaponsAddedByMod(mod),
+                    addedHullmods = getHullmodsAddedByMod(mod),
                     addedCommodities = getCommoditiesAddedByMod(mod),
                     addedSpecials = getSpecialItemsAddedByMod(mod),
                     addedIndustries = getIndustriesAddedByMod(mod),
@@ -174,6 +127,7 @@ public class ModInfo implements BaseCommand
                     .append("\n - Hulls").append(implodeOrNone(addedShips, 5))
                     .append("\n - Wings").append(implodeOrNone(addedWings, 5))
                     .append("\n - Weapons").append(implodeOrNone(addedWeapons, 5))
+                    .append("\n - Hullmods").append(implodeOrNone(addedHullmods, 5))
                     .append("\n - Commodities").append(implodeOrNone(addedCommodities, 5))
                     .append("\n - Special items").append(implodeOrNone(addedSpecials, 5))
                     .append("\n - Industries").append(implodeOrNone(addedIndustries, 5))
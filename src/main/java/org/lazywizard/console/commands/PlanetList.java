@@ -8,11 +8,11 @@ import com.fs.starfarer.api.campaign.econ.MarketAPI;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
-import org.lazywizard.lazylib.CollectionUtils;
+import org.lazywizard.console.ConsoleTable;
+import org.lazywizard.console.ConsoleTable.Column;
+import org.lazywizard.console.ConsoleTable.ColumnType;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -33,45 +33,50 @@ public class PlanetList implements BaseCommand
         final SectorAPI sector = Global.getSector();
         args = args.toLowerCase();
         String[] tmp = args.split(" ");
-        boolean newLinePerItem = false;
-        if (tmp.length > 1)
-        {
-            if (tmp[1].equals("true"))
-            {
-                newLinePerItem = true;
-            }
-        }
-        List<String> ids = new ArrayList<>();
-
+        final List<PlanetAPI> planets = new ArrayList<>();
         for (LocationAPI location : sector.getStarSystems())
         {
-            for (PlanetAPI planet : location.getPlanets())
-            {
-                MarketAPI market = planet.getMarket();
-                ids.add(String.format("[%s {%s}] %s (%s) <%s> |%s|", location.getName(), location.getId(),
-                        planet.getName(), planet.getId(), planet.getTypeNameWithWorld(),
-                        (market != null) ? ((market.isPlanetConditionMarketOnly()) ? "Unclaimed" : "Inhabited") : "Non-Market"));
-            }
+            planets.addAll(location.getPlanets());
         }
 
-        // Support for further filtering results
-        if (tmp.length > 0)
+        // Rows are only formatted when the player pages to them
+        final ConsoleTable<PlanetAPI> table = new ConsoleTable<PlanetAPI>(null, planets,
+                new Column("System", ColumnType.TEXT), new Column("System ID", ColumnType.TEXT),
+                new Column("Planet", ColumnType.TEXT), new Column("ID", ColumnType.TEXT),
+                new Column("Type", ColumnType.TEXT), new Column("Status", ColumnType.TEXT))
         {
-            final String filter = tmp[0];
-            for (Iterator<String> iter = ids.iterator(); iter.hasNext(); )
+            @Override
+            protected Object getValue(PlanetAPI planet, int column)
             {
-                String id = iter.next().toLowerCase();
-                if (!id.contains(filter))
+                switch (column)
                 {
-                    iter.remove();
+                    case 0:
+                        return planet.getContainingLocation().getName();
+                    case 1:
+                        return planet.getContainingLocation().getId();
+                    case 2:
+                        return planet.getName();
+                    case 3:
+                        return planet.getId();
+                    case 4:
+                        return planet.getTypeNameWithWorld();
+                    default:
+                        final MarketAPI market = planet.getMarket();
+                        return (market != null) ? ((market.isPlanetConditionMarketOnly())
+                                ? "Unclaimed" : "Inhabited") : "Non-Market";
                 }
             }
+        };
+
+        // Support for further filtering results
+        if (tmp.length > 0 && !tmp[0].isEmpty())
+        {
+            table.retainMatching(tmp[0]);
         }
 
-        // Format and print the list of valid IDs
-        Collections.sort(ids, String.CASE_INSENSITIVE_ORDER);
-        final String results = CollectionUtils.implode(ids, (newLinePerItem ? "\n" : ", "));
-        Console.showIndentedMessage("Known planets (" + ids.size() + "):\n", results, 3);
+        table.setTitle("Known planets (" + table.getNumRows() + "):");
+        table.sortBy(0, true);
+        Console.showTable(table);
         return CommandResult.SUCCESS;
     }
 }
@@ -0,0 +1,169 @@
+package org.lazywizard.console.commands;
+
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommonStrings;
+import org.lazywizard.console.Console;
+import org.lazywizard.console.ConsoleTable;
+import org.lazywizard.console.ConsoleTable.Column;
+import org.lazywizard.console.ConsoleTable.ColumnType;
+import org.lazywizard.console.commands.SectorIndex.Row;
+import org.lazywizard.lazylib.CollectionUtils;
+import org.lwjgl.util.vector.Vector2f;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class Query implements BaseCommand
+{
+    private static final String[] SORT_KEYS = {"id", "name", "system", "type", "faction", "size", "stability",
+            "hazard", "distance"};
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (!context.isCampaignAccessible())
+        {
+            Console.showMessage(CommonStrings.ERROR_CAMPAIGN_ONLY);
+            return CommandResult.WRONG_CONTEXT;
+        }
+
+        args = args.trim().toLowerCase();
+        if (args.isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        final String[] tmp = args.split("\\s+", 2);
+        final SectorIndex.Kind kind;
+        switch (tmp[0])
+        {
+            case "planets":
+                kind = SectorIndex.Kind.PLANETS;
+                break;
+            case "markets":
+            case "colonies":
+                kind = SectorIndex.Kind.MARKETS;
+                break;
+            case "entities":
+                kind = SectorIndex.Kind.ENTITIES;
+                break;
+            default:
+                return CommandResult.BAD_SYNTAX;
+        }
+
+        // Presentation terms are handled here, everything else is passed on to the index
+        final String query = (tmp.length > 1 ? tmp[1] : "");
+        String near = null, sort = null;
+        int limit = Integer.MAX_VALUE;
+        for (String term : query.split("\\s+"))
+        {
+            if (term.startsWith("near:"))
+            {
+                near = term.substring("near:".length());
+            }
+            else if (term.startsWith("sort:"))
+            {
+                sort = term.substring("sort:".length());
+            }
+            else if (term.startsWith("limit:"))
+            {
+                try
+                {
+                    limit = Integer.parseInt(term.substring("limit:".length()));
+                }
+                catch (NumberFormatException ex)
+                {
+                    Console.showMessage("Error: '" + term + "' is not a valid limit!");
+                    return CommandResult.ERROR;
+                }
+            }
+        }
+
+        final Vector2f reference = SectorIndex.findReference(near == null ? "player" : near);
+        if (reference == null)
+        {
+            Console.showMessage("Error: no entity or market found with id '" + near + "'!");
+            return CommandResult.ERROR;
+        }
+
+        final List<Row> results;
+        try
+        {
+            results = SectorIndex.getIndex().query(kind, query, reference);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            Console.showMessage("Error: " + ex.getMessage() + "\nValid attributes: "
+                    + CollectionUtils.implode(SectorIndex.getValidKeys()) + ".\nValid flags: "
+                    + CollectionUtils.implode(SectorIndex.getValidFlags()) + ".");
+            return CommandResult.ERROR;
+        }
+
+        int sortColumn = (near != null ? SORT_KEYS.length - 1 : 2);
+        boolean ascending = true;
+        if (sort != null)
+        {
+            if (sort.startsWith("-"))
+            {
+                ascending = false;
+                sort = sort.substring(1);
+            }
+
+            sortColumn = -1;
+            for (int i = 0; i < SORT_KEYS.length; i++)
+            {
+                if (SORT_KEYS[i].equals(sort)) sortColumn = i;
+            }
+
+            if (sortColumn < 0)
+            {
+                Console.showMessage("Error: can't sort by '" + sort + "'! Valid sort keys: "
+                        + CollectionUtils.implode(Arrays.asList(SORT_KEYS)) + ".");
+                return CommandResult.ERROR;
+            }
+        }
+
+        // Rows are only formatted when the player pages to them
+        final ConsoleTable<Row> table = new ConsoleTable<Row>(null, results,
+                new Column("ID", ColumnType.TEXT), new Column("Name", ColumnType.TEXT),
+                new Column("System", ColumnType.TEXT), new Column("Type", ColumnType.TEXT),
+                new Column("Faction", ColumnType.TEXT), new Column("Size", ColumnType.INTEGER),
+                new Column("Stability", ColumnType.INTEGER), new Column("Hazard", ColumnType.INTEGER),
+                new Column("Distance (LY)", ColumnType.DECIMAL))
+        {
+            @Override
+            protected Object getValue(Row row, int column)
+            {
+                switch (column)
+                {
+                    case 0:
+                        return row.id;
+                    case 1:
+                        return row.name;
+                    case 2:
+                        return row.system;
+                    case 3:
+                        return row.type;
+                    case 4:
+                        return row.faction;
+                    case 5:
+                        return row.size;
+                    case 6:
+                        return row.stability;
+                    case 7:
+                        return row.hazard;
+                    default:
+                        return row.getDistanceLY(reference);
+                }
+            }
+        };
+
+        final int numMatches = table.getNumRows();
+        table.sortBy(sortColumn, ascending);
+        table.truncate(limit);
+        table.setTitle("Found " + numMatches + " " + tmp[0] + (table.getNumRows() < numMatches
+                ? " (showing the first " + table.getNumRows() + ")" : "") + ":");
+        Console.showTable(table);
+        return CommandResult.SUCCESS;
+    }
+}
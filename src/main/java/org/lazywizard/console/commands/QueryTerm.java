@@ -0,0 +1,127 @@
+package org.lazywizard.console.commands;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single term of an attribute query, shared by {@link SectorIndex} and {@link SpecIndex} so both accept exactly the
+ * same syntax.
+ * <p>
+ * A term is {@code key:value}, {@code key<number} (or {@code <=, >, >=, =}), or plain text. The operator starts at the
+ * first {@code :}, {@code <}, {@code >} or {@code =} after the first character; only {@code <} and {@code >} can be
+ * followed by {@code =}. Anything else, such as {@code ==} or {@code :=}, is rejected.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+final class QueryTerm
+{
+    @Nullable final String key, operator;
+    final String value;
+
+    private QueryTerm(@Nullable String key, @Nullable String operator, String value)
+    {
+        this.key = key;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    private static boolean isOperator(char c)
+    {
+        return c == ':' || c == '<' || c == '>' || c == '=';
+    }
+
+    /**
+     * @param term A single lowercase term of the query.
+     *
+     * @throws IllegalArgumentException if the term has an operator but no value, or an invalid operator.
+     */
+    static QueryTerm parse(String term)
+    {
+        int opStart = -1;
+        for (int i = 1; i < term.length() && opStart < 0; i++)
+        {
+            if (isOperator(term.charAt(i))) opStart = i;
+        }
+
+        if (opStart < 0)
+        {
+            return new QueryTerm(null, null, term);
+        }
+
+        final String key = term.substring(0, opStart);
+        final char opChar = term.charAt(opStart);
+        final String operator = ((opChar == '<' || opChar == '>') && term.length() > opStart + 1
+                && term.charAt(opStart + 1) == '=') ? term.substring(opStart, opStart + 2) : String.valueOf(opChar);
+        final String value = term.substring(opStart + operator.length());
+        if (value.isEmpty())
+        {
+            throw new IllegalArgumentException("No value given for '" + key + "'!");
+        }
+
+        if (isOperator(value.charAt(0)))
+        {
+            throw new IllegalArgumentException("'" + operator + value.charAt(0) + "' is not a valid operator!"
+                    + " Use :, =, <, <=, > or >=.");
+        }
+
+        return new QueryTerm(key, operator, value);
+    }
+
+    /**
+     * @return {@code true} if this term is plain text to search IDs and names for, rather than a {@code key:value}
+     *         or comparison term.
+     */
+    boolean isText()
+    {
+        return key == null;
+    }
+
+    /**
+     * Checks this term can be used with an attribute that has a set of values, such as a type or tag.
+     *
+     * @throws IllegalArgumentException if the term is a numeric comparison.
+     */
+    void requireSetMatch()
+    {
+        if (!":".equals(operator) && !"=".equals(operator))
+        {
+            throw new IllegalArgumentException("'" + key + "' can only be matched with " + key + ":value!");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value isn't a number.
+     */
+    float getNumber()
+    {
+        try
+        {
+            return Float.parseFloat(value);
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException("'" + value + "' is not a number!");
+        }
+    }
+
+    /**
+     * @return Whether {@code value} satisfies this term's comparison against its number. {@code :} and {@code =} both
+     *         test for equality.
+     */
+    boolean compare(float value, float operand)
+    {
+        switch (operator == null ? "" : operator)
+        {
+            case "<":
+                return value < operand;
+            case "<=":
+                return value <= operand;
+            case ">":
+                return value > operand;
+            case ">=":
+                return value >= operand;
+            default:
+                return Math.abs(value - operand) < 0.001f;
+        }
+    }
+}
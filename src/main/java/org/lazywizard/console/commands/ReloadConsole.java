@@ -4,6 +4,7 @@ import org.json.JSONException;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ContentIndex;
 import org.lazywizard.lazylib.ui.FontException;
 
 import java.io.IOException;
@@ -16,6 +17,8 @@ public class ReloadConsole implements BaseCommand
         CommandStore.reloadAll();
         RunCode.reloadImports();
         RunCode.reloadMacros();
+        ContentIndex.clear();
+        SpecIndex.clear();
     }
 
     @Override
@@ -63,6 +63,7 @@ public class RemoveCondition implements BaseCommand
 
         market.removeCondition(id);
         market.reapplyConditions();
+        SectorIndex.invalidate();
         Console.showMessage("Removed condition '" + id + "' from market '" + market.getName() + "'.");
         return CommandResult.SUCCESS;
     }
@@ -66,6 +66,7 @@ public class RemoveIndustry implements BaseCommand
 
         market.removeIndustry(id, null, false);
         market.reapplyIndustries();
+        SectorIndex.invalidate();
         Console.showMessage("Removed industry '" + id + "' from market '" + market.getName() + "'.");
         return CommandResult.SUCCESS;
     }
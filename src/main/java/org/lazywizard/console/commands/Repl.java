@@ -0,0 +1,64 @@
+package org.lazywizard.console.commands;
+
+import java.util.Map;
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.Console;
+import org.lazywizard.lazylib.CollectionUtils;
+
+public class Repl implements BaseCommand
+{
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        final RunCodeSession session = RunCodeSession.getActive();
+        args = args.trim().toLowerCase();
+        if (args.isEmpty())
+        {
+            if (session != null)
+            {
+                RunCodeSession.end();
+                Console.showMessage("RunCode session ended. Session variables have been discarded.");
+            }
+            else
+            {
+                RunCodeSession.start();
+                Console.showMessage("RunCode session started. Variables and methods declared in RunCode will be "
+                        + "kept until the session ends, and expression results will be printed automatically.");
+            }
+
+            return CommandResult.SUCCESS;
+        }
+
+        switch (args)
+        {
+            case "reset":
+                if (session == null)
+                {
+                    Console.showMessage("No RunCode session is active!");
+                    return CommandResult.ERROR;
+                }
+
+                RunCodeSession.start();
+                Console.showMessage("RunCode session restarted.");
+                return CommandResult.SUCCESS;
+            case "vars":
+                if (session == null)
+                {
+                    Console.showMessage("No RunCode session is active!");
+                    return CommandResult.ERROR;
+                }
+
+                final StringBuilder sb = new StringBuilder();
+                for (Map.Entry<String, String> var : session.getVariables().entrySet())
+                {
+                    sb.append(var.getValue()).append(' ').append(var.getKey()).append('\n');
+                }
+                sb.append("Methods: ").append(session.getMethods().isEmpty()
+                        ? "none" : CollectionUtils.implode(session.getMethods()));
+                Console.showIndentedMessage("Session variables:", sb.toString(), 3);
+                return CommandResult.SUCCESS;
+            default:
+                return CommandResult.BAD_SYNTAX;
+        }
+    }
+}
@@ -72,5 +72,12 @@ public class Reveal implements BaseCommand
         {
             return true;
         }
+
+        // Nothing moves while paused, so the map doesn't need to be revealed again every frame
+        @Override
+        public float getPausedInterval()
+        {
+            return 0.5f;
+        }
     }
 }
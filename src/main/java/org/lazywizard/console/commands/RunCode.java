@@ -5,11 +5,13 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import com.fs.starfarer.api.Global;
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.janino.ScriptEvaluator;
+import org.jetbrains.annotations.Nullable;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -21,25 +23,58 @@ import org.lazywizard.console.Console;
 
 public class RunCode implements BaseCommand
 {
+    private static final int MAX_CACHED_SCRIPTS = 32;
+    private static final int MAX_CACHED_EXPANSIONS = 64;
     private static Map<String, String> macros;
-    private static ScriptEvaluator eval;
+    // Scripts can be compiled from the overlay's background thread, see precompile()
+    private static volatile MacroTrie macroTrie = new MacroTrie();
+    private static volatile String[] imports = new String[0];
+    // Compiled scripts, keyed by their source after macro expansion. Each holds its own generated classes,
+    // so evicted scripts (and their classloaders) can be garbage collected
+    private static final Map<String, ScriptEvaluator> compiledScripts
+            = new LinkedHashMap<String, ScriptEvaluator>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ScriptEvaluator> eldest)
+        {
+            return size() > MAX_CACHED_SCRIPTS;
+        }
+    };
+    // The script most recently checked by precompile(), kept out of compiledScripts until it's actually run so that
+    // half-typed snippets don't push out scripts the player has used. Guarded by compiledScripts
+    @Nullable private static String lastCheckedSource = null;
+    @Nullable private static ScriptEvaluator lastCheckedScript = null;
+    // Raw input -> normalized source, so repeated snippets skip macro expansion entirely
+    private static final Map<String, String> expandedInput = new LinkedHashMap<String, String>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+        {
+            return size() > MAX_CACHED_EXPANSIONS;
+        }
+    };
 
     public static Map<String, String> getMacros()
     {
         return Collections.unmodifiableMap(macros);
     }
 
-    public static void reloadImports()
+    static ScriptEvaluator createEvaluator()
     {
-        eval = new ScriptEvaluator();
+        final ScriptEvaluator eval = new ScriptEvaluator();
         eval.setReturnType(void.class);
         eval.setParentClassLoader(Global.getSettings().getScriptClassLoader());
         eval.setThrownExceptions(new Class[]
         {
             Exception.class
         });
+        eval.setDefaultImports(imports);
+        return eval;
+    }
 
-        List<String> imports = new ArrayList<>();
+    public static void reloadImports()
+    {
+        List<String> importList = new ArrayList<>();
 
         try
         {
@@ -47,7 +82,7 @@ public class RunCode implements BaseCommand
                     "import", CommonStrings.PATH_RUNCODE_CSV, CommonStrings.MOD_ID);
             for (int x = 0; x < csv.length(); x++)
             {
-                imports.add(csv.getJSONObject(x).getString("import"));
+                importList.add(csv.getJSONObject(x).getString("import"));
             }
         }
         catch (IOException | JSONException ex)
@@ -56,7 +91,13 @@ public class RunCode implements BaseCommand
             return;
         }
 
-        eval.setDefaultImports(imports.toArray(new String[imports.size()]));
+        imports = importList.toArray(new String[importList.size()]);
+        synchronized (compiledScripts)
+        {
+            compiledScripts.clear();
+            lastCheckedSource = null;
+            lastCheckedScript = null;
+        }
     }
 
     public static void reloadMacros()
@@ -87,46 +128,158 @@ public class RunCode implements BaseCommand
         {
             Console.showException("Failed to load RunCode macros: ", ex);
         }
+
+        final MacroTrie trie = new MacroTrie();
+        for (Map.Entry<String, String> macro : macros.entrySet())
+        {
+            trie.add(macro.getKey(), macro.getValue());
+        }
+
+        macroTrie = trie;
+        synchronized (expandedInput)
+        {
+            expandedInput.clear();
+        }
     }
 
-    @Override
-    public CommandResult runCommand(String args, CommandContext context)
+    static String expandInput(String args)
     {
-        if (args.isEmpty())
+        String source;
+        synchronized (expandedInput)
         {
-            return CommandResult.BAD_SYNTAX;
+            source = expandedInput.get(args);
+        }
+        if (source != null)
+        {
+            return source;
         }
 
-        // Yes, this is relatively slow. But for obvious security reasons,
-        // I'd rather allow only manually-entered code to run
-        if (!Console.class.getCanonicalName().equals(
-                new Throwable().getStackTrace()[1].getClassName()))
+        source = expand(args);
+        synchronized (expandedInput)
         {
-            Console.showMessage("A mod attempted to execute arbitrary code on your machine!");
-            return CommandResult.ERROR;
+            expandedInput.put(args, source);
         }
+        return source;
+    }
 
+    private static String expand(String args)
+    {
         // Macro support
-        if (args.contains("$"))
+        String source = macroTrie.expand(args.trim());
+
+        if (!source.endsWith(";"))
         {
-            //System.out.println("Replacing macros");
-            for (Map.Entry<String, String> tmp : macros.entrySet())
+            source += ";";
+        }
+
+        return source;
+    }
+
+    private static ScriptEvaluator getCompiledScript(String args) throws CompileException
+    {
+        final String source = expandInput(args);
+        ScriptEvaluator script;
+        synchronized (compiledScripts)
+        {
+            script = compiledScripts.get(source);
+            if (script == null && source.equals(lastCheckedSource))
             {
-                //System.out.println(tmp.getKey() + ": " + tmp.getValue());
-                args = args.replace(tmp.getKey(), tmp.getValue());
+                // Already compiled while it was being typed, now it's been run it earns a place in the cache
+                script = lastCheckedScript;
+                compiledScripts.put(source, script);
             }
         }
+        if (script != null)
+        {
+            return script;
+        }
+
+        script = createEvaluator();
+        script.cook(source);
+        synchronized (compiledScripts)
+        {
+            compiledScripts.put(source, script);
+        }
+        return script;
+    }
 
-        if (!args.endsWith(";"))
+    /**
+     * Compiles a RunCode script without running it. Used by the console overlay to check scripts for errors while
+     * they're still being typed. Only the most recently checked script is kept, so running it straight afterwards won't
+     * compile it again, but checked scripts don't enter the compiled script cache until they're run. Safe to call from
+     * any thread.
+     *
+     * @param args The script, as it would be passed to the RunCode command.
+     *
+     * @return {@code null} if the script compiled successfully, otherwise the compiler's error message.
+     *
+     * @since 3.0
+     */
+    @Nullable
+    public static String precompile(String args)
+    {
+        // Snippets in a REPL session depend on the session's variables, so they can only be compiled when run
+        if (args.trim().isEmpty() || RunCodeSession.getActive() != null)
         {
-            args += ";";
+            return null;
         }
 
-        //System.out.println(args);
         try
         {
-            eval.cook(args);
-            eval.evaluate(null);
+            final String source = expand(args);
+            synchronized (compiledScripts)
+            {
+                if (compiledScripts.containsKey(source) || source.equals(lastCheckedSource))
+                {
+                    return null;
+                }
+            }
+
+            final ScriptEvaluator script = createEvaluator();
+            script.cook(source);
+            synchronized (compiledScripts)
+            {
+                lastCheckedSource = source;
+                lastCheckedScript = script;
+            }
+            return null;
+        }
+        catch (CompileException ex)
+        {
+            return ex.getMessage();
+        }
+        catch (RuntimeException ex)
+        {
+            return ex.toString();
+        }
+    }
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (args.isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        // For obvious security reasons, I'd rather allow only manually-entered code to run
+        if (!Console.isExecutedByConsole(this))
+        {
+            Console.showMessage("A mod attempted to execute arbitrary code on your machine!");
+            return CommandResult.ERROR;
+        }
+
+        try
+        {
+            final RunCodeSession session = RunCodeSession.getActive();
+            if (session != null)
+            {
+                session.run(expandInput(args));
+            }
+            else
+            {
+                getCompiledScript(args).evaluate(null);
+            }
         }
         catch (CompileException ex)
         {
@@ -147,4 +300,88 @@ public class RunCode implements BaseCommand
 
         return CommandResult.SUCCESS;
     }
+
+    /**
+     * All macros, stored as a prefix tree so a script can be expanded in a single pass no matter how many macros are
+     * registered. Where macro names overlap (ex: $ship and $shipyard), the longest match wins.
+     */
+    private static final class MacroTrie
+    {
+        private final Node root = new Node();
+
+        private static final class Node
+        {
+            private final Map<Character, Node> children = new HashMap<>();
+            private String replacement = null;
+        }
+
+        private void add(String macro, String replacement)
+        {
+            Node node = root;
+            for (int i = 0; i < macro.length(); i++)
+            {
+                final Character c = macro.charAt(i);
+                Node child = node.children.get(c);
+                if (child == null)
+                {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+
+                node = child;
+            }
+
+            node.replacement = replacement;
+        }
+
+        private String expand(String source)
+        {
+            // Every macro starts with $, so most scripts don't need to be copied at all
+            int start = source.indexOf('$');
+            if (start < 0)
+            {
+                return source;
+            }
+
+            final StringBuilder sb = new StringBuilder(source.length() + 64);
+            sb.append(source, 0, start);
+            for (int i = start; i < source.length(); )
+            {
+                final char c = source.charAt(i);
+                if (c == '$')
+                {
+                    // Find the longest macro starting at this position
+                    String match = null;
+                    int matchEnd = i;
+                    Node node = root;
+                    for (int j = i; j < source.length(); j++)
+                    {
+                        node = node.children.get(source.charAt(j));
+                        if (node == null)
+                        {
+                            break;
+                        }
+
+                        if (node.replacement != null)
+                        {
+                            match = node.replacement;
+                            matchEnd = j + 1;
+                        }
+                    }
+
+                    if (match != null)
+                    {
+                        sb.append(match);
+                        i = matchEnd;
+                        continue;
+                    }
+                }
+
+                sb.append(c);
+                i++;
+            }
+
+            return sb.toString();
+        }
+    }
 }
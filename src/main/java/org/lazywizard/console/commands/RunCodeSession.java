@@ -0,0 +1,524 @@
+package org.lazywizard.console.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.ScriptEvaluator;
+import org.jetbrains.annotations.Nullable;
+import org.lazywizard.console.Console;
+
+/**
+ * An interactive RunCode session, toggled with the Repl command. While a session is active, variables declared at the
+ * top level of a RunCode snippet and any methods it declares are kept and can be used by later snippets, and the
+ * result of a snippet that ends in an expression is printed automatically.
+ * <p>
+ * Each snippet is compiled with the session's variables declared at its start and stored back into the session in a
+ * {@code finally} block at its end, so variables can be reassigned as well as read, even if the snippet returns early.
+ * Variables the snippet declares are hoisted above that block so they are still in scope there. Helper methods can't
+ * see session variables; pass them in as arguments instead.
+ * <p>
+ * The public methods are only public so that compiled snippets can reach them.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public final class RunCodeSession
+{
+    private static final String SESSION_VAR = "__session";
+    // A type name with optional type arguments and array brackets, such as Map<String, List<Integer>>[]
+    private static final String TYPE = "[\\w.$]+(?:\\s*<[^;=(){}]*>)?(?:\\s*\\[\\s*])*";
+    private static final Pattern METHOD = Pattern.compile(
+            "^(?:(?:public|private|static|final)\\s+)*(?:<[^;=(){}]*>\\s*)?" + TYPE + "\\s+(\\w+)\\s*\\([^)]*\\)"
+                    + "\\s*(?:throws\\s+[\\w.,\\s]+)?\\{.*}$", Pattern.DOTALL);
+    private static final Pattern DECLARATION = Pattern.compile(
+            "^(?:final\\s+)?(" + TYPE + ")\\s+(\\w+\\s*(?:[=,].*)?);$", Pattern.DOTALL);
+    private static final Pattern DECLARATOR = Pattern.compile("^\\s*(\\w+)\\s*(?:=(?!=)(.*))?$", Pattern.DOTALL);
+    private static final Pattern NEXT_DECLARATOR = Pattern.compile("\\s*\\w+\\s*(?:=(?!=)|,|$)");
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("if", "else", "for", "while", "do", "try",
+            "catch", "finally", "switch", "case", "default", "return", "throw", "synchronized", "break", "continue",
+            "assert", "new", "import", "class", "instanceof"));
+    private static final Map<String, String> BOXED_TYPES = new HashMap<>();
+    @Nullable private static volatile RunCodeSession active = null;
+    private final Map<String, String> varTypes = new LinkedHashMap<>();
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, String> methods = new LinkedHashMap<>();
+
+    static
+    {
+        BOXED_TYPES.put("int", "Integer");
+        BOXED_TYPES.put("long", "Long");
+        BOXED_TYPES.put("float", "Float");
+        BOXED_TYPES.put("double", "Double");
+        BOXED_TYPES.put("boolean", "Boolean");
+        BOXED_TYPES.put("char", "Character");
+        BOXED_TYPES.put("byte", "Byte");
+        BOXED_TYPES.put("short", "Short");
+    }
+
+    private RunCodeSession()
+    {
+    }
+
+    @Nullable
+    static RunCodeSession getActive()
+    {
+        return active;
+    }
+
+    static void start()
+    {
+        active = new RunCodeSession();
+    }
+
+    static void end()
+    {
+        active = null;
+    }
+
+    /**
+     * @return The declared type of each session variable, in the order they were declared.
+     */
+    Map<String, String> getVariables()
+    {
+        return Collections.unmodifiableMap(varTypes);
+    }
+
+    Set<String> getMethods()
+    {
+        return Collections.unmodifiableSet(methods.keySet());
+    }
+
+    /**
+     * Compiles and runs a snippet (after macro expansion) in this session.
+     */
+    void run(String source) throws Exception
+    {
+        final List<String> statements = splitStatements(source);
+        final Map<String, String> declared = new LinkedHashMap<>();
+        final Map<String, String> newMethods = new LinkedHashMap<>();
+        final StringBuilder body = new StringBuilder(source.length() + 64);
+        String lastExpression = null;
+
+        for (int i = 0; i < statements.size(); i++)
+        {
+            final String statement = statements.get(i);
+            Matcher matcher = METHOD.matcher(statement);
+            if (matcher.matches() && !KEYWORDS.contains(firstWord(statement)))
+            {
+                newMethods.put(matcher.group(1), statement);
+                continue;
+            }
+
+            matcher = DECLARATION.matcher(statement);
+            if (matcher.matches() && !KEYWORDS.contains(firstWord(statement)))
+            {
+                // The declarations themselves are hoisted by compile(), leaving only the assignments here
+                final String type = matcher.group(1).replaceAll("\\s*([<>,\\[\\]])\\s*", "$1");
+                for (String declarator : splitDeclarators(matcher.group(2)))
+                {
+                    final Matcher parts = DECLARATOR.matcher(declarator);
+                    if (!parts.matches())
+                    {
+                        throw new CompileException("Unsupported declaration '" + declarator.trim() + "' in '"
+                                + statement + "'! Declare each variable in its own statement instead.", null);
+                    }
+
+                    final String name = parts.group(1);
+                    declared.put(name, type);
+                    if (parts.group(2) != null)
+                    {
+                        // Array initializers are only allowed in declarations, so they need an explicit type here
+                        final String initializer = parts.group(2).trim();
+                        body.append(name).append(" = ").append(initializer.startsWith("{") ? "new " + type + ' ' : "")
+                                .append(initializer).append(";\n");
+                    }
+                }
+
+                continue;
+            }
+
+            if (i == statements.size() - 1 && isExpression(statement))
+            {
+                lastExpression = statement.endsWith(";")
+                        ? statement.substring(0, statement.length() - 1) : statement;
+                continue;
+            }
+
+            body.append(statement).append(statement.endsWith(";") || statement.endsWith("}") ? "\n" : ";\n");
+        }
+
+        final Map<String, String> methodsToCompile = new LinkedHashMap<>(methods);
+        methodsToCompile.putAll(newMethods);
+
+        // Snippets ending in an expression print its result, unless it's something like a void method call
+        ScriptEvaluator script;
+        if (lastExpression != null)
+        {
+            try
+            {
+                script = compile(body + SESSION_VAR + ".print(" + lastExpression + ");\n", declared, methodsToCompile);
+            }
+            catch (CompileException ex)
+            {
+                script = compile(body + lastExpression + ";\n", declared, methodsToCompile);
+            }
+        }
+        else
+        {
+            script = compile(body.toString(), declared, methodsToCompile);
+        }
+
+        script.evaluate(new Object[]{this});
+
+        // Only keep new declarations once the snippet has run successfully
+        varTypes.putAll(declared);
+        methods.putAll(newMethods);
+    }
+
+    private ScriptEvaluator compile(String body, Map<String, String> declared, Map<String, String> methodsToCompile)
+            throws CompileException
+    {
+        final StringBuilder sb = new StringBuilder(body.length() + 64 * (varTypes.size() + methodsToCompile.size()));
+
+        // Load existing session variables, unless the snippet declares its own variable with the same name
+        for (Map.Entry<String, String> var : varTypes.entrySet())
+        {
+            final String name = var.getKey(), type = var.getValue();
+            if (declared.containsKey(name))
+            {
+                continue;
+            }
+
+            final String boxed = BOXED_TYPES.get(type);
+            if (boxed != null)
+            {
+                sb.append(type).append(' ').append(name).append(" = ((").append(boxed).append(") ")
+                        .append(SESSION_VAR).append(".get(\"").append(name).append("\")).").append(type)
+                        .append("Value();\n");
+            }
+            else
+            {
+                // Casts use the raw type, as the type arguments aren't checked at runtime anyway
+                sb.append(type).append(' ').append(name).append(" = (").append(type.replaceAll("<.*>", ""))
+                        .append(") ").append(SESSION_VAR).append(".get(\"").append(name).append("\");\n");
+            }
+        }
+
+        // Variables declared by this snippet are hoisted so the finally block below can see them
+        for (Map.Entry<String, String> var : declared.entrySet())
+        {
+            sb.append(var.getValue()).append(' ').append(var.getKey()).append(" = ")
+                    .append(getDefaultValue(var.getValue())).append(";\n");
+        }
+
+        sb.append("try\n{\n").append(body).append("}\nfinally\n{\n");
+
+        // Store every variable back into the session, so reassignments are kept as well
+        final Set<String> toStore = new HashSet<>(varTypes.keySet());
+        toStore.addAll(declared.keySet());
+        for (String name : toStore)
+        {
+            sb.append(SESSION_VAR).append(".put(\"").append(name).append("\", ").append(name).append(");\n");
+        }
+
+        sb.append("}\n");
+
+        for (String method : methodsToCompile.values())
+        {
+            sb.append(method).append('\n');
+        }
+
+        final ScriptEvaluator script = RunCode.createEvaluator();
+        script.setParameters(new String[]{SESSION_VAR}, new Class[]{RunCodeSession.class});
+        script.cook(sb.toString());
+        return script;
+    }
+
+    /**
+     * Splits the variables of a declaration such as {@code int a = 1, b = f(x, y)} at the commas between them.
+     * Commas inside brackets, string literals or type arguments (such as {@code new HashMap<String, Integer>()}) are
+     * ignored.
+     */
+    private static List<String> splitDeclarators(String declarators)
+    {
+        final List<String> split = new ArrayList<>();
+        final int length = declarators.length();
+        int depth = 0, start = 0;
+        for (int i = 0; i < length; i++)
+        {
+            final char c = declarators.charAt(i);
+            switch (c)
+            {
+                case '"':
+                case '\'':
+                    for (i++; i < length && declarators.charAt(i) != c; i++)
+                    {
+                        if (declarators.charAt(i) == '\\') i++;
+                    }
+                    break;
+                case '(':
+                case '[':
+                case '{':
+                    depth++;
+                    break;
+                case ')':
+                case ']':
+                case '}':
+                    depth--;
+                    break;
+                case ',':
+                    // A comma only starts a new variable if what follows looks like one, which rules out commas
+                    // between type arguments
+                    if (depth == 0 && NEXT_DECLARATOR.matcher(declarators).region(i + 1, length).lookingAt())
+                    {
+                        split.add(declarators.substring(start, i));
+                        start = i + 1;
+                    }
+                    break;
+            }
+        }
+
+        split.add(declarators.substring(start));
+        return split;
+    }
+
+    private static String getDefaultValue(String type)
+    {
+        switch (type)
+        {
+            case "boolean":
+                return "false";
+            case "char":
+                return "(char) 0";
+            case "int":
+            case "long":
+            case "float":
+            case "double":
+            case "byte":
+            case "short":
+                return "0";
+            default:
+                return "null";
+        }
+    }
+
+    private static String firstWord(String statement)
+    {
+        int end = 0;
+        while (end < statement.length() && Character.isJavaIdentifierPart(statement.charAt(end)))
+        {
+            end++;
+        }
+
+        return statement.substring(0, end);
+    }
+
+    private static boolean isExpression(String statement)
+    {
+        if (statement.isEmpty() || statement.charAt(0) == '{' || statement.endsWith("}"))
+        {
+            return false;
+        }
+
+        final String word = firstWord(statement);
+        return "new".equals(word) || !KEYWORDS.contains(word);
+    }
+
+    /**
+     * Splits source code into its top-level statements and declarations, ignoring anything inside brackets, string
+     * literals or comments.
+     */
+    static List<String> splitStatements(String source)
+    {
+        final List<String> statements = new ArrayList<>();
+        final int length = source.length();
+        int depth = 0, start = 0;
+        for (int i = 0; i < length; i++)
+        {
+            final char c = source.charAt(i);
+            switch (c)
+            {
+                case '"':
+                case '\'':
+                    // Skip to the end of the literal
+                    for (i++; i < length && source.charAt(i) != c; i++)
+                    {
+                        if (source.charAt(i) == '\\') i++;
+                    }
+                    break;
+                case '/':
+                    if (i + 1 < length && source.charAt(i + 1) == '/')
+                    {
+                        while (i < length && source.charAt(i) != '\n') i++;
+                    }
+                    else if (i + 1 < length && source.charAt(i + 1) == '*')
+                    {
+                        final int end = source.indexOf("*/", i + 2);
+                        i = (end < 0 ? length : end + 1);
+                    }
+                    break;
+                case '(':
+                case '[':
+                case '{':
+                    depth++;
+                    break;
+                case ')':
+                case ']':
+                    depth--;
+                    break;
+                case '}':
+                    // A closing brace only ends a statement if nothing continues it (else, catch, ; etc)
+                    if (--depth == 0 && !continuesStatement(source, i + 1))
+                    {
+                        addStatement(statements, source.substring(start, i + 1));
+                        start = i + 1;
+                    }
+                    break;
+                case ';':
+                    if (depth == 0 && !"else".equals(firstWord(source.substring(i + 1).trim())))
+                    {
+                        addStatement(statements, source.substring(start, i + 1));
+                        start = i + 1;
+                    }
+                    break;
+            }
+        }
+
+        if (start < length)
+        {
+            addStatement(statements, source.substring(start));
+        }
+
+        return statements;
+    }
+
+    private static boolean continuesStatement(String source, int from)
+    {
+        final String rest = source.substring(from).trim();
+        if (rest.isEmpty())
+        {
+            return false;
+        }
+
+        final char next = rest.charAt(0);
+        if (next == ';' || next == ',' || next == ')' || next == '.')
+        {
+            return true;
+        }
+
+        final String word = firstWord(rest);
+        return "else".equals(word) || "catch".equals(word) || "finally".equals(word) || "while".equals(word);
+    }
+
+    private static void addStatement(List<String> statements, String statement)
+    {
+        statement = statement.trim();
+        if (!statement.isEmpty() && !";".equals(statement))
+        {
+            statements.add(statement);
+        }
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Called by compiled snippets">
+    public Object get(String name)
+    {
+        return values.get(name);
+    }
+
+    public void put(String name, @Nullable Object value)
+    {
+        values.put(name, value);
+    }
+
+    public void put(String name, int value)
+    {
+        values.put(name, value);
+    }
+
+    public void put(String name, long value)
+    {
+        values.put(name, value);
+    }
+
+    public void put(String name, float value)
+    {
+        values.put(name, value);
+    }
+
+    public void put(String name, double value)
+    {
+        values.put(name, value);
+    }
+
+    public void put(String name, boolean value)
+    {
+        values.put(name, value);
+    }
+
+    public void put(String name, char value)
+    {
+        values.put(name, value);
+    }
+
+    public void put(String name, byte value)
+    {
+        values.put(name, value);
+    }
+
+    public void put(String name, short value)
+    {
+        values.put(name, value);
+    }
+
+    public void print(@Nullable Object value)
+    {
+        if (value instanceof Object[])
+        {
+            Console.showMessage(Arrays.deepToString((Object[]) value));
+        }
+        else
+        {
+            Console.showMessage(String.valueOf(value));
+        }
+    }
+
+    public void print(int value)
+    {
+        Console.showMessage(value);
+    }
+
+    public void print(long value)
+    {
+        Console.showMessage(value);
+    }
+
+    public void print(float value)
+    {
+        Console.showMessage(value);
+    }
+
+    public void print(double value)
+    {
+        Console.showMessage(value);
+    }
+
+    public void print(boolean value)
+    {
+        Console.showMessage(value);
+    }
+
+    public void print(char value)
+    {
+        Console.showMessage(value);
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,411 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.*;
+import com.fs.starfarer.api.campaign.econ.Industry;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.campaign.econ.MarketConditionAPI;
+import com.fs.starfarer.api.impl.campaign.ids.Tags;
+import org.jetbrains.annotations.Nullable;
+import org.lazywizard.lazylib.MathUtils;
+import org.lwjgl.util.vector.Vector2f;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * An index of the planets, markets and other notable entities in every star system, used by the Query command.
+ * <p>
+ * Each system's rows are a snapshot of the attributes queries can filter on. A system is only re-indexed when its
+ * entities or the size, owner, conditions or industries of its markets change, when its snapshot is more than a month
+ * old, or after a console command modifies a market (see {@link #invalidate()}), so repeated queries don't revisit the
+ * whole sector.
+ * <p>
+ * The index only stores IDs and copies of primitive attributes, never game objects, so holding it statically doesn't
+ * keep an old sector in memory after another save is loaded.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+final class SectorIndex
+{
+    // Only stability drifts without changing a system's signature, and it mostly moves once a month
+    private static final float REFRESH_DAYS = 30f;
+    private static final Set<String> NUMERIC_KEYS = new HashSet<>(Arrays.asList(
+            "size", "stability", "hazard", "distance"));
+    private static final Set<String> SET_KEYS = new HashSet<>(Arrays.asList(
+            "type", "condition", "industry", "faction", "tag", "system"));
+    private static final Set<String> FLAGS = new HashSet<>(Arrays.asList(
+            "unclaimed", "inhabited", "planet", "station"));
+    private static SectorIndex instance = null;
+    private final WeakReference<SectorAPI> sector;
+    private final Map<String, SystemEntry> systems = new HashMap<>();
+    private int version = 0;
+
+    enum Kind
+    {
+        PLANETS, MARKETS, ENTITIES
+    }
+
+    private SectorIndex(SectorAPI sector)
+    {
+        this.sector = new WeakReference<>(sector);
+    }
+
+    static SectorIndex getIndex()
+    {
+        final SectorAPI sector = Global.getSector();
+        if (instance == null || instance.sector.get() != sector)
+        {
+            instance = new SectorIndex(sector);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Marks every system as stale, so they're re-indexed the next time they're queried. Called by commands that
+     * modify markets.
+     */
+    static void invalidate()
+    {
+        if (instance != null)
+        {
+            instance.version++;
+        }
+    }
+
+    /**
+     * @return The keys that can be used in {@code key:value} or {@code key<number} query terms.
+     */
+    static List<String> getValidKeys()
+    {
+        final List<String> keys = new ArrayList<>(SET_KEYS);
+        keys.addAll(NUMERIC_KEYS);
+        keys.add("near");
+        keys.add("sort");
+        keys.add("limit");
+        Collections.sort(keys);
+        return keys;
+    }
+
+    static List<String> getValidFlags()
+    {
+        final List<String> flags = new ArrayList<>(FLAGS);
+        Collections.sort(flags);
+        return flags;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Indexing">
+    private List<Row> getRows(Kind kind)
+    {
+        final SectorAPI sector = this.sector.get();
+        final CampaignClockAPI clock = sector.getClock();
+        final List<Row> rows = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        for (StarSystemAPI system : sector.getStarSystems())
+        {
+            seen.add(system.getId());
+            SystemEntry entry = systems.get(system.getId());
+            final int signature = getSignature(system);
+            if (entry == null || entry.version != version || entry.signature != signature
+                    || clock.getElapsedDaysSince(entry.timestamp) >= REFRESH_DAYS)
+            {
+                entry = new SystemEntry(system, signature, clock.getTimestamp(), version);
+                systems.put(system.getId(), entry);
+            }
+
+            rows.addAll(kind == Kind.PLANETS ? entry.planets : (kind == Kind.MARKETS ? entry.markets : entry.all));
+        }
+
+        // Forget systems that no longer exist
+        systems.keySet().retainAll(seen);
+        return rows;
+    }
+
+    private int getSignature(StarSystemAPI system)
+    {
+        int signature = (system.getPlanets().size() * 31 + system.getCustomEntities().size()) * 31
+                + system.getJumpPoints().size();
+        for (MarketAPI market : sector.get().getEconomy().getMarkets(system))
+        {
+            signature = signature * 31 + market.getId().hashCode();
+            signature = signature * 31 + market.getFactionId().hashCode();
+            signature = signature * 31 + market.getSize();
+            signature = signature * 31 + market.getConditions().size();
+            signature = signature * 31 + market.getIndustries().size();
+        }
+
+        return signature;
+    }
+
+    private static final class SystemEntry
+    {
+        private final int signature, version;
+        private final long timestamp;
+        private final List<Row> planets = new ArrayList<>(), markets = new ArrayList<>(), all = new ArrayList<>();
+
+        private SystemEntry(StarSystemAPI system, int signature, long timestamp, int version)
+        {
+            this.signature = signature;
+            this.timestamp = timestamp;
+            this.version = version;
+
+            final List<SectorEntityToken> entities = new ArrayList<>();
+            entities.addAll(system.getPlanets());
+            entities.addAll(system.getCustomEntities());
+            entities.addAll(system.getJumpPoints());
+            final Set<SectorEntityToken> added = new HashSet<>();
+            for (SectorEntityToken entity : entities)
+            {
+                if (!added.add(entity))
+                {
+                    continue;
+                }
+
+                final Row row = new Row(entity);
+                all.add(row);
+                if (row.isPlanet) planets.add(row);
+                if (row.isInhabited) markets.add(row);
+            }
+        }
+    }
+
+    static final class Row
+    {
+        final String id, name, lowerId, lowerName, system, type, faction;
+        final boolean isPlanet, isStation, isInhabited, isUnclaimed;
+        @Nullable final Float size, stability, hazard;
+        private final Set<String> conditions = new HashSet<>(), industries = new HashSet<>(), tags = new HashSet<>();
+        private final String lowerSystemId, lowerSystemName;
+        private final Vector2f hyperspaceLoc;
+
+        private Row(SectorEntityToken entity)
+        {
+            id = entity.getId();
+            name = entity.getFullName();
+            lowerId = id.toLowerCase();
+            lowerName = (name == null ? "" : name.toLowerCase());
+            system = entity.getContainingLocation().getName();
+            lowerSystemId = entity.getContainingLocation().getId().toLowerCase();
+            lowerSystemName = system.toLowerCase();
+            hyperspaceLoc = new Vector2f(entity.getLocationInHyperspace());
+            for (String tag : entity.getTags()) tags.add(tag.toLowerCase());
+
+            if (entity instanceof PlanetAPI)
+            {
+                final PlanetAPI planet = (PlanetAPI) entity;
+                isPlanet = !planet.isStar();
+                type = planet.getTypeId().toLowerCase();
+            }
+            else if (entity instanceof JumpPointAPI)
+            {
+                isPlanet = false;
+                type = "jump_point";
+            }
+            else
+            {
+                isPlanet = false;
+                type = (entity.getCustomEntityType() == null ? "" : entity.getCustomEntityType().toLowerCase());
+            }
+            isStation = entity.hasTag(Tags.STATION);
+
+            final MarketAPI market = entity.getMarket();
+            if (market != null)
+            {
+                isInhabited = !market.isPlanetConditionMarketOnly();
+                isUnclaimed = !isInhabited;
+                for (MarketConditionAPI condition : market.getConditions())
+                {
+                    conditions.add(condition.getId().toLowerCase());
+                }
+                hazard = market.getHazardValue() * 100f;
+            }
+            else
+            {
+                isInhabited = false;
+                isUnclaimed = false;
+                hazard = null;
+            }
+
+            if (isInhabited)
+            {
+                for (Industry industry : market.getIndustries())
+                {
+                    industries.add(industry.getId().toLowerCase());
+                }
+                faction = market.getFactionId();
+                size = (float) market.getSize();
+                stability = market.getStabilityValue();
+            }
+            else
+            {
+                faction = (entity.getFaction() == null ? "" : entity.getFaction().getId());
+                size = null;
+                stability = null;
+            }
+        }
+
+        private boolean hasFlag(String flag)
+        {
+            switch (flag)
+            {
+                case "unclaimed":
+                    return isUnclaimed;
+                case "inhabited":
+                    return isInhabited;
+                case "planet":
+                    return isPlanet;
+                default:
+                    return isStation;
+            }
+        }
+
+        private boolean hasValue(String key, String value)
+        {
+            switch (key)
+            {
+                case "type":
+                    return type.startsWith(value);
+                case "condition":
+                    return conditions.contains(value);
+                case "industry":
+                    return industries.contains(value);
+                case "faction":
+                    return faction.equalsIgnoreCase(value);
+                case "tag":
+                    return tags.contains(value);
+                default:
+                    return lowerSystemId.equals(value) || lowerSystemName.contains(value);
+            }
+        }
+
+        @Nullable
+        private Float getNumber(String key, @Nullable Vector2f reference)
+        {
+            switch (key)
+            {
+                case "size":
+                    return size;
+                case "stability":
+                    return stability;
+                case "hazard":
+                    return hazard;
+                default:
+                    return (reference == null ? null : getDistanceLY(reference));
+            }
+        }
+
+        float getDistanceLY(Vector2f reference)
+        {
+            return MathUtils.getDistance(hyperspaceLoc, reference) / Global.getSettings().getUnitsPerLightYear();
+        }
+    }
+    //</editor-fold>
+
+    /**
+     * Finds the location in hyperspace that {@code near:} and {@code distance} terms are measured from.
+     *
+     * @param target {@code player}, or the ID of an entity or market.
+     *
+     * @return The location, or {@code null} if no matching entity exists.
+     */
+    @Nullable
+    static Vector2f findReference(String target)
+    {
+        final SectorAPI sector = Global.getSector();
+        if ("player".equalsIgnoreCase(target))
+        {
+            return sector.getPlayerFleet().getLocationInHyperspace();
+        }
+
+        SectorEntityToken entity = sector.getEntityById(target);
+        if (entity == null)
+        {
+            final MarketAPI market = sector.getEconomy().getMarket(target);
+            entity = (market == null ? null : market.getPrimaryEntity());
+        }
+
+        return (entity == null ? null : entity.getLocationInHyperspace());
+    }
+
+    /**
+     * Returns the rows matching every term of a query. Terms are {@code key:value}, {@code key<number} (or
+     * {@code <=, >, >=, =}), a flag such as {@code unclaimed}, or text that must appear in the ID or name (see
+     * {@link QueryTerm}). Presentation terms ({@code near:}, {@code sort:} and {@code limit:}) are ignored here.
+     *
+     * @throws IllegalArgumentException if a term is malformed or uses an unknown key.
+     */
+    List<Row> query(Kind kind, String query, @Nullable Vector2f reference)
+    {
+        final List<String> flags = new ArrayList<>(), setKeys = new ArrayList<>(), setValues = new ArrayList<>(),
+                textTerms = new ArrayList<>();
+        final List<QueryTerm> comparisons = new ArrayList<>();
+        final List<Float> operands = new ArrayList<>();
+        for (String term : query.toLowerCase().split("\\s+"))
+        {
+            if (term.isEmpty() || term.startsWith("near:") || term.startsWith("sort:") || term.startsWith("limit:"))
+            {
+                continue;
+            }
+
+            if (FLAGS.contains(term))
+            {
+                flags.add(term);
+                continue;
+            }
+
+            final QueryTerm parsed = QueryTerm.parse(term);
+            if (parsed.isText())
+            {
+                textTerms.add(term);
+            }
+            else if (SET_KEYS.contains(parsed.key))
+            {
+                parsed.requireSetMatch();
+                setKeys.add(parsed.key);
+                setValues.add(parsed.value);
+            }
+            else if (NUMERIC_KEYS.contains(parsed.key))
+            {
+                operands.add(parsed.getNumber());
+                comparisons.add(parsed);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown attribute '" + parsed.key + "'!");
+            }
+        }
+
+        // Cheapest checks first: flags and set lookups, then numbers, then text
+        final List<Row> results = new ArrayList<>();
+        rows:
+        for (Row row : getRows(kind))
+        {
+            for (String flag : flags)
+            {
+                if (!row.hasFlag(flag)) continue rows;
+            }
+
+            for (int i = 0; i < setKeys.size(); i++)
+            {
+                if (!row.hasValue(setKeys.get(i), setValues.get(i))) continue rows;
+            }
+
+            for (int i = 0; i < comparisons.size(); i++)
+            {
+                final Float number = row.getNumber(comparisons.get(i).key, reference);
+                if (number == null || !comparisons.get(i).compare(number, operands.get(i))) continue rows;
+            }
+
+            for (String term : textTerms)
+            {
+                if (!row.lowerId.contains(term) && !row.lowerName.contains(term)) continue rows;
+            }
+
+            results.add(row);
+        }
+
+        return results;
+    }
+}
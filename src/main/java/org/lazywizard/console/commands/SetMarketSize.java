@@ -46,6 +46,7 @@ public class SetMarketSize implements BaseCommand
 
         market.reapplyConditions();
         market.reapplyIndustries();
+        SectorIndex.invalidate();
         Console.showMessage("Market size changed to " + market.getSize() + " (was " + curSize + ").");
         return CommandResult.SUCCESS;
     }
@@ -7,7 +7,6 @@ import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.CommandStore.StoredCommand;
 import org.lazywizard.console.Console;
 
-// TODO: Extend to cover ships/weapons/modspecs/commodities/etc
 public class SourceOf implements BaseCommand
 {
     @Override
@@ -35,7 +34,13 @@ public class SourceOf implements BaseCommand
         StoredCommand command = CommandStore.retrieveCommand(args);
         if (command == null)
         {
-            Console.showMessage("No command with the name '" + args + "' was found!");
+            // Not a command, so check if it's the ID of something a mod added
+            if (WhichMod.showSources(args))
+            {
+                return CommandResult.SUCCESS;
+            }
+
+            Console.showMessage("No command or content with the name '" + args + "' was found!");
             return CommandResult.ERROR;
         }
 
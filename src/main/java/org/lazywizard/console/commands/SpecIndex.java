@@ -0,0 +1,519 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.SettingsAPI;
+import com.fs.starfarer.api.combat.ShipHullSpecAPI;
+import com.fs.starfarer.api.combat.ShipHullSpecAPI.ShipTypeHints;
+import com.fs.starfarer.api.loading.WeaponSpecAPI;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.lazywizard.console.ContentIndex;
+import org.lazywizard.console.ContentIndex.Category;
+import org.lazywizard.console.ConsoleTable;
+import org.lazywizard.console.ConsoleTable.Column;
+import org.lazywizard.console.ConsoleTable.ColumnType;
+
+import java.util.*;
+
+/**
+ * A column-oriented index of static spec attributes, used by {@code list} to answer attribute queries such as
+ * {@code list weapons size:large type:energy op<20} without looking up every spec for every query.
+ * <p>
+ * Numeric attributes are stored in primitive arrays, while enums, tags and source mods are stored as a {@link BitSet}
+ * of matching rows per value. Queries apply the bitset predicates first, then only check numeric and text predicates
+ * against the rows that are left. Each index is built the first time it's used and kept until the console is reloaded.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+final class SpecIndex
+{
+    private static final Logger Log = Global.getLogger(SpecIndex.class);
+    private static final Map<Kind, SpecIndex> indices = new EnumMap<>(Kind.class);
+    private final String[] ids, names, lowerIds, lowerNames;
+    private final List<Attribute> attributes = new ArrayList<>();
+    private final Map<String, Attribute> attributesByKey = new LinkedHashMap<>();
+    private final int size;
+
+    enum Kind
+    {
+        WEAPONS, HULLS
+    }
+
+    static synchronized SpecIndex getIndex(Kind kind)
+    {
+        SpecIndex index = indices.get(kind);
+        if (index == null)
+        {
+            final long startTime = System.nanoTime();
+            index = (kind == Kind.WEAPONS ? buildWeaponIndex() : buildHullIndex());
+            indices.put(kind, index);
+            Log.info("Built " + kind.name().toLowerCase() + " spec index (" + index.size + " rows) in "
+                    + (System.nanoTime() - startTime) / 1_000_000 + "ms");
+        }
+
+        return index;
+    }
+
+    /**
+     * Discards all indices, so they're rebuilt from the current specs the next time they're used.
+     */
+    static synchronized void clear()
+    {
+        indices.clear();
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Index building">
+    private SpecIndex(List<String> ids, List<String> names)
+    {
+        this.size = ids.size();
+        this.ids = ids.toArray(new String[size]);
+        this.names = names.toArray(new String[size]);
+        this.lowerIds = new String[size];
+        this.lowerNames = new String[size];
+        for (int i = 0; i < size; i++)
+        {
+            lowerIds[i] = this.ids[i].toLowerCase();
+            lowerNames[i] = (this.names[i] == null ? "" : this.names[i].toLowerCase());
+        }
+    }
+
+    private void addAttribute(Attribute attribute, String... aliases)
+    {
+        attributes.add(attribute);
+        attributesByKey.put(attribute.key, attribute);
+        for (String alias : aliases)
+        {
+            attributesByKey.put(alias, attribute);
+        }
+    }
+
+    private static SpecIndex buildWeaponIndex()
+    {
+        final SettingsAPI settings = Global.getSettings();
+        final List<WeaponSpecAPI> specs = new ArrayList<>();
+        final List<String> ids = new ArrayList<>(), names = new ArrayList<>();
+        for (String id : Global.getSector().getAllWeaponIds())
+        {
+            final WeaponSpecAPI spec = settings.getWeaponSpec(id);
+            specs.add(spec);
+            ids.add(id);
+            names.add(spec.getWeaponName());
+        }
+
+        final int size = specs.size();
+        final SpecIndex index = new SpecIndex(ids, names);
+        final SetAttribute weaponSize = new SetAttribute("size", size, false),
+                type = new SetAttribute("type", size, false),
+                tags = new SetAttribute("tag", size, true),
+                mod = new SetAttribute("mod", size, false);
+        final NumericAttribute op = new NumericAttribute("op", size, ColumnType.INTEGER),
+                range = new NumericAttribute("range", size, ColumnType.INTEGER),
+                tier = new NumericAttribute("tier", size, ColumnType.INTEGER);
+        final Map<String, String> sourceMods = ContentIndex.getIndex().getSourceMods(Category.WEAPONS);
+        for (int i = 0; i < size; i++)
+        {
+            final WeaponSpecAPI spec = specs.get(i);
+            weaponSize.add(i, spec.getSize().name());
+            type.add(i, spec.getType().name());
+            for (String tag : spec.getTags()) tags.add(i, tag);
+            mod.add(i, getOrDefault(sourceMods, spec.getWeaponId(), ContentIndex.CORE_ID));
+            op.values[i] = spec.getOrdnancePointCost(null);
+            range.values[i] = spec.getMaxRange();
+            tier.values[i] = spec.getTier();
+        }
+
+        index.addAttribute(weaponSize);
+        index.addAttribute(type);
+        index.addAttribute(op, "ordnance");
+        index.addAttribute(range);
+        index.addAttribute(tier);
+        index.addAttribute(mod, "source");
+        index.addAttribute(tags, "tags");
+        return index;
+    }
+
+    private static SpecIndex buildHullIndex()
+    {
+        final SettingsAPI settings = Global.getSettings();
+        final List<ShipHullSpecAPI> specs = new ArrayList<>();
+        final List<String> ids = new ArrayList<>(), names = new ArrayList<>();
+        for (String fullId : Global.getSector().getAllEmptyVariantIds())
+        {
+            final String id = fullId.substring(0, fullId.lastIndexOf("_Hull"));
+            final ShipHullSpecAPI spec = settings.getHullSpec(id);
+            specs.add(spec);
+            ids.add(id);
+            names.add(spec.getHullNameWithDashClass());
+        }
+
+        final int size = specs.size();
+        final SpecIndex index = new SpecIndex(ids, names);
+        final SetAttribute hullSize = new SetAttribute("size", size, false),
+                designType = new SetAttribute("design", size, false),
+                hints = new SetAttribute("hint", size, true),
+                tags = new SetAttribute("tag", size, true),
+                mod = new SetAttribute("mod", size, false);
+        final NumericAttribute fp = new NumericAttribute("fp", size, ColumnType.INTEGER),
+                dp = new NumericAttribute("dp", size, ColumnType.INTEGER),
+                op = new NumericAttribute("op", size, ColumnType.INTEGER),
+                hp = new NumericAttribute("hp", size, ColumnType.INTEGER),
+                armor = new NumericAttribute("armor", size, ColumnType.INTEGER);
+        final Map<String, String> sourceMods = ContentIndex.getIndex().getSourceMods(Category.HULLS);
+        for (int i = 0; i < size; i++)
+        {
+            final ShipHullSpecAPI spec = specs.get(i);
+            hullSize.add(i, spec.getHullSize().name());
+            designType.add(i, spec.getManufacturer());
+            for (ShipTypeHints hint : spec.getHints()) hints.add(i, hint.name());
+            for (String tag : spec.getTags()) tags.add(i, tag);
+
+            // Skins aren't in ship_data.csv, so they're credited to the mod that added their base hull
+            String source = sourceMods.get(spec.getHullId());
+            if (source == null) source = getOrDefault(sourceMods, spec.getBaseHullId(), ContentIndex.CORE_ID);
+            mod.add(i, source);
+
+            fp.values[i] = spec.getFleetPoints();
+            dp.values[i] = spec.getSuppliesToRecover();
+            op.values[i] = spec.getOrdnancePoints(null);
+            hp.values[i] = spec.getHitpoints();
+            armor.values[i] = spec.getArmorRating();
+        }
+
+        index.addAttribute(hullSize);
+        index.addAttribute(fp, "fleetpoints");
+        index.addAttribute(dp, "deploymentpoints");
+        index.addAttribute(op, "ordnance");
+        index.addAttribute(hp, "hitpoints", "hull");
+        index.addAttribute(armor);
+        index.addAttribute(designType, "manufacturer");
+        index.addAttribute(mod, "source");
+        index.addAttribute(hints, "hints");
+        index.addAttribute(tags, "tags");
+        return index;
+    }
+
+    private static String getOrDefault(Map<String, String> map, @Nullable String key, String defaultValue)
+    {
+        final String value = (key == null ? null : map.get(key));
+        return (value == null ? defaultValue : value);
+    }
+    //</editor-fold>
+
+    int size()
+    {
+        return size;
+    }
+
+    String getId(int row)
+    {
+        return ids[row];
+    }
+
+    /**
+     * @return The attribute names this index can be queried by.
+     */
+    Set<String> getAttributeKeys()
+    {
+        return Collections.unmodifiableSet(attributesByKey.keySet());
+    }
+
+    /**
+     * Returns the rows matching a query.
+     *
+     * @param query The query, a space-separated list of terms. Terms can be {@code attribute:value},
+     *              {@code attribute<number} (or {@code <=, >, >=, =}), or plain text that must appear in the ID or name.
+     *              See {@link QueryTerm}.
+     *
+     * @return The matching rows.
+     *
+     * @throws IllegalArgumentException if the query is malformed or refers to an unknown attribute.
+     */
+    BitSet query(String query)
+    {
+        final List<SetAttribute> setAttributes = new ArrayList<>();
+        final List<String> setValues = new ArrayList<>();
+        final List<NumericAttribute> numericAttributes = new ArrayList<>();
+        final List<QueryTerm> comparisons = new ArrayList<>();
+        final List<Float> operands = new ArrayList<>();
+        final List<String> textTerms = new ArrayList<>();
+
+        // Parse every term before evaluating anything
+        for (String term : query.toLowerCase().split("\\s+"))
+        {
+            if (term.isEmpty() || term.startsWith("sort:"))
+            {
+                continue;
+            }
+
+            final QueryTerm parsed = QueryTerm.parse(term);
+            if (parsed.isText())
+            {
+                textTerms.add(term);
+                continue;
+            }
+
+            final Attribute attribute = attributesByKey.get(parsed.key);
+            if (attribute == null)
+            {
+                throw new IllegalArgumentException("Unknown attribute '" + parsed.key + "'!");
+            }
+
+            if (attribute instanceof SetAttribute)
+            {
+                parsed.requireSetMatch();
+                setAttributes.add((SetAttribute) attribute);
+                setValues.add(parsed.value);
+            }
+            else
+            {
+                operands.add(parsed.getNumber());
+                numericAttributes.add((NumericAttribute) attribute);
+                comparisons.add(parsed);
+            }
+        }
+
+        // Bitset predicates are the cheapest, so they're applied first to narrow down the remaining checks
+        final BitSet result = new BitSet(size);
+        result.set(0, size);
+        for (int i = 0; i < setAttributes.size(); i++)
+        {
+            result.and(setAttributes.get(i).getRows(setValues.get(i)));
+        }
+
+        for (int i = 0; i < numericAttributes.size(); i++)
+        {
+            final float[] values = numericAttributes.get(i).values;
+            final QueryTerm comparison = comparisons.get(i);
+            final float operand = operands.get(i);
+            for (int row = result.nextSetBit(0); row >= 0; row = result.nextSetBit(row + 1))
+            {
+                if (!comparison.compare(values[row], operand))
+                {
+                    result.clear(row);
+                }
+            }
+        }
+
+        for (String term : textTerms)
+        {
+            for (int row = result.nextSetBit(0); row >= 0; row = result.nextSetBit(row + 1))
+            {
+                if (!lowerIds[row].contains(term) && !lowerNames[row].contains(term))
+                {
+                    result.clear(row);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds a table of the given rows. Attribute columns are included for every single-valued attribute.
+     *
+     * @param sort The {@code sort:attribute} term of the query (prefix the attribute with - to sort descending), or
+     *             {@code null} to sort by ID.
+     */
+    ConsoleTable<Integer> createTable(String title, BitSet rows, @Nullable String sort)
+    {
+        final List<Attribute> shown = new ArrayList<>();
+        final List<Column> columns = new ArrayList<>();
+        columns.add(new Column("ID", ColumnType.TEXT));
+        columns.add(new Column("Name", ColumnType.TEXT));
+        for (Attribute attribute : attributes)
+        {
+            if (attribute.hasColumn())
+            {
+                shown.add(attribute);
+                columns.add(attribute.createColumn());
+            }
+        }
+
+        final List<Integer> rowList = new ArrayList<>(rows.cardinality());
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1))
+        {
+            rowList.add(row);
+        }
+
+        final ConsoleTable<Integer> table = new ConsoleTable<Integer>(title, rowList,
+                columns.toArray(new Column[columns.size()]))
+        {
+            @Override
+            protected Object getValue(Integer row, int column)
+            {
+                switch (column)
+                {
+                    case 0:
+                        return ids[row];
+                    case 1:
+                        return names[row];
+                    default:
+                        return shown.get(column - 2).getValue(row);
+                }
+            }
+        };
+
+        int sortColumn = 0;
+        boolean ascending = true;
+        if (sort != null)
+        {
+            String key = sort.toLowerCase();
+            if (key.startsWith("-"))
+            {
+                ascending = false;
+                key = key.substring(1);
+            }
+
+            final Attribute attribute = attributesByKey.get(key);
+            if ("name".equals(key))
+            {
+                sortColumn = 1;
+            }
+            else if (attribute != null && shown.contains(attribute))
+            {
+                sortColumn = shown.indexOf(attribute) + 2;
+            }
+            else if (!"id".equals(key))
+            {
+                throw new IllegalArgumentException("Can't sort by '" + key + "'!");
+            }
+        }
+
+        table.sortBy(sortColumn, ascending);
+        return table;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Attribute storage">
+    private abstract static class Attribute
+    {
+        final String key;
+
+        private Attribute(String key)
+        {
+            this.key = key;
+        }
+
+        abstract boolean hasColumn();
+
+        abstract Column createColumn();
+
+        @Nullable
+        abstract Object getValue(int row);
+
+        String getColumnName()
+        {
+            return (key.length() <= 2 ? key.toUpperCase() : Character.toUpperCase(key.charAt(0)) + key.substring(1));
+        }
+    }
+
+    private static final class NumericAttribute extends Attribute
+    {
+        private final float[] values;
+        private final ColumnType type;
+
+        private NumericAttribute(String key, int size, ColumnType type)
+        {
+            super(key);
+            this.values = new float[size];
+            this.type = type;
+        }
+
+        @Override
+        boolean hasColumn()
+        {
+            return true;
+        }
+
+        @Override
+        Column createColumn()
+        {
+            return new Column(getColumnName(), type);
+        }
+
+        @Override
+        Object getValue(int row)
+        {
+            return values[row];
+        }
+    }
+
+    private static final class SetAttribute extends Attribute
+    {
+        private final Map<String, BitSet> rowsByValue = new HashMap<>();
+        @Nullable private final String[] displayValues;
+        private final int size;
+
+        private SetAttribute(String key, int size, boolean multiValued)
+        {
+            super(key);
+            this.size = size;
+            this.displayValues = (multiValued ? null : new String[size]);
+        }
+
+        private void add(int row, @Nullable String value)
+        {
+            if (value == null || value.isEmpty())
+            {
+                return;
+            }
+
+            final String lower = value.toLowerCase();
+            BitSet rows = rowsByValue.get(lower);
+            if (rows == null)
+            {
+                rows = new BitSet(size);
+                rowsByValue.put(lower, rows);
+            }
+
+            rows.set(row);
+            if (displayValues != null)
+            {
+                displayValues[row] = lower;
+            }
+        }
+
+        /**
+         * Returns the rows with exactly this value or, if there are none, every value starting with it (so
+         * {@code size:capital} finds {@code capital_ship}).
+         */
+        private BitSet getRows(String value)
+        {
+            final BitSet exact = rowsByValue.get(value);
+            if (exact != null)
+            {
+                return exact;
+            }
+
+            final BitSet rows = new BitSet(size);
+            for (Map.Entry<String, BitSet> entry : rowsByValue.entrySet())
+            {
+                if (entry.getKey().startsWith(value))
+                {
+                    rows.or(entry.getValue());
+                }
+            }
+
+            return rows;
+        }
+
+        @Override
+        boolean hasColumn()
+        {
+            return displayValues != null;
+        }
+
+        @Override
+        Column createColumn()
+        {
+            return new Column(getColumnName(), ColumnType.TEXT);
+        }
+
+        @Override
+        Object getValue(int row)
+        {
+            return (displayValues == null ? null : displayValues[row]);
+        }
+    }
+    //</editor-fold>
+}
@@ -4,6 +4,8 @@ import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.cheatmanager.CampaignCheatManager;
+import org.lazywizard.console.cheatmanager.CombatCheatManager;
 import org.lazywizard.lazylib.CollectionUtils;
 
 import java.util.*;
@@ -52,6 +54,28 @@ public class Status implements BaseCommand
                 + "\n - Loaded aliases " + aliases
                 + "\n - Mods that added commands " + sources;
 
+        if (Console.isAsyncLoggingEnabled())
+        {
+            status += "\n - Asynchronous logging enabled, " + Console.getDroppedLogMessages() + " messages dropped";
+        }
+
+        if (context.isInCampaign())
+        {
+            final String cheats = CampaignCheatManager.getCostReport();
+            if (!cheats.isEmpty())
+            {
+                status += "\n - Active campaign cheats:\n" + CommandUtils.indent(cheats, 3);
+            }
+        }
+        else if (context.isInCombat())
+        {
+            final String cheats = CombatCheatManager.getCostReport();
+            if (!cheats.isEmpty())
+            {
+                status += "\n - Active combat cheats:\n" + CommandUtils.indent(cheats, 3);
+            }
+        }
+
         Console.showMessage(status);
         return CommandResult.SUCCESS;
     }
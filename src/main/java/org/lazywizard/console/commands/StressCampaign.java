@@ -0,0 +1,566 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.EveryFrameScript;
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.CampaignClockAPI;
+import com.fs.starfarer.api.campaign.CampaignFleetAPI;
+import com.fs.starfarer.api.campaign.FactionAPI;
+import com.fs.starfarer.api.campaign.FleetAssignment;
+import com.fs.starfarer.api.campaign.LocationAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.StarSystemAPI;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.impl.campaign.fleets.FleetFactoryV3;
+import com.fs.starfarer.api.impl.campaign.fleets.FleetParamsV3;
+import com.fs.starfarer.api.impl.campaign.ids.Conditions;
+import com.fs.starfarer.api.impl.campaign.ids.Entities;
+import com.fs.starfarer.api.impl.campaign.ids.Factions;
+import com.fs.starfarer.api.impl.campaign.ids.FleetTypes;
+import com.fs.starfarer.api.impl.campaign.ids.Industries;
+import com.fs.starfarer.api.impl.campaign.ids.Submarkets;
+import org.apache.log4j.Logger;
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandUtils;
+import org.lazywizard.console.CommonStrings;
+import org.lazywizard.console.Console;
+import org.lazywizard.console.JobScheduler;
+import org.lazywizard.lazylib.MathUtils;
+import org.lwjgl.util.vector.Vector2f;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * Fills the campaign with fleets, entities and markets, then measures how long frames take, so the cost of mod scripts
+ * can be compared as the sector grows. Everything it creates is tagged so it can be removed again, even after the save
+ * is reloaded.
+ */
+public class StressCampaign implements BaseCommand
+{
+    private static final Logger Log = Global.getLogger(StressCampaign.class);
+    private static final String TAG = "lw_console_stress";
+    private static final String MARKET_ENTITY_TYPE = "station_side02";
+    private static final FleetAssignment[] ASSIGNMENTS = {FleetAssignment.PATROL_SYSTEM,
+            FleetAssignment.RAID_SYSTEM, FleetAssignment.ORBIT_AGGRESSIVE};
+    private static final float ASSIGNMENT_DAYS = 1_000f;
+    private static final float DEFAULT_DAYS = 7f;
+    private static WeakReference<MeasureScript> currentMeasurement = null;
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (!context.isInCampaign())
+        {
+            Console.showMessage(CommonStrings.ERROR_CAMPAIGN_ONLY);
+            return CommandResult.WRONG_CONTEXT;
+        }
+
+        final String[] tmp = args.trim().toLowerCase().split("\\s+");
+        switch (tmp[0])
+        {
+            case "":
+                return CommandResult.BAD_SYNTAX;
+            case "teardown":
+                return teardown();
+            case "measure":
+                if (tmp.length > 2 || (tmp.length == 2 && !CommandUtils.isFloat(tmp[1])))
+                {
+                    return CommandResult.BAD_SYNTAX;
+                }
+
+                return measure(tmp.length == 2 ? Float.parseFloat(tmp[1]) : DEFAULT_DAYS);
+            default:
+                return spawn(tmp);
+        }
+    }
+
+    private static CommandResult spawn(String[] args)
+    {
+        if (!CommandUtils.isInteger(args[0]))
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        final int fleetsPerFaction = Integer.parseInt(args[0]);
+        int fleetPoints = 100, entitiesPerSystem = 0, marketsPerSystem = 0;
+        float days = DEFAULT_DAYS;
+        long seed = new Random().nextLong();
+        String systemArg = "here", factionArg = null;
+        try
+        {
+            for (int i = 1; i < args.length; i++)
+            {
+                final String[] option = args[i].split(":", 2);
+                if (option.length != 2)
+                {
+                    return CommandResult.BAD_SYNTAX;
+                }
+
+                switch (option[0])
+                {
+                    case "fp":
+                        fleetPoints = Integer.parseInt(option[1]);
+                        break;
+                    case "entities":
+                        entitiesPerSystem = Integer.parseInt(option[1]);
+                        break;
+                    case "markets":
+                        marketsPerSystem = Integer.parseInt(option[1]);
+                        break;
+                    case "days":
+                        days = Float.parseFloat(option[1]);
+                        break;
+                    case "seed":
+                        seed = Long.parseLong(option[1]);
+                        break;
+                    case "systems":
+                        systemArg = option[1];
+                        break;
+                    case "factions":
+                        factionArg = option[1];
+                        break;
+                    default:
+                        return CommandResult.BAD_SYNTAX;
+                }
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+            Console.showMessage("Error: " + ex.getMessage());
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        if (fleetsPerFaction < 0 || fleetPoints <= 0 || entitiesPerSystem < 0 || marketsPerSystem < 0)
+        {
+            Console.showMessage("Error: counts can't be negative, and fleets need at least one fleet point!");
+            return CommandResult.ERROR;
+        }
+
+        final List<StarSystemAPI> systems = new ArrayList<>();
+        if ("all".equals(systemArg))
+        {
+            systems.addAll(Global.getSector().getStarSystems());
+        }
+        else if ("here".equals(systemArg))
+        {
+            final LocationAPI here = Global.getSector().getCurrentLocation();
+            if (!(here instanceof StarSystemAPI))
+            {
+                Console.showMessage("Error: you must be in a star system, or pick systems with 'systems:'!");
+                return CommandResult.ERROR;
+            }
+
+            systems.add((StarSystemAPI) here);
+        }
+        else
+        {
+            for (String name : systemArg.split(","))
+            {
+                final StarSystemAPI system = CommandUtils.findBestSystemMatch(name);
+                if (system == null)
+                {
+                    Console.showMessage("No system found with name or id '" + name + "'!");
+                    return CommandResult.ERROR;
+                }
+
+                if (!systems.contains(system)) systems.add(system);
+            }
+        }
+
+        // By default use every faction that owns a market, as they're the ones with fleets to spawn
+        final Set<FactionAPI> factions = new HashSet<>();
+        if (factionArg == null)
+        {
+            for (MarketAPI market : Global.getSector().getEconomy().getMarketsCopy())
+            {
+                factions.add(market.getFaction());
+            }
+        }
+        else
+        {
+            for (String name : factionArg.split(","))
+            {
+                final FactionAPI faction = CommandUtils.findBestFactionMatch(name);
+                if (faction == null)
+                {
+                    Console.showMessage("No such faction '" + name + "'!");
+                    return CommandResult.ERROR;
+                }
+
+                factions.add(faction);
+            }
+        }
+
+        if (systems.isEmpty() || factions.isEmpty())
+        {
+            Console.showMessage("Error: no systems or factions to spawn fleets for!");
+            return CommandResult.ERROR;
+        }
+
+        // Sorting keeps the spawn order, and thus the seeded results, the same between runs
+        final List<FactionAPI> sortedFactions = new ArrayList<>(factions);
+        Collections.sort(sortedFactions, new Comparator<FactionAPI>()
+        {
+            @Override
+            public int compare(FactionAPI o1, FactionAPI o2)
+            {
+                return o1.getId().compareTo(o2.getId());
+            }
+        });
+        Collections.sort(systems, new Comparator<StarSystemAPI>()
+        {
+            @Override
+            public int compare(StarSystemAPI o1, StarSystemAPI o2)
+            {
+                return o1.getId().compareTo(o2.getId());
+            }
+        });
+
+        final SpawnJob job = new SpawnJob(sortedFactions, systems, fleetsPerFaction, fleetPoints,
+                entitiesPerSystem, marketsPerSystem, days, seed);
+        final int jobId = JobScheduler.submit(job);
+        Console.showMessage("Spawning " + (fleetsPerFaction * sortedFactions.size()) + " fleets from "
+                + sortedFactions.size() + " factions, " + (entitiesPerSystem * systems.size()) + " entities and "
+                + (marketsPerSystem * systems.size()) + " markets across " + systems.size()
+                + " systems as job " + jobId + " (seed " + seed + ").");
+        return CommandResult.SUCCESS;
+    }
+
+    private static CommandResult measure(float days)
+    {
+        final MeasureScript running = (currentMeasurement == null ? null : currentMeasurement.get());
+        if (running != null && !running.isDone())
+        {
+            Console.showMessage("Error: a measurement is already in progress!");
+            return CommandResult.ERROR;
+        }
+
+        final MeasureScript script = new MeasureScript(days);
+        Global.getSector().addTransientScript(script);
+        currentMeasurement = new WeakReference<>(script);
+        Console.showMessage("Recording frame times for " + days + " days with " + countFleets()
+                + " fleets in the sector. Unpause the game to begin; you'll be notified when it's finished.");
+        return CommandResult.SUCCESS;
+    }
+
+    private static CommandResult teardown()
+    {
+        final Set<SectorEntityToken> toRemove = new LinkedHashSet<>();
+        for (LocationAPI loc : Global.getSector().getAllLocations())
+        {
+            toRemove.addAll(loc.getEntitiesWithTag(TAG));
+            for (CampaignFleetAPI fleet : loc.getFleets())
+            {
+                if (fleet.hasTag(TAG)) toRemove.add(fleet);
+            }
+        }
+
+        if (toRemove.isEmpty())
+        {
+            Console.showMessage("Nothing to remove.");
+            return CommandResult.SUCCESS;
+        }
+
+        final int jobId = JobScheduler.submit(new TeardownJob(new ArrayList<>(toRemove)));
+        Console.showMessage("Removing " + toRemove.size() + " stress test fleets and entities as job " + jobId
+                + "...");
+        return CommandResult.SUCCESS;
+    }
+
+    private static int countFleets()
+    {
+        int total = 0;
+        for (LocationAPI loc : Global.getSector().getAllLocations())
+        {
+            total += loc.getFleets().size();
+        }
+
+        return total;
+    }
+
+    private static class SpawnJob extends JobScheduler.Job
+    {
+        private final List<FactionAPI> factions;
+        private final List<StarSystemAPI> systems;
+        private final int fleetsPerFaction, fleetPoints, entitiesPerSystem, marketsPerSystem, totalSteps;
+        private final float days;
+        private final Random random;
+        private int nextStep = 0, fleets = 0, entities = 0, markets = 0, failed = 0;
+
+        private SpawnJob(List<FactionAPI> factions, List<StarSystemAPI> systems, int fleetsPerFaction,
+                         int fleetPoints, int entitiesPerSystem, int marketsPerSystem, float days, long seed)
+        {
+            super("stress test setup");
+            this.factions = factions;
+            this.systems = systems;
+            this.fleetsPerFaction = fleetsPerFaction;
+            this.fleetPoints = fleetPoints;
+            this.entitiesPerSystem = entitiesPerSystem;
+            this.marketsPerSystem = marketsPerSystem;
+            this.days = days;
+            this.random = new Random(seed);
+            totalSteps = systems.size() * (entitiesPerSystem + marketsPerSystem)
+                    + factions.size() * fleetsPerFaction;
+        }
+
+        // Entities and markets are created first, so fleets can be given them as destinations
+        @Override
+        protected boolean step()
+        {
+            final int entitySteps = systems.size() * entitiesPerSystem,
+                    marketSteps = systems.size() * marketsPerSystem;
+            final int step = nextStep++;
+            try
+            {
+                if (step < entitySteps)
+                {
+                    spawnEntity(systems.get(step / entitiesPerSystem));
+                }
+                else if (step < entitySteps + marketSteps)
+                {
+                    final int index = step - entitySteps;
+                    spawnMarket(systems.get(index / marketsPerSystem), factions.get(index % factions.size()));
+                }
+                else if (step < totalSteps)
+                {
+                    spawnFleet(factions.get((step - entitySteps - marketSteps) / fleetsPerFaction));
+                }
+            }
+            catch (Exception ex)
+            {
+                Log.warn("Failed to spawn stress test content", ex);
+                failed++;
+            }
+
+            return nextStep >= totalSteps;
+        }
+
+        private SectorEntityToken addOrbitingEntity(StarSystemAPI system, String name, String type, String faction)
+        {
+            final SectorEntityToken entity = system.addCustomEntity(null, name, type, faction);
+            final float radius = 2_000f + random.nextFloat() * 8_000f;
+            entity.setCircularOrbit(system.getCenter(), random.nextFloat() * 360f, radius, radius / 20f);
+            entity.addTag(TAG);
+            return entity;
+        }
+
+        private void spawnEntity(StarSystemAPI system)
+        {
+            addOrbitingEntity(system, "Stress Test Location", Entities.STABLE_LOCATION, Factions.NEUTRAL);
+            entities++;
+        }
+
+        private void spawnMarket(StarSystemAPI system, FactionAPI faction)
+        {
+            final SectorEntityToken entity = addOrbitingEntity(system, "Stress Test Station", MARKET_ENTITY_TYPE,
+                    faction.getId());
+            final MarketAPI market = Global.getFactory().createMarket(entity.getId() + "_market",
+                    entity.getName(), 3);
+            market.setFactionId(faction.getId());
+            market.setPrimaryEntity(entity);
+            market.getTariff().modifyFlat("default_tariff", market.getFaction().getTariffFraction());
+            market.addCondition(Conditions.POPULATION_3);
+            market.addIndustry(Industries.POPULATION);
+            market.addIndustry(Industries.SPACEPORT);
+            market.addSubmarket(Submarkets.SUBMARKET_OPEN);
+            entity.setMarket(market);
+            Global.getSector().getEconomy().addMarket(market, true);
+            markets++;
+        }
+
+        private void spawnFleet(FactionAPI faction)
+        {
+            final FleetParamsV3 params = new FleetParamsV3(
+                    null, // Hyperspace location
+                    faction.getId(), // Faction ID
+                    null, // Quality override (null disables)
+                    FleetTypes.PATROL_MEDIUM, // Fleet type
+                    fleetPoints, // Combat FP
+                    0f, 0f, 0f, 0f, 0f, // Freighter, tanker, transport, liner and utility FP
+                    0f); // Quality bonus
+            params.random = random;
+            final CampaignFleetAPI fleet = FleetFactoryV3.createFleet(params);
+            if (fleet == null || fleet.isEmpty())
+            {
+                failed++;
+                return;
+            }
+
+            // Fleets start near a random planet or station and are given a long-lasting assignment
+            final StarSystemAPI system = systems.get(random.nextInt(systems.size()));
+            final List<SectorEntityToken> anchors = new ArrayList<SectorEntityToken>(system.getPlanets());
+            anchors.addAll(system.getEntitiesWithTag(TAG));
+            final SectorEntityToken anchor = (anchors.isEmpty() ? system.getCenter()
+                    : anchors.get(random.nextInt(anchors.size())));
+            final Vector2f offset = MathUtils.getPointOnCircumference(null,
+                    anchor.getRadius() + fleet.getRadius() + 300f, random.nextFloat() * 360f);
+            fleet.addTag(TAG);
+            system.spawnFleet(anchor, offset.x, offset.y, fleet);
+            fleet.addAssignment(ASSIGNMENTS[random.nextInt(ASSIGNMENTS.length)], anchor, ASSIGNMENT_DAYS);
+            fleets++;
+        }
+
+        @Override
+        public float getProgress()
+        {
+            return (totalSteps == 0 ? 1f : nextStep / (float) totalSteps);
+        }
+
+        @Override
+        protected void onFinished()
+        {
+            SectorIndex.invalidate();
+            Console.showMessage("Spawned " + fleets + " fleets, " + entities + " entities and " + markets
+                    + " markets" + (failed > 0 ? " (" + failed + " failed, see the log)" : "") + ".");
+            if (days > 0f) measure(days);
+        }
+
+        @Override
+        protected void onCancelled()
+        {
+            SectorIndex.invalidate();
+            Console.showMessage("Cancelled stress test setup after spawning " + fleets + " fleets, " + entities
+                    + " entities and " + markets + " markets. Use 'stresscampaign teardown' to remove them.");
+        }
+    }
+
+    private static class TeardownJob extends JobScheduler.Job
+    {
+        private final List<SectorEntityToken> toRemove;
+        private int next = 0;
+
+        private TeardownJob(List<SectorEntityToken> toRemove)
+        {
+            super("stress test teardown");
+            this.toRemove = toRemove;
+        }
+
+        @Override
+        protected boolean step()
+        {
+            if (next < toRemove.size())
+            {
+                final SectorEntityToken token = toRemove.get(next++);
+                if (token instanceof CampaignFleetAPI)
+                {
+                    ((CampaignFleetAPI) token).despawn();
+                }
+                else
+                {
+                    final MarketAPI market = token.getMarket();
+                    if (market != null && market.getPrimaryEntity() == token)
+                    {
+                        Global.getSector().getEconomy().removeMarket(market);
+                    }
+
+                    token.getContainingLocation().removeEntity(token);
+                }
+            }
+
+            return next >= toRemove.size();
+        }
+
+        @Override
+        public float getProgress()
+        {
+            return next / (float) toRemove.size();
+        }
+
+        @Override
+        protected void onFinished()
+        {
+            SectorIndex.invalidate();
+            Console.showMessage("Removed " + toRemove.size() + " stress test fleets and entities.");
+        }
+
+        @Override
+        protected void onCancelled()
+        {
+            SectorIndex.invalidate();
+            Console.showMessage("Cancelled stress test teardown after removing " + next + " of " + toRemove.size()
+                    + " fleets and entities.");
+        }
+    }
+
+    /**
+     * Records the real time between campaign frames while the game is unpaused, which includes every script and
+     * render call.
+     */
+    private static class MeasureScript implements EveryFrameScript
+    {
+        private final float days;
+        private float[] samples = new float[4_096];
+        private int numSamples = 0;
+        private long startTimestamp = Long.MIN_VALUE, lastFrame = 0L;
+        private boolean isDone = false;
+
+        private MeasureScript(float days)
+        {
+            this.days = days;
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return isDone;
+        }
+
+        @Override
+        public boolean runWhilePaused()
+        {
+            return true;
+        }
+
+        @Override
+        public void advance(float amount)
+        {
+            if (isDone)
+            {
+                return;
+            }
+
+            final CampaignClockAPI clock = Global.getSector().getClock();
+            final long now = System.nanoTime();
+            if (startTimestamp == Long.MIN_VALUE)
+            {
+                startTimestamp = clock.getTimestamp();
+                lastFrame = now;
+                return;
+            }
+
+            // Paused frames are still timed so the first frame after unpausing doesn't include the pause
+            final float frameMillis = (now - lastFrame) / 1_000_000f;
+            lastFrame = now;
+            if (!Global.getSector().isPaused())
+            {
+                if (numSamples == samples.length) samples = Arrays.copyOf(samples, samples.length * 2);
+                samples[numSamples++] = frameMillis;
+            }
+
+            if (clock.getElapsedDaysSince(startTimestamp) >= days)
+            {
+                isDone = true;
+                report();
+            }
+        }
+
+        private void report()
+        {
+            if (numSamples == 0)
+            {
+                Console.showMessage("No frames were recorded.");
+                return;
+            }
+
+            final float[] sorted = Arrays.copyOf(samples, numSamples);
+            Arrays.sort(sorted);
+            double total = 0.0;
+            for (float sample : sorted) total += sample;
+
+            final int p99 = Math.max(0, (int) Math.ceil(numSamples * 0.99) - 1);
+            Console.showMessage(String.format("Recorded %d frames over %.1f days with %d fleets in the sector:"
+                            + "\n   min %.2fms, avg %.2fms, p99 %.2fms, max %.2fms", numSamples, days, countFleets(),
+                    sorted[0], total / numSamples, sorted[p99], sorted[numSamples - 1]));
+        }
+    }
+}
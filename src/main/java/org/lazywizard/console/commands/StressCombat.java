@@ -0,0 +1,419 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.CampaignFleetAPI;
+import com.fs.starfarer.api.campaign.FactionAPI;
+import com.fs.starfarer.api.combat.BaseEveryFrameCombatPlugin;
+import com.fs.starfarer.api.combat.CombatEngineAPI;
+import com.fs.starfarer.api.combat.ShipAPI;
+import com.fs.starfarer.api.combat.ShipAPI.HullSize;
+import com.fs.starfarer.api.combat.ShipVariantAPI;
+import com.fs.starfarer.api.fleet.FleetMemberAPI;
+import com.fs.starfarer.api.impl.campaign.fleets.FleetFactoryV3;
+import com.fs.starfarer.api.impl.campaign.fleets.FleetParamsV3;
+import com.fs.starfarer.api.impl.campaign.ids.FleetTypes;
+import com.fs.starfarer.api.input.InputEventAPI;
+import com.fs.starfarer.api.mission.FleetSide;
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandUtils;
+import org.lazywizard.console.CommonStrings;
+import org.lazywizard.console.Console;
+import org.lazywizard.lazylib.MathUtils;
+import org.lwjgl.util.vector.Vector2f;
+
+import java.util.*;
+
+/**
+ * Fills a battle with ships, asteroids and optionally a steady stream of projectiles, then records how long frames
+ * take and how many entities were alive, so weapon and AI mods can be benchmarked the same way every time.
+ */
+public class StressCombat implements BaseCommand
+{
+    private static final String PLUGIN_DATA_ID = "lw_console_stresscombat_plugin";
+    private static final String DEFAULT_WEAPON = "heavymg";
+    private static final int SHIPS_PER_FRAME = 5, ASTEROIDS_PER_FRAME = 50;
+    private static final float SHIP_SPACING = 400f;
+    // Upper bounds of each histogram bucket in milliseconds, roughly 120, 60, 30, 20 and 10 FPS
+    private static final float[] BUCKETS = {8.3f, 16.7f, 33.3f, 50f, 100f, Float.MAX_VALUE};
+
+    private static StressPlugin getPlugin()
+    {
+        return (StressPlugin) Global.getCombatEngine().getCustomData().get(PLUGIN_DATA_ID);
+    }
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (!context.isInCombat())
+        {
+            Console.showMessage(CommonStrings.ERROR_COMBAT_ONLY);
+            return CommandResult.WRONG_CONTEXT;
+        }
+
+        final String[] tmp = args.trim().toLowerCase().split("\\s+");
+        if ("stop".equals(tmp[0]))
+        {
+            final StressPlugin plugin = getPlugin();
+            if (plugin == null)
+            {
+                Console.showMessage("Error: no stress test is running!");
+                return CommandResult.ERROR;
+            }
+
+            plugin.finish();
+            return CommandResult.SUCCESS;
+        }
+
+        if (!CommandUtils.isInteger(tmp[0]))
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        if (getPlugin() != null)
+        {
+            Console.showMessage("Error: a stress test is already running! Use 'stresscombat stop' to end it.");
+            return CommandResult.ERROR;
+        }
+
+        final int shipsPerSide = Integer.parseInt(tmp[0]);
+        int asteroids = 0, projectilesPerSecond = 0;
+        float seconds = 30f;
+        long seed = new Random().nextLong();
+        String variantArg = null, factionArg = null, weapon = DEFAULT_WEAPON;
+        try
+        {
+            for (int i = 1; i < tmp.length; i++)
+            {
+                final String[] option = tmp[i].split(":", 2);
+                if (option.length != 2)
+                {
+                    return CommandResult.BAD_SYNTAX;
+                }
+
+                switch (option[0])
+                {
+                    case "variants":
+                        variantArg = option[1];
+                        break;
+                    case "faction":
+                        factionArg = option[1];
+                        break;
+                    case "asteroids":
+                        asteroids = Integer.parseInt(option[1]);
+                        break;
+                    case "projectiles":
+                        projectilesPerSecond = Integer.parseInt(option[1]);
+                        break;
+                    case "weapon":
+                        weapon = option[1];
+                        break;
+                    case "seconds":
+                        seconds = Float.parseFloat(option[1]);
+                        break;
+                    case "seed":
+                        seed = Long.parseLong(option[1]);
+                        break;
+                    default:
+                        return CommandResult.BAD_SYNTAX;
+                }
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+            Console.showMessage("Error: " + ex.getMessage());
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        if (shipsPerSide < 0 || asteroids < 0 || projectilesPerSecond < 0 || seconds <= 0f)
+        {
+            Console.showMessage("Error: counts can't be negative, and the test must last at least a moment!");
+            return CommandResult.ERROR;
+        }
+
+        if (projectilesPerSecond > 0)
+        {
+            try
+            {
+                Global.getSettings().getWeaponSpec(weapon);
+            }
+            catch (Exception ex)
+            {
+                Console.showMessage("No weapon found with id '" + weapon + "'! Use 'list weapons' for a list of valid"
+                        + " IDs.");
+                return CommandResult.ERROR;
+            }
+        }
+
+        final Random random = new Random(seed);
+        final List<String> variants;
+        if (variantArg != null)
+        {
+            variants = new ArrayList<>();
+            for (String id : variantArg.split(","))
+            {
+                final String variant = CommandUtils.findBestStringMatch(id, Global.getSettings().getAllVariantIds());
+                if (variant == null)
+                {
+                    Console.showMessage("No variant found with id '" + id + "'! Use 'list variants' for a list of"
+                            + " valid IDs.");
+                    return CommandResult.ERROR;
+                }
+
+                variants.add(variant);
+            }
+        }
+        else if (factionArg != null)
+        {
+            if (!context.isCampaignAccessible())
+            {
+                Console.showMessage("Error: faction fleets can only be generated in campaign battles."
+                        + " Use 'variants:' instead.");
+                return CommandResult.ERROR;
+            }
+
+            final FactionAPI faction = CommandUtils.findBestFactionMatch(factionArg);
+            if (faction == null)
+            {
+                Console.showMessage("No such faction '" + factionArg + "'!");
+                return CommandResult.ERROR;
+            }
+
+            variants = getDoctrineVariants(faction, random);
+            if (variants.isEmpty())
+            {
+                Console.showMessage("Error: unable to generate a fleet for faction '" + faction.getId() + "'!");
+                return CommandResult.ERROR;
+            }
+        }
+        else
+        {
+            variants = getAllCombatVariants();
+        }
+
+        final StressPlugin plugin = new StressPlugin(variants, shipsPerSide, asteroids, projectilesPerSecond,
+                weapon, seconds, random);
+        Global.getCombatEngine().addPlugin(plugin);
+        Global.getCombatEngine().getCustomData().put(PLUGIN_DATA_ID, plugin);
+        Console.showMessage("Spawning " + shipsPerSide + " ships per side and " + asteroids + " asteroids (seed "
+                + seed + "). Frame times will be recorded for " + seconds + " seconds once everything has spawned.");
+        return CommandResult.SUCCESS;
+    }
+
+    // Builds a fleet the same way faction fleets are built in the campaign, so its ships follow the faction's doctrine
+    private static List<String> getDoctrineVariants(FactionAPI faction, Random random)
+    {
+        final FleetParamsV3 params = new FleetParamsV3(null, faction.getId(), null, FleetTypes.PATROL_LARGE,
+                300f, 0f, 0f, 0f, 0f, 0f, 0f);
+        params.random = random;
+        final CampaignFleetAPI fleet = FleetFactoryV3.createFleet(params);
+        final List<String> variants = new ArrayList<>();
+        if (fleet != null)
+        {
+            for (FleetMemberAPI member : fleet.getFleetData().getMembersListCopy())
+            {
+                if (!member.isFighterWing() && !member.isCivilian())
+                {
+                    variants.add(member.getVariant().getHullVariantId());
+                }
+            }
+        }
+
+        return variants;
+    }
+
+    private static List<String> getAllCombatVariants()
+    {
+        final List<String> variants = new ArrayList<>();
+        for (String id : Global.getSettings().getAllVariantIds())
+        {
+            final ShipVariantAPI variant = Global.getSettings().getVariant(id);
+            if (!variant.isFighter() && !variant.isStation() && !variant.isEmptyHullVariant()
+                    && variant.getHullSize() != HullSize.FIGHTER)
+            {
+                variants.add(id);
+            }
+        }
+
+        // Sorted so the same seed picks the same ships
+        Collections.sort(variants);
+        return variants;
+    }
+
+    private static class StressPlugin extends BaseEveryFrameCombatPlugin
+    {
+        private final List<String> variants;
+        private final int shipsPerSide, asteroids, projectilesPerSecond;
+        private final String weapon;
+        private final float seconds;
+        private final Random random;
+        private final List<ShipAPI> spawned = new ArrayList<>();
+        private float[] frameTimes = new float[4_096];
+        private int shipsSpawned = 0, asteroidsSpawned = 0, numSamples = 0, failed = 0;
+        private long lastFrame = 0L, totalShips = 0L, totalProjectiles = 0L, totalAsteroids = 0L;
+        private int maxShips = 0, maxProjectiles = 0, maxAsteroids = 0;
+        private float elapsed = 0f, projectileBudget = 0f;
+        private boolean isFinished = false;
+
+        private StressPlugin(List<String> variants, int shipsPerSide, int asteroids, int projectilesPerSecond,
+                             String weapon, float seconds, Random random)
+        {
+            this.variants = variants;
+            this.shipsPerSide = shipsPerSide;
+            this.asteroids = asteroids;
+            this.projectilesPerSecond = projectilesPerSecond;
+            this.weapon = weapon;
+            this.seconds = seconds;
+            this.random = random;
+        }
+
+        @Override
+        public void advance(float amount, List<InputEventAPI> events)
+        {
+            final CombatEngineAPI engine = Global.getCombatEngine();
+            if (isFinished || engine.isPaused())
+            {
+                lastFrame = 0L;
+                return;
+            }
+
+            // Everything is spawned a few at a time before measuring starts
+            if (shipsSpawned < shipsPerSide * 2)
+            {
+                for (int i = 0; i < SHIPS_PER_FRAME && shipsSpawned < shipsPerSide * 2; i++)
+                {
+                    spawnShip(engine, shipsSpawned++);
+                }
+
+                return;
+            }
+
+            if (asteroidsSpawned < asteroids)
+            {
+                for (int i = 0; i < ASTEROIDS_PER_FRAME && asteroidsSpawned < asteroids; i++, asteroidsSpawned++)
+                {
+                    final float width = engine.getMapWidth(), height = engine.getMapHeight();
+                    final Vector2f velocity = MathUtils.getPointOnCircumference(null, random.nextFloat() * 100f,
+                            random.nextFloat() * 360f);
+                    engine.spawnAsteroid(random.nextInt(4), (random.nextFloat() - 0.5f) * width,
+                            (random.nextFloat() - 0.5f) * height, velocity.x, velocity.y);
+                }
+
+                return;
+            }
+
+            if (projectilesPerSecond > 0) spawnProjectiles(engine, amount);
+            sample(engine);
+            elapsed += amount;
+            if (elapsed >= seconds)
+            {
+                finish();
+            }
+        }
+
+        private void spawnShip(CombatEngineAPI engine, int index)
+        {
+            // Each side forms a grid in its own half of the map, facing the other side
+            final boolean isPlayer = (index % 2 == 0);
+            final int slot = index / 2, perRow = Math.max(1, (int) (engine.getMapWidth() * 0.8f / SHIP_SPACING));
+            final float x = (slot % perRow - perRow / 2f) * SHIP_SPACING,
+                    y = (1_000f + (slot / perRow) * SHIP_SPACING) * (isPlayer ? -1f : 1f);
+            final String variant = variants.get(random.nextInt(variants.size()));
+            try
+            {
+                final ShipAPI ship = engine.getFleetManager(isPlayer ? FleetSide.PLAYER : FleetSide.ENEMY)
+                        .spawnShipOrWing(variant, new Vector2f(x, y), isPlayer ? 90f : 270f);
+                if (ship != null) spawned.add(ship);
+            }
+            catch (Exception ex)
+            {
+                Console.showException("Failed to spawn variant '" + variant + "': ", ex);
+                failed++;
+            }
+        }
+
+        private void spawnProjectiles(CombatEngineAPI engine, float amount)
+        {
+            projectileBudget += projectilesPerSecond * amount;
+            while (projectileBudget >= 1f)
+            {
+                projectileBudget--;
+                final ShipAPI source = (spawned.isEmpty() ? null : spawned.get(random.nextInt(spawned.size())));
+                if (source == null || !source.isAlive())
+                {
+                    continue;
+                }
+
+                engine.spawnProjectile(source, null, weapon, new Vector2f(source.getLocation()),
+                        source.getFacing() + (random.nextFloat() - 0.5f) * 30f, source.getVelocity());
+            }
+        }
+
+        private void sample(CombatEngineAPI engine)
+        {
+            final long now = System.nanoTime();
+            if (lastFrame != 0L)
+            {
+                if (numSamples == frameTimes.length) frameTimes = Arrays.copyOf(frameTimes, numSamples * 2);
+                frameTimes[numSamples++] = (now - lastFrame) / 1_000_000f;
+
+                final int ships = engine.getShips().size(), projectiles = engine.getProjectiles().size(),
+                        asteroids = engine.getAsteroids().size();
+                totalShips += ships;
+                totalProjectiles += projectiles;
+                totalAsteroids += asteroids;
+                maxShips = Math.max(maxShips, ships);
+                maxProjectiles = Math.max(maxProjectiles, projectiles);
+                maxAsteroids = Math.max(maxAsteroids, asteroids);
+            }
+
+            lastFrame = now;
+        }
+
+        private void finish()
+        {
+            isFinished = true;
+            final CombatEngineAPI engine = Global.getCombatEngine();
+            engine.getCustomData().remove(PLUGIN_DATA_ID);
+            engine.removePlugin(this);
+            report();
+        }
+
+        private void report()
+        {
+            if (numSamples == 0)
+            {
+                Console.showMessage("Stress test stopped before any frames were recorded.");
+                return;
+            }
+
+            final float[] sorted = Arrays.copyOf(frameTimes, numSamples);
+            Arrays.sort(sorted);
+            double total = 0.0;
+            for (float sample : sorted) total += sample;
+
+            final int p99 = Math.max(0, (int) Math.ceil(numSamples * 0.99) - 1);
+            final StringBuilder sb = new StringBuilder(String.format("Recorded %d frames over %.1f seconds"
+                            + " (%d ships failed to spawn):\n   min %.2fms, avg %.2fms, p99 %.2fms, max %.2fms"
+                            + "\n   ships avg %d/max %d, projectiles avg %d/max %d, asteroids avg %d/max %d",
+                    numSamples, elapsed, failed, sorted[0], total / numSamples, sorted[p99], sorted[numSamples - 1],
+                    totalShips / numSamples, maxShips, totalProjectiles / numSamples, maxProjectiles,
+                    totalAsteroids / numSamples, maxAsteroids));
+
+            // Frame times are sorted, so each bucket is a contiguous run
+            int start = 0;
+            for (int i = 0; i < BUCKETS.length; i++)
+            {
+                int end = start;
+                while (end < numSamples && sorted[end] < BUCKETS[i]) end++;
+
+                final float percent = (end - start) * 100f / numSamples;
+                final String label = (i == BUCKETS.length - 1 ? ">= " + BUCKETS[i - 1] : "< " + BUCKETS[i]) + "ms";
+                sb.append(String.format("\n   %-10s %5.1f%% ", label, percent));
+                for (int bar = 0; bar < Math.round(percent / 2f); bar++) sb.append('#');
+                start = end;
+            }
+
+            Console.showMessage(sb.toString());
+        }
+    }
+}
@@ -9,12 +9,19 @@ import com.fs.starfarer.api.util.Misc;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.JobScheduler;
+
+import java.util.List;
 
 import static org.lazywizard.console.CommandUtils.findBestLocationMatch;
 
 public class Survey implements BaseCommand
 {
-    private static int surveyLocation(LocationAPI loc)
+    /**
+     * @param showDetails Whether to list every market surveyed. Surveying the whole sector only prints a summary, as
+     *                    listing every location would flood the campaign message log.
+     */
+    private static int surveyLocation(LocationAPI loc, boolean showDetails)
     {
         int total = 0;
         final StringBuilder sb = new StringBuilder("Surveying " + loc.getName() + "...");
@@ -30,7 +37,7 @@ public class Survey implements BaseCommand
             }
         }
 
-        if (total > 0) Console.showMessage(sb.toString());
+        if (showDetails && total > 0) Console.showMessage(sb.toString());
         return total;
     }
 
@@ -43,20 +50,12 @@ public class Survey implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
+        // Surveying every location at once can take several seconds in a large sector
         if ("all".equals(args.toLowerCase()))
         {
-            int totalSurveyed = 0;
-            for (LocationAPI loc : Global.getSector().getAllLocations())
-            {
-                final int surveyedInLoc = surveyLocation(loc);
-                if (surveyedInLoc > 0)
-                {
-                    Console.showMessage("Surveyed " + surveyedInLoc + " markets in " + loc.getName() + ".");
-                    totalSurveyed += surveyedInLoc;
-                }
-            }
-
-            Console.showMessage("Surveyed " + totalSurveyed + " markets in " + Global.getSector().getAllLocations().size() + " systems.");
+            final List<LocationAPI> locations = Global.getSector().getAllLocations();
+            final int jobId = JobScheduler.submit(new SurveyJob(locations));
+            Console.showMessage("Surveying " + locations.size() + " systems as job " + jobId + "...");
             return CommandResult.SUCCESS;
         }
 
@@ -70,7 +69,55 @@ public class Survey implements BaseCommand
             return CommandResult.ERROR;
         }
 
-        Console.showMessage("Surveyed " + surveyLocation(loc) + " markets in " + loc.getName() + ".");
+        Console.showMessage("Surveyed " + surveyLocation(loc, true) + " markets in " + loc.getName() + ".");
         return CommandResult.SUCCESS;
     }
+
+    private static class SurveyJob extends JobScheduler.Job
+    {
+        private final List<LocationAPI> locations;
+        private int nextLocation = 0, totalSurveyed = 0, systemsSurveyed = 0;
+
+        private SurveyJob(List<LocationAPI> locations)
+        {
+            super("survey");
+            this.locations = locations;
+        }
+
+        @Override
+        protected boolean step()
+        {
+            if (nextLocation < locations.size())
+            {
+                final int surveyedInLoc = surveyLocation(locations.get(nextLocation++), false);
+                if (surveyedInLoc > 0)
+                {
+                    totalSurveyed += surveyedInLoc;
+                    systemsSurveyed++;
+                }
+            }
+
+            return nextLocation >= locations.size();
+        }
+
+        @Override
+        public float getProgress()
+        {
+            return (locations.isEmpty() ? 1f : nextLocation / (float) locations.size());
+        }
+
+        @Override
+        protected void onFinished()
+        {
+            Console.showMessage("Surveyed " + totalSurveyed + " markets in " + systemsSurveyed + " of "
+                    + locations.size() + " systems.");
+        }
+
+        @Override
+        protected void onCancelled()
+        {
+            Console.showMessage("Cancelled survey after surveying " + totalSurveyed + " markets in " + nextLocation
+                    + " of " + locations.size() + " systems.");
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.ModSpecAPI;
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.Console;
+import org.lazywizard.console.ContentIndex;
+import org.lazywizard.console.ContentIndex.Category;
+
+import java.util.Map;
+
+public class WhichMod implements BaseCommand
+{
+    static String getModName(String modId)
+    {
+        if (ContentIndex.CORE_ID.equals(modId))
+        {
+            return "vanilla";
+        }
+
+        final ModSpecAPI mod = Global.getSettings().getModManager().getModSpec(modId);
+        return (mod == null ? modId : mod.getName() + " (" + modId + ")");
+    }
+
+    /**
+     * Shows which mod added every row matching an ID.
+     *
+     * @return {@code false} if no spreadsheet has a row with that ID.
+     */
+    static boolean showSources(String id)
+    {
+        final Map<Category, Map.Entry<String, String>> found = ContentIndex.getIndex().findSourceMods(id);
+        if (found.isEmpty())
+        {
+            return false;
+        }
+
+        final StringBuilder sb = new StringBuilder("'" + id + "' was added by:");
+        for (Map.Entry<Category, Map.Entry<String, String>> entry : found.entrySet())
+        {
+            sb.append("\n - ").append(entry.getKey().getDisplayName()).append(" (")
+                    .append(entry.getValue().getKey()).append("): ").append(getModName(entry.getValue().getValue()));
+        }
+
+        Console.showMessage(sb.toString());
+        return true;
+    }
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        args = args.trim();
+        if (args.isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        if (!showSources(args))
+        {
+            Console.showMessage("No hull, wing, weapon, hullmod, commodity, special item, industry or market "
+                    + "condition found with id '" + args + "'!");
+            return CommandResult.ERROR;
+        }
+
+        return CommandResult.SUCCESS;
+    }
+}
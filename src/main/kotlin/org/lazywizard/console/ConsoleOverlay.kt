@@ -11,6 +11,7 @@ package org.lazywizard.console
 import com.fs.starfarer.api.Global
 import org.apache.log4j.Level
 import org.lazywizard.console.BaseCommand.CommandContext
+import org.lazywizard.console.commands.RunCode
 import org.lazywizard.console.ext.GPUInfo
 import org.lazywizard.console.ext.getGPUInfo
 import org.lazywizard.lazylib.opengl.ColorUtils.glColor
@@ -30,12 +31,27 @@ import java.awt.Color
 import java.lang.management.ManagementFactory
 import java.lang.management.MemoryUsage
 import java.text.DecimalFormat
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 private val Log = Global.getLogger(Console::class.java)
 private var history = ""
 private const val CURSOR_BLINK_SPEED = 0.7f
+private const val COMPILE_CHECK_DELAY = 0.4f // Seconds after the last keypress before RunCode input is compiled
 internal const val HORIZONTAL_MARGIN = 30f // Don't go below 30; TODO: scale minor UI elements using this setting
 private var overlay: ConsoleOverlayInternal? = null
+// Table shown by the last command, kept between overlay sessions until dismissed
+private var lastTable: ConsoleTable<*>? = null
+// Compiles RunCode input in the background while it's being typed, see ConsoleOverlayInternal.updateCompileCheck()
+private val compileExecutor by lazy(LazyThreadSafetyMode.NONE) {
+    Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "Console-RunCodeCompiler").apply {
+            isDaemon = true
+            priority = Thread.MIN_PRIORITY
+        }
+    }
+}
 
 fun show(context: CommandContext) = with(
     ConsoleOverlayInternal(
@@ -63,6 +79,13 @@ fun clear() {
 
 internal fun addToHistory(toAdd: String) {
     history += toAdd
+
+    // Output shown outside the overlay never passes through the scrollback, so trim it here as well
+    if (history.length > ConsoleSettings.maxScrollback * 2) history = history.takeLast(ConsoleSettings.maxScrollback)
+}
+
+internal fun showTableOnOpen(table: ConsoleTable<*>) {
+    lastTable = table
 }
 
 internal fun getErrorString(err: Int) = when (err) {
@@ -113,7 +136,27 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
     private val curContext = font.createText(text = context.name, baseColor = secondaryColor)
     private val curTarget = font.createText(text = getCurrentTarget(), baseColor = secondaryColor)
     private val devMode = font.createText(text = "DEVMODE", baseColor = Color.LIGHT_GRAY)
+    private val tableText = font.createText(text = "", size = fontSize, baseColor = mainColor, maxWidth = maxX - minX)
+    // Tables use the lower two thirds of the scrollback area, leaving the latest output visible above them
+    private val tablePageSize = (((maxY - minY) / fontSize * 2f / 3f).toInt() - 5).coerceAtLeast(1)
+    private var table: ConsoleTable<*>? = lastTable
+    private var tablePage = 0
+    private var needsTableUpdate = true
     private val scrollbar = Scrollbar(10f, secondaryColor, secondaryColor.darker().darker())
+    private val searchText = font.createText(text = "", baseColor = secondaryColor, maxWidth = width, maxHeight = 30f)
+    private val searchInput = StringBuilder()
+    private var searchIndex: ScrollbackIndex? = null
+    private var isSearching = false
+    private var currentMatch = -1
+    private var escapeHeld = false
+    private val compileStatus =
+        font.createText(text = "", baseColor = Color(255, 100, 100), maxWidth = width - 60f, maxHeight = 30f)
+    private var compileTask: Future<String?>? = null
+    private var compileTaskInput: String? = null
+    private var compileCheckInput = ""
+    private var compileCheckDelay = 0f
+    private var checkedInput: String? = null
+    private var hasCompileError = false
     private val currentInput = StringBuilder()
     private var latestInput: String? = null
     private var scrollOffset = 0f
@@ -220,7 +263,10 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
             checkInput()
 
             // Alt+F4 support
-            if (Display.isCloseRequested()) System.exit(0)
+            if (Display.isCloseRequested()) {
+                ConsoleSettings.flush()
+                System.exit(0)
+            }
 
             advance(calcDelta())
             render()
@@ -235,13 +281,29 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
 
     fun clear() {
         scrollback.text = ""
+        searchIndex?.clear()
+        currentMatch = -1
+        table = null
+    }
+
+    // All additions to the scrollback go through here so the search index stays current
+    private fun appendToScrollback(text: String) {
+        scrollback.append(text)
+        val index = searchIndex ?: return
+        val prevMatches = index.matches.size
+        index.append(text)
+        if (isSearching && index.matches.size != prevMatches) updateSearchText()
     }
 
     fun dispose() {
         // Clean up native resources, limit memory used by console scrollback history
         history = scrollback.text.takeLast(ConsoleSettings.maxScrollback)
+        lastTable = table
         scrollback.dispose()
+        tableText.dispose()
         query.dispose()
+        searchText.dispose()
+        compileStatus.dispose()
         prompt.dispose()
         input.dispose()
         ramText.dispose()
@@ -255,11 +317,28 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
     override fun showOutput(output: String): Boolean {
         if (!isOpen) return false
 
-        scrollback.append(output)
+        appendToScrollback(output)
         scrollOffset = 0f
         return true
     }
 
+    override fun showTable(table: ConsoleTable<*>): Boolean {
+        if (!isOpen) return false
+
+        this.table = table
+        tablePage = 0
+        needsTableUpdate = true
+        return true
+    }
+
+    // Closes the table view, leaving the page the player was looking at in the scrollback
+    private fun dismissTable() {
+        val table = table ?: return
+        appendToScrollback("\n" + table.formatPage(tablePage, tablePageSize))
+        scrollOffset = 0f
+        this.table = null
+    }
+
     override fun getContext() = context
 
     // Based on this StackOverflow answer: https://stackoverflow.com/a/5599842
@@ -313,10 +392,95 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         return ""
     }
 
+    //<editor-fold defaultstate="collapsed" desc="Scrollback search">
+    private fun startSearch() {
+        // The index is only built the first time search is used, then kept up to date as output arrives
+        if (searchIndex == null) {
+            val wrapWidth = maxX - minX
+            searchIndex = ScrollbackIndex { line ->
+                if (font.calcWidth(line, fontSize) <= wrapWidth) 1
+                else font.wrapString(line, fontSize, wrapWidth, Float.MAX_VALUE, 0).count { it == '\n' } + 1
+            }.apply { append(scrollback.text) }
+        }
+
+        isSearching = true
+        updateSearchText()
+    }
+
+    private fun stopSearch() {
+        isSearching = false
+        searchInput.setLength(0)
+        searchIndex?.search("")
+        currentMatch = -1
+    }
+
+    private fun updateSearch() {
+        val index = searchIndex ?: return
+        index.search(searchInput.toString())
+
+        // Start from the most recent match, as that's usually what the player is looking for
+        currentMatch = index.matches.size - 1
+        scrollToMatch()
+    }
+
+    private fun cycleMatch(forward: Boolean) {
+        val numMatches = searchIndex?.matches?.size ?: 0
+        if (numMatches == 0) return
+
+        currentMatch = if (forward) (currentMatch + 1) % numMatches else (currentMatch - 1 + numMatches) % numMatches
+        scrollToMatch()
+    }
+
+    // Centers the current match in the scrollback area; bounds are enforced in advance()
+    private fun scrollToMatch() {
+        updateSearchText()
+        val index = searchIndex ?: return
+        if (currentMatch !in index.matches.indices) return
+
+        val line = index.matches[currentMatch]
+        val visualTop = index.getVisualStart(line) * fontSize
+        scrollOffset = (minY + maxY) / 2f + visualTop + (fontSize / 2f) - minY - scrollback.height
+    }
+
+    private fun updateSearchText() {
+        val numMatches = searchIndex?.matches?.size ?: 0
+        val position = if (numMatches == 0) "no matches" else "${currentMatch + 1}/$numMatches"
+        searchText.text = "Find: $searchInput  ($position)  |  Enter/Shift+Enter: next/previous  |  Esc: close"
+    }
+
+    private fun handleSearchKey(keyPressed: Int, shiftDown: Boolean) {
+        when (keyPressed) {
+            Keyboard.KEY_ESCAPE -> stopSearch()
+            Keyboard.KEY_RETURN -> cycleMatch(!shiftDown)
+            Keyboard.KEY_DOWN -> cycleMatch(true)
+            Keyboard.KEY_UP -> cycleMatch(false)
+            Keyboard.KEY_BACK -> if (searchInput.isNotEmpty()) {
+                searchInput.setLength(searchInput.length - 1)
+                updateSearch()
+            }
+            else -> {
+                val char = Keyboard.getEventCharacter()
+                if (char.toInt() in 0x20..0x7e) {
+                    searchInput.append(char)
+                    updateSearch()
+                }
+            }
+        }
+    }
+    //</editor-fold>
+
     private fun checkInput() {
+        // Escape closes the search bar first, and must be released before it will close the overlay
         if (Keyboard.isKeyDown(Keyboard.KEY_ESCAPE)) {
-            isOpen = false
-            return
+            if (isSearching) {
+                stopSearch()
+                escapeHeld = true
+            } else if (!escapeHeld) {
+                isOpen = false
+                return
+            }
+        } else {
+            escapeHeld = false
         }
 
         // Mouse wheel scrolling
@@ -339,8 +503,18 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
                 needsTextUpdate = true
                 nextBlink = CURSOR_BLINK_SPEED * 1.6f // Last a little longer than usual after a deliberate keypress
 
-                // Load last command when user presses up on keyboard
+                // Ctrl+F toggles searching the scrollback; while searching, typing edits the search query instead
                 val keyPressed = Keyboard.getEventKey()
+                if (keyPressed == Keyboard.KEY_F && ctrlDown && table == null) {
+                    if (isSearching) stopSearch() else startSearch()
+                    continue
+                }
+                if (isSearching) {
+                    handleSearchKey(keyPressed, shiftDown)
+                    continue
+                }
+
+                // Load last command when user presses up on keyboard
                 if (keyPressed == Keyboard.KEY_UP && prevCommandNumber + 1 < Console.getNumPreviousCommands()) {
                     if(prevCommandNumber == -1) {
                         latestInput = currentInput.toString()
@@ -427,6 +601,28 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
                     continue
                 }
 
+                // While a table is shown, PageUp/Down page through it and Ctrl+number sorts by that column
+                val table = table
+                if (table != null) {
+                    if (keyPressed == Keyboard.KEY_PRIOR && !(ctrlDown || shiftDown)) {
+                        tablePage = (tablePage - 1).coerceAtLeast(0)
+                        needsTableUpdate = true
+                        continue
+                    } else if (keyPressed == Keyboard.KEY_NEXT && !(ctrlDown || shiftDown)) {
+                        tablePage = (tablePage + 1).coerceAtMost(table.getNumPages(tablePageSize) - 1)
+                        needsTableUpdate = true
+                        continue
+                    } else if (ctrlDown && keyPressed in Keyboard.KEY_1..Keyboard.KEY_9) {
+                        val column = keyPressed - Keyboard.KEY_1
+                        if (column < table.columns.size) {
+                            table.toggleSort(column)
+                            tablePage = 0
+                            needsTableUpdate = true
+                        }
+                        continue
+                    }
+                }
+
                 // PageUp/Down; scroll an entire page at once
                 if (keyPressed == Keyboard.KEY_PRIOR) {
                     if (ctrlDown || shiftDown)
@@ -463,9 +659,14 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
                     if (shiftDown) {
                         currentInput.insert(currentIndex, '\n')
                     }
+                    // Enter with nothing typed closes the current table
+                    else if (table != null && currentInput.isBlank()) {
+                        dismissTable()
+                    }
                     // Enter to execute current command
                     else {
                         val command = currentInput.toString()
+                        dismissTable()
                         when {
                             command.equals("exit", true) -> {
                                 isOpen = false
@@ -547,6 +748,79 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
                 vramText.color = getVRAMColor(gpuInfo)
             }
         }
+
+        if (needsTableUpdate) updateTableText()
+        updateCompileCheck(amount)
+    }
+
+    // Compiles RunCode input on a worker thread once the player stops typing, so errors show up before Enter is
+    // pressed. Successfully compiled scripts are cached by RunCode, so running them doesn't need to compile them again
+    private fun updateCompileCheck(amount: Float) {
+        val text = currentInput.toString()
+
+        // Show the result of a finished check, unless the input has changed since it started
+        val task = compileTask
+        if (task != null && task.isDone) {
+            compileTask = null
+            val error = try {
+                task.get()
+            } catch (ex: Exception) {
+                ex.toString()
+            }
+            if (text == compileTaskInput && error != null) {
+                compileStatus.text = "Compile error: ${error.replace('\n', ' ')}"
+                hasCompileError = true
+            }
+        }
+
+        if (text != compileCheckInput) {
+            compileCheckInput = text
+            compileCheckDelay = COMPILE_CHECK_DELAY
+            hasCompileError = false
+        }
+
+        if (compileTask != null || text == checkedInput || !text.startsWith("runcode ", true)) return
+        compileCheckDelay -= amount
+        if (compileCheckDelay > 0f) return
+
+        checkedInput = text
+        compileTaskInput = text
+        val script = text.substring("runcode ".length)
+        compileTask = compileExecutor.submit(Callable<String?> { RunCode.precompile(script) })
+    }
+
+    private fun updateTableText() {
+        needsTableUpdate = false
+        val table = table ?: return
+        val numPages = table.getNumPages(tablePageSize)
+        tablePage = tablePage.coerceIn(0, numPages - 1)
+        tableText.text = table.formatPage(tablePage, tablePageSize) +
+                "\n\nPage ${tablePage + 1}/$numPages (${table.numRows} rows)  |  PgUp/PgDn: change page" +
+                "  |  Ctrl+1-${Math.min(9, table.columns.size)}: sort by column  |  Enter: close table"
+    }
+
+    // Highlights every visible line containing a match, with the current match drawn brighter
+    private fun drawSearchHighlights(scrollbackTop: Float, minY: Float) {
+        val index = searchIndex ?: return
+        if (index.matches.isEmpty()) return
+
+        glDisable(GL_TEXTURE_2D)
+        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA)
+        glBegin(GL_QUADS)
+        for ((i, line) in index.matches.withIndex()) {
+            val top = scrollbackTop - index.getVisualStart(line) * fontSize
+            val bottom = top - index.getVisualLength(line) * fontSize
+            if (bottom > maxY || top < minY) continue
+
+            glColor(settings.outputColor, if (i == currentMatch) 0.35f else 0.12f, true)
+            glVertex2f(minX, bottom)
+            glVertex2f(minX, top)
+            glVertex2f(maxX, top)
+            glVertex2f(maxX, bottom)
+        }
+        glEnd()
+        glEnable(GL_TEXTURE_2D)
+        glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA)
     }
 
     private fun render() {
@@ -607,11 +881,20 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         glColorMask(true, true, true, true)
         glStencilFunc(GL_EQUAL, 1, 1)
         glStencilOp(GL_KEEP, GL_KEEP, GL_KEEP)
-        scrollback.draw(minX, minY + scrollback.height + scrollOffset)
+        // A table is drawn at the bottom with the end of the scrollback above it, so output printed just before or
+        // after the table (such as a command's preamble or filter hints) stays visible
+        val scrollbackTop = if (table != null) {
+            tableText.draw(minX, minY + tableText.height)
+            minY + tableText.height + fontSize + scrollback.height
+        } else minY + scrollback.height + scrollOffset
+        if (isSearching && table == null) drawSearchHighlights(scrollbackTop, minY)
+        scrollback.draw(minX, scrollbackTop)
         glDisable(GL_STENCIL_TEST)
 
         // Draw input prompt
-        query.draw(30f, 35f + inputHeight)
+        if (isSearching) searchText.draw(30f, 35f + inputHeight)
+        else if (hasCompileError) compileStatus.draw(30f, 35f + inputHeight)
+        else query.draw(30f, 35f + inputHeight)
         prompt.draw(30f, 15f + inputHeight)
         input.draw(30f + prompt.width, 15f + inputHeight)
 
@@ -627,7 +910,7 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         // Draw scrollbar
         glDisable(GL_TEXTURE_2D)
         glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA)
-        scrollbar.draw(maxX + 10f, minY, maxY - minY)
+        if (table == null) scrollbar.draw(maxX + 10f, minY, maxY - minY)
 
         // Draw scrollback bounds
         glLineWidth(1f)
@@ -7,9 +7,63 @@ import com.fs.starfarer.api.combat.CombatEngineAPI
 import com.fs.starfarer.api.input.InputEventAPI
 import org.lazywizard.console.BaseCommand.CommandContext
 import org.lazywizard.lazylib.StringUtils
-import java.util.*
+import java.util.ArrayDeque
+
+private const val FALLBACK_TABLE_ROWS = 10
+private const val MAX_QUEUED_LINES = 40
+private const val LINES_PER_MESSAGE = 4
+private const val MESSAGES_PER_FRAME = 2
+
+// Outside the overlay only the first few rows of a table are shown; the full table is available once it's opened
+private fun formatTableFallback(table: ConsoleTable<*>): String {
+    showTableOnOpen(table)
+    val remaining = table.numRows - FALLBACK_TABLE_ROWS
+    val firstPage = table.formatPage(0, FALLBACK_TABLE_ROWS)
+    return if (remaining > 0) "\n$firstPage\n... $remaining more rows, open the console to view" else "\n$firstPage"
+}
+
+/**
+ * Coalesces console output shown outside of the overlay into a few multi-line messages per frame, so a command that
+ * prints thousands of lines doesn't flood the message list. Lines past [MAX_QUEUED_LINES] are only summarized; the
+ * full output is still available in the overlay's scrollback.
+ */
+private class MessageQueue(private val wrapWidth: Int) {
+    private val pending = ArrayDeque<String>()
+    private var overflow = 0
+
+    fun enqueue(output: String) {
+        for (line in output.split('\n')) {
+            if (line.isEmpty()) continue
+            if (pending.size < MAX_QUEUED_LINES) pending.add(line) else overflow++
+        }
+    }
+
+    fun deliver(show: (String) -> Unit) {
+        var sent = 0
+        while (sent < MESSAGES_PER_FRAME && pending.isNotEmpty()) {
+            // Lines are only wrapped when they're actually delivered
+            val message = StringBuilder()
+            var lines = 0
+            while (lines < LINES_PER_MESSAGE && pending.isNotEmpty()) {
+                if (lines > 0) message.append('\n')
+                message.append(StringUtils.wrapString(pending.poll(), wrapWidth).trimEnd())
+                lines++
+            }
+
+            show(message.toString())
+            sent++
+        }
+
+        if (pending.isEmpty() && overflow > 0 && sent < MESSAGES_PER_FRAME) {
+            show("... ${CommandUtils.format(overflow)} more lines, open the console to view")
+            overflow = 0
+        }
+    }
+}
 
 internal class ConsoleCampaignListener : CampaignInputListener, ConsoleListener {
+    private val messages = MessageQueue(100)
+
     override fun getListenerInputPriority(): Int = 9999
 
     override fun processCampaignInputPreCore(events: MutableList<InputEventAPI>) {
@@ -21,6 +75,7 @@ internal class ConsoleCampaignListener : CampaignInputListener, ConsoleListener
         }
 
         Console.advance(this)
+        messages.deliver { Global.getSector().campaignUI.addMessage(it, Console.getSettings().outputColor) }
     }
 
     override fun processCampaignInputPreFleetControl(events: List<InputEventAPI>) {}
@@ -28,15 +83,13 @@ internal class ConsoleCampaignListener : CampaignInputListener, ConsoleListener
     override fun processCampaignInputPostCore(events: List<InputEventAPI>) {}
 
     override fun showOutput(output: String): Boolean {
-        for (tmp in output.split('\n').dropLastWhile { it.isEmpty() }.toTypedArray()) {
-            val message = StringUtils.wrapString(tmp, 100)
-            Global.getSector().campaignUI.addMessage(message, Console.getSettings().outputColor)
-        }
-
+        messages.enqueue(output)
         addToHistory(output)
         return true
     }
 
+    override fun showTable(table: ConsoleTable<*>) = showOutput(formatTableFallback(table))
+
     override fun getContext(): CommandContext {
         return if (Global.getSector().campaignUI?.currentInteractionDialog?.interactionTarget?.market != null) {
             CommandContext.CAMPAIGN_MARKET
@@ -46,6 +99,7 @@ internal class ConsoleCampaignListener : CampaignInputListener, ConsoleListener
 
 internal class ConsoleCombatListener : BaseEveryFrameCombatPlugin(), ConsoleListener {
     private lateinit var context: CommandContext
+    private val messages = MessageQueue(80)
 
     override fun processInputPreCoreControls(amount: Float, events: MutableList<InputEventAPI>) {
         if (!::context.isInitialized || Global.getCombatEngine().playerShip == null) return
@@ -57,6 +111,8 @@ internal class ConsoleCombatListener : BaseEveryFrameCombatPlugin(), ConsoleList
 
         // Advance the console and all combat commands
         Console.advance(this)
+        val ui = Global.getCombatEngine().combatUI ?: return
+        messages.deliver { ui.addMessage(0, Console.getSettings().outputColor, it) }
     }
 
     override fun init(engine: CombatEngineAPI) {
@@ -72,17 +128,16 @@ internal class ConsoleCombatListener : BaseEveryFrameCombatPlugin(), ConsoleList
 
     override fun getContext() = context
 
+    override fun showTable(table: ConsoleTable<*>): Boolean {
+        if (Global.getCombatEngine()?.combatUI == null) return false
+        return showOutput(formatTableFallback(table))
+    }
+
     override fun showOutput(output: String): Boolean {
-        val ui = Global.getCombatEngine()?.combatUI ?: return false
+        if (Global.getCombatEngine()?.combatUI == null) return false
 
         // Fallback if the console overlay doesn't exist for some reason
-        val messages = output.split('\n').dropLastWhile { it.isEmpty() }.toTypedArray()
-        Arrays.asList(*messages).reverse()
-        for (tmp in messages) {
-            val message = StringUtils.wrapString(tmp, 80)
-            ui.addMessage(0, Console.getSettings().outputColor, message)
-        }
-
+        messages.enqueue(output)
         addToHistory(output)
         return true
     }
@@ -12,6 +12,10 @@ import kotlin.reflect.KProperty
     To add a new setting:
      - Add a var here, ensuring it uses one of the common data-backed delegates (IntPref, StringPref, etc)
      - Update the Settings command's pop-up dialog to support changing it
+
+    Single changes are written to disk immediately, so they survive the game closing at any time. Changes made between
+    beginTransaction() and commitTransaction() are held in memory and saved together when the outermost transaction is
+    committed, so a batch of changes (such as the Settings dialog) only causes one write.
  */
 object ConsoleSettings {
     private val settings = JSONUtils.loadCommonJSON(CommonStrings.PATH_COMMON_DATA)
@@ -50,10 +54,51 @@ object ConsoleSettings {
         }
 
     fun resetToDefaults() {
-        JSONUtils.clear(settings)
-        settings.save()
+        synchronized(settings) {
+            JSONUtils.clear(settings)
+            isDirty = true
+        }
+        flush()
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Persistence">
+    private var transactionDepth = 0
+    private var isDirty = false
+
+    /** Holds all setting changes in memory until the matching [commitTransaction]. Transactions can be nested. */
+    fun beginTransaction() {
+        synchronized(settings) { transactionDepth++ }
+    }
+
+    /** Ends a transaction started with [beginTransaction], saving all changes in a single write if it was the outermost. */
+    fun commitTransaction() {
+        synchronized(settings) {
+            if (transactionDepth > 0) transactionDepth--
+            if (transactionDepth > 0 || !isDirty) return
+        }
+        flush()
     }
 
+    /** Immediately writes any unsaved changes to common data. */
+    fun flush() {
+        synchronized(settings) {
+            if (!isDirty) return
+
+            isDirty = false
+            settings.save()
+        }
+    }
+
+    private fun store(key: String, value: Any) {
+        synchronized(settings) {
+            settings.put(key, value)
+            isDirty = true
+            if (transactionDepth > 0) return
+        }
+        flush()
+    }
+    //</editor-fold>
+
     //<editor-fold defaultstate="collapsed" desc="Delegate implementations">
     private class StringPref(val key: String, default: String) {
         private var field = settings.optString(key, default)
@@ -61,8 +106,7 @@ object ConsoleSettings {
         operator fun getValue(consoleSettings: ConsoleSettings, property: KProperty<*>): String = field
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: String) {
             field = value
-            settings.put(key, value)
-            settings.save()
+            store(key, value)
         }
     }
 
@@ -72,8 +116,7 @@ object ConsoleSettings {
         operator fun getValue(consoleSettings: ConsoleSettings, property: KProperty<*>): Boolean = field
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Boolean) {
             field = value
-            settings.put(key, value)
-            settings.save()
+            store(key, value)
         }
     }
 
@@ -83,8 +126,7 @@ object ConsoleSettings {
         operator fun getValue(consoleSettings: ConsoleSettings, property: KProperty<*>): Int = field
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Int) {
             field = value
-            settings.put(key, value)
-            settings.save()
+            store(key, value)
         }
     }
 
@@ -94,8 +136,7 @@ object ConsoleSettings {
         operator fun getValue(consoleSettings: ConsoleSettings, property: KProperty<*>): Float = field
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Float) {
             field = value
-            settings.put(key, value)
-            settings.save()
+            store(key, value)
         }
     }
 
@@ -105,8 +146,7 @@ object ConsoleSettings {
         operator fun getValue(consoleSettings: ConsoleSettings, property: KProperty<*>): Float = field
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Float) {
             field = value * scaling
-            settings.put(key, value)
-            settings.save()
+            store(key, value)
         }
     }
 
@@ -123,8 +163,7 @@ object ConsoleSettings {
         operator fun getValue(consoleSettings: ConsoleSettings, property: KProperty<*>): Color = field
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Color) {
             field = value
-            settings.put(key, asString(value))
-            settings.save()
+            store(key, asString(value))
         }
     }
 
@@ -138,8 +177,7 @@ object ConsoleSettings {
         operator fun getValue(consoleSettings: ConsoleSettings, property: KProperty<*>): T = field
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: T) {
             field = value
-            settings.put(key, value.name)
-            settings.save()
+            store(key, value.name)
         }
     }
 
@@ -162,8 +200,7 @@ object ConsoleSettings {
         operator fun getValue(consoleSettings: ConsoleSettings, property: KProperty<*>): Keystroke = field
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Keystroke) {
             field = value
-            settings.put(key, asString(value))
-            settings.save()
+            store(key, asString(value))
         }
     }
     //</editor-fold>
@@ -0,0 +1,91 @@
+package org.lazywizard.console
+
+/**
+ * Line index over the console overlay's scrollback, used by the find (Ctrl+F) feature.
+ *
+ * Lines are indexed once as output is appended, along with how many wrapped lines each takes up on screen. Searches
+ * that extend the previous query only re-check lines that already matched, and new output is only checked against
+ * the current query, so the history is never rescanned on each keystroke.
+ *
+ * @param countWrappedLines Returns how many lines a single line of text occupies once word-wrapped by the overlay.
+ */
+internal class ScrollbackIndex(private val countWrappedLines: (String) -> Int) {
+    private val rawLines = ArrayList<String>()
+    private val lowerLines = ArrayList<String>()
+    private val visualStarts = ArrayList<Int>()
+    private var totalVisualLines = 0
+
+    /** The current (lowercase) search query. */
+    var query = ""
+        private set
+
+    /** Indices of all lines containing [query], in ascending order. */
+    val matches = ArrayList<Int>()
+
+    fun clear() {
+        rawLines.clear()
+        lowerLines.clear()
+        visualStarts.clear()
+        matches.clear()
+        totalVisualLines = 0
+    }
+
+    fun append(text: String) {
+        if (text.isEmpty()) return
+
+        // The first segment continues whatever line was last indexed
+        val segments = text.split('\n')
+        var first = segments[0]
+        if (rawLines.isNotEmpty()) {
+            val last = rawLines.size - 1
+            first = rawLines[last] + first
+            removeLine(last)
+        }
+
+        val firstNew = rawLines.size
+        addLine(first)
+        for (i in 1 until segments.size) addLine(segments[i])
+
+        // Only the new lines need to be checked against the active query
+        if (query.isNotEmpty()) {
+            for (i in firstNew until lowerLines.size) if (lowerLines[i].contains(query)) matches.add(i)
+        }
+    }
+
+    fun search(newQuery: String) {
+        val lower = newQuery.toLowerCase()
+        when {
+            lower.isEmpty() -> matches.clear()
+            // Typing more of the same query can only narrow the existing matches
+            query.isNotEmpty() && lower.startsWith(query) -> matches.retainAll { lowerLines[it].contains(lower) }
+            else -> {
+                matches.clear()
+                for (i in lowerLines.indices) if (lowerLines[i].contains(lower)) matches.add(i)
+            }
+        }
+
+        query = lower
+    }
+
+    /** The on-screen line (counting from the top of the scrollback) that [line] starts on. */
+    fun getVisualStart(line: Int): Int = visualStarts[line]
+
+    /** How many on-screen lines [line] occupies after word-wrapping. */
+    fun getVisualLength(line: Int): Int =
+        (if (line + 1 < visualStarts.size) visualStarts[line + 1] else totalVisualLines) - visualStarts[line]
+
+    private fun addLine(line: String) {
+        rawLines.add(line)
+        lowerLines.add(line.toLowerCase())
+        visualStarts.add(totalVisualLines)
+        totalVisualLines += countWrappedLines(line)
+    }
+
+    private fun removeLine(line: Int) {
+        totalVisualLines = visualStarts[line]
+        rawLines.removeAt(line)
+        lowerLines.removeAt(line)
+        visualStarts.removeAt(line)
+        if (matches.isNotEmpty() && matches[matches.size - 1] == line) matches.removeAt(matches.size - 1)
+    }
+}
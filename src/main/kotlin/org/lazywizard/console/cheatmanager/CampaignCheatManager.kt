@@ -0,0 +1,125 @@
+package org.lazywizard.console.cheatmanager
+
+import com.fs.starfarer.api.EveryFrameScript
+import com.fs.starfarer.api.Global
+import com.fs.starfarer.api.campaign.SectorAPI
+import java.lang.ref.WeakReference
+
+/**
+ * The campaign counterpart to [CombatCheatManager]. A single transient script runs every active campaign cheat, and is
+ * removed again once the last cheat is disabled.
+ *
+ * Cheat state lives in the script itself, so loading a save or starting a new game always starts with every campaign
+ * cheat disabled, as the transient script isn't saved.
+ */
+class CampaignCheatManager private constructor(private val sector: SectorAPI) : EveryFrameScript {
+    private val cheats = LinkedHashMap<String, CampaignCheatData>()
+    private var wasPaused = false
+    private var lastFrameNanos = 0L
+
+    companion object PluginManager {
+        private var current = WeakReference<CampaignCheatManager>(null)
+
+        private fun getManager(create: Boolean): CampaignCheatManager? {
+            val sector = Global.getSector() ?: return null
+            val manager = current.get()
+            if (manager != null && manager.sector === sector && !manager.isDone()) return manager
+            if (!create) return null
+
+            val newManager = CampaignCheatManager(sector)
+            sector.addTransientScript(newManager)
+            current = WeakReference(newManager)
+            return newManager
+        }
+
+        @JvmStatic
+        fun enableCheat(id: String, statusDesc: String, plugin: CampaignCheatPlugin) {
+            val manager = getManager(true)!!
+            manager.cheats.remove(id)?.plugin?.onEnd(manager.sector)
+
+            val data = CampaignCheatData(statusDesc, plugin)
+            manager.cheats[id] = data
+            plugin.onStart(manager.sector)
+        }
+
+        @JvmStatic
+        fun disableCheat(id: String) {
+            val manager = getManager(false) ?: return
+            manager.cheats.remove(id)?.plugin?.onEnd(manager.sector)
+        }
+
+        @JvmStatic
+        fun isEnabled(id: String): Boolean = getManager(false)?.cheats?.containsKey(id) ?: false
+
+        /**
+         * Returns how often each active campaign cheat has run and how much frame time it has used, one cheat per line.
+         * Returns an empty string if no cheats are active.
+         */
+        @JvmStatic
+        fun getCostReport(): String = getManager(false)?.cheats?.values?.sortedBy { it.statusDesc }
+            ?.joinToString("\n") { it.cost.describe(it.statusDesc, it.plugin.getInterval()) } ?: ""
+    }
+
+    override fun isDone(): Boolean = cheats.isEmpty()
+
+    // Paused frames only record that the game was paused, see advance()
+    override fun runWhilePaused(): Boolean = true
+
+    override fun advance(amount: Float) {
+        val now = System.nanoTime()
+        val realAmount = if (lastFrameNanos == 0L) 0f else (now - lastFrameNanos) / 1_000_000_000f
+        lastFrameNanos = now
+
+        // Cargo can only change while paused through the player's own actions (trading, dialog rewards, etc),
+        // so rather than polling every paused frame, cheats are told to accept those changes once play resumes
+        if (sector.isPaused) {
+            wasPaused = true
+            return
+        }
+
+        val resumed = wasPaused
+        wasPaused = false
+        for (data in cheats.values.toList()) data.advance(amount, realAmount, resumed)
+    }
+}
+
+private class CampaignCheatData(val statusDesc: String, val plugin: CampaignCheatPlugin) {
+    val cost = CheatCost()
+    private var sinceLastTick = 0f
+
+    fun advance(amount: Float, realAmount: Float, resumed: Boolean) {
+        cost.addActiveTime(realAmount)
+
+        sinceLastTick += amount
+        if (!resumed && sinceLastTick < plugin.getInterval()) return
+
+        val startTime = System.nanoTime()
+        if (resumed) plugin.onResume()
+        if (sinceLastTick >= plugin.getInterval()) {
+            plugin.advance(sinceLastTick)
+            sinceLastTick = 0f
+        }
+
+        cost.addRun(System.nanoTime() - startTime)
+    }
+}
+
+abstract class CampaignCheatPlugin {
+    /** Called once per frame (or every [getInterval] seconds) while the cheat is active and the game is unpaused. */
+    abstract fun advance(amount: Float)
+
+    /** Called when cheat is toggled on, before [advance] is called. */
+    open fun onStart(sector: SectorAPI) {}
+
+    /** Called when cheat is toggled off or replaced. Not called when the game is reloaded! */
+    open fun onEnd(sector: SectorAPI) {}
+
+    /**
+     * Called on the first unpaused frame after the game was paused, before [advance]. Cheats that restore a value to a
+     * remembered amount should accept any changes the player made while paused here.
+     */
+    open fun onResume() {}
+
+    /** How many seconds of campaign time should pass between calls to [advance]. Defaults to 0, meaning every frame. */
+    open fun getInterval(): Float = 0f
+}
@@ -4,6 +4,8 @@ import com.fs.starfarer.api.Global
 import com.fs.starfarer.api.combat.BaseEveryFrameCombatPlugin
 import com.fs.starfarer.api.combat.CombatEngineAPI
 import com.fs.starfarer.api.combat.ShipAPI
+import com.fs.starfarer.api.combat.ShipSystemAPI
+import com.fs.starfarer.api.combat.WeaponAPI
 import com.fs.starfarer.api.input.InputEventAPI
 import org.lazywizard.console.Console
 
@@ -12,10 +14,17 @@ private typealias CData = MutableMap<String, CombatCheatData>
 class CombatCheatManager : BaseEveryFrameCombatPlugin() {
     private val icon = Global.getSettings().getSpriteName("ui", "console_status")
     private val plugins: CData by lazy(LazyThreadSafetyMode.NONE) { getPlugins() }
+    private val partition = ShipPartition()
+    private var statusDesc = ""
+    private var statusVersion = -1
+    private var lastFrameNanos = 0L
 
     companion object PluginManager {
         private const val DATA_ID = "lw_console_cheats"
 
+        /** Incremented whenever a cheat is enabled or disabled, so the status text is only rebuilt when it changes. */
+        private var cheatSetVersion = 0
+
         @Suppress("UNCHECKED_CAST")
         private fun getPlugins(): CData {
             return Global.getCombatEngine().customData.getOrPut(DATA_ID) { HashMap<String, CheatPlugin>() } as CData
@@ -28,17 +37,26 @@ class CombatCheatManager : BaseEveryFrameCombatPlugin() {
 
             val data = CombatCheatData(id, statusDesc, plugin, appliesTo)
             plugins[id] = data
+            cheatSetVersion++
             data.onStart()
         }
 
         @JvmStatic
         fun disableCheat(id: String) {
             getPlugins().remove(id)?.unapply()
+            cheatSetVersion++
         }
 
         @JvmStatic
         fun isEnabled(id: String) = getPlugins().containsKey(id)
 
+        /**
+         * Returns how often each active combat cheat has run and how much frame time it has used, one cheat per line.
+         * Returns an empty string if no cheats are active.
+         */
+        @JvmStatic
+        fun getCostReport(): String = getPlugins().values.sortedBy { it.statusDesc }.joinToString("\n") { it.describeCost() }
+
         @JvmStatic
         fun getDefaultTarget(): CheatTarget = Console.getSettings().defaultCombatCheatTarget
 
@@ -61,28 +79,165 @@ class CombatCheatManager : BaseEveryFrameCombatPlugin() {
         }
     }
 
-    private fun buildStatusDesc(): String = plugins.values.sortedBy { it.statusDesc }.joinToString { it.statusDesc }
+    private fun getStatusDesc(): String {
+        if (statusVersion != cheatSetVersion) {
+            statusDesc = plugins.values.sortedBy { it.statusDesc }.joinToString { it.statusDesc }
+            statusVersion = cheatSetVersion
+        }
+
+        return statusDesc
+    }
 
     override fun advance(amount: Float, events: List<InputEventAPI>) {
         if (plugins.isEmpty()) return
 
-        Global.getCombatEngine().maintainStatusForPlayerShip(DATA_ID, icon, "Active cheats", buildStatusDesc(), true)
-        for (data in plugins.values) data.advance(amount, events)
+        val engine = Global.getCombatEngine()
+        engine.maintainStatusForPlayerShip(DATA_ID, icon, "Active cheats", getStatusDesc(), true)
+
+        // Real time is tracked separately, as game time doesn't pass while paused
+        val now = System.nanoTime()
+        val realAmount = if (lastFrameNanos == 0L) 0f else (now - lastFrameNanos) / 1_000_000_000f
+        lastFrameNanos = now
+
+        // Ships are sorted by side once per frame, and every active cheat shares the result
+        partition.invalidate()
+        val isPaused = engine.isPaused
+        for (data in plugins.values) data.advance(amount, realAmount, isPaused, events, partition)
+    }
+}
+
+/**
+ * Ships in the current battle, split by [CheatTarget]. Only rebuilt the first time it is queried each frame.
+ *
+ * Each group also has a generation that is incremented whenever its members change, so cheats only need to look for
+ * added or removed ships on frames where something actually changed.
+ */
+private class ShipPartition {
+    private val targets = CheatTarget.values()
+    private var current = Array(targets.size) { ArrayList<ShipAPI>() }
+    private var previous = Array(targets.size) { ArrayList<ShipAPI>() }
+    private val generations = IntArray(targets.size)
+    private var isValid = false
+
+    fun invalidate() {
+        isValid = false
+    }
+
+    operator fun get(target: CheatTarget): List<ShipAPI> {
+        if (!isValid) rebuild()
+        return current[target.ordinal]
+    }
+
+    fun getGeneration(target: CheatTarget): Int {
+        if (!isValid) rebuild()
+        return generations[target.ordinal]
+    }
+
+    private fun rebuild() {
+        // Reuse last frame's lists for this frame's results
+        val tmp = previous
+        previous = current
+        current = tmp
+        for (list in current) list.clear()
+
+        val engine = Global.getCombatEngine()
+        val playerShip = engine.playerShip
+        for (ship in engine.ships) {
+            current[CheatTarget.ALL.ordinal].add(ship)
+            when (ship.owner) {
+                0 -> current[CheatTarget.FLEET.ordinal].add(ship)
+                1 -> current[CheatTarget.ENEMY.ordinal].add(ship)
+            }
+            if (ship === playerShip) current[CheatTarget.PLAYER.ordinal].add(ship)
+        }
+
+        // The engine keeps ships in a stable order between frames, so this is a single linear pass
+        for (i in targets.indices) if (!isSameShips(current[i], previous[i])) generations[i]++
+
+        isValid = true
+    }
+
+    private fun isSameShips(first: List<ShipAPI>, second: List<ShipAPI>): Boolean {
+        if (first.size != second.size) return false
+        for (i in first.indices) if (first[i] !== second[i]) return false
+        return true
     }
 }
 
 private data class CombatCheatData(val id: String, val statusDesc: String, val plugin: CheatPlugin, val appliesTo: CheatTarget?) {
-    fun appliesTo(ship: ShipAPI): Boolean = CombatCheatManager.isTarget(ship, appliesTo)
+    companion object {
+        private const val GOLDEN_RATIO_CONJUGATE = 0.618034f
+        private var nextPhase = 0f
+    }
 
-    fun advance(amount: Float, events: List<InputEventAPI>) {
-        if (!plugin.runWhilePaused() && Global.getCombatEngine().isPaused) return
+    private val tracked = LinkedHashSet<ShipAPI>()
+    private var lastGeneration = -1
+    private var sinceLastTick: Float
+    private var sinceLastPausedTick: Float
+    private val cost = CheatCost()
 
-        plugin.advance(amount, events)
-        if (appliesTo != null) for (ship in Global.getCombatEngine().ships) if (appliesTo(ship)) plugin.advance(ship, amount)
+    init {
+        // Spread out cheats with the same interval so they don't all run on the same frame
+        nextPhase = (nextPhase + GOLDEN_RATIO_CONJUGATE) % 1f
+        sinceLastTick = plugin.getInterval() * nextPhase
+        sinceLastPausedTick = plugin.getPausedInterval() * nextPhase
+    }
+
+    fun advance(amount: Float, realAmount: Float, isPaused: Boolean, events: List<InputEventAPI>, ships: ShipPartition) {
+        cost.addActiveTime(realAmount)
+
+        val elapsed: Float
+        if (isPaused) {
+            if (!plugin.runWhilePaused()) return
+
+            sinceLastPausedTick += realAmount
+            if (sinceLastPausedTick < plugin.getPausedInterval()) return
+            sinceLastPausedTick = 0f
+            elapsed = amount
+        } else {
+            sinceLastTick += amount
+            if (sinceLastTick < plugin.getInterval()) return
+            elapsed = sinceLastTick
+            sinceLastTick = 0f
+        }
+
+        val startTime = System.nanoTime()
+        plugin.advance(elapsed, events)
+        if (appliesTo != null) {
+            updateTracked(ships, appliesTo)
+            for (ship in ships[appliesTo]) plugin.advance(ship, elapsed)
+        }
+
+        cost.addRun(System.nanoTime() - startTime)
+    }
+
+    fun describeCost(): String = cost.describe(statusDesc, plugin.getInterval())
+
+    private fun updateTracked(ships: ShipPartition, target: CheatTarget) {
+        val generation = ships.getGeneration(target)
+        if (generation == lastGeneration) return
+
+        lastGeneration = generation
+        val targets = ships[target]
+        if (tracked.isNotEmpty()) {
+            val stillTargeted = HashSet(targets)
+            val iter = tracked.iterator()
+            while (iter.hasNext()) {
+                val ship = iter.next()
+                if (ship !in stillTargeted) {
+                    iter.remove()
+                    plugin.onShipRemoved(ship)
+                }
+            }
+        }
+
+        for (ship in targets) if (tracked.add(ship)) plugin.onShipAdded(ship)
     }
 
     fun unapply() {
-        if (appliesTo != null) for (ship in Global.getCombatEngine().ships) if (appliesTo(ship)) plugin.unapply(ship)
+        for (ship in tracked) plugin.unapply(ship)
+        tracked.clear()
+        lastGeneration = -1
     }
 
     fun onStart() {
@@ -95,6 +250,29 @@ private data class CombatCheatData(val id: String, val statusDesc: String, val p
     }
 }
 
+/** Tracks how often a cheat has run and how much frame time it has used. */
+internal class CheatCost {
+    private var runs = 0L
+    private var totalNanos = 0L
+    private var activeTime = 0f
+
+    fun addActiveTime(realAmount: Float) {
+        activeTime += realAmount
+    }
+
+    fun addRun(nanos: Long) {
+        totalNanos += nanos
+        runs++
+    }
+
+    fun describe(statusDesc: String, interval: Float): String {
+        val totalMs = totalNanos / 1_000_000f
+        return "$statusDesc: ${if (interval > 0f) "every ${"%.2f".format(interval)}s" else "every frame"}, " +
+                "$runs runs, ${"%.3f".format(if (runs > 0) totalMs / runs else 0f)}ms per run, " +
+                "${"%.3f".format(if (activeTime > 0f) totalMs / activeTime else 0f)}ms per second"
+    }
+}
+
 enum class CheatTarget {
     PLAYER,
     FLEET,
@@ -103,13 +281,41 @@ enum class CheatTarget {
 }
 
 abstract class CheatPlugin {
+    companion object StateChecks {
+        /** Whether [weapon] uses ammo and currently has less than its maximum. */
+        @JvmStatic
+        fun isMissingAmmo(weapon: WeaponAPI): Boolean = weapon.usesAmmo() && weapon.ammo < weapon.maxAmmo
+
+        /** Whether [system] uses charges and currently has less than its maximum. */
+        @JvmStatic
+        fun isMissingAmmo(system: ShipSystemAPI?): Boolean = system != null && system.ammo < system.maxAmmo
+
+        /** Whether [value] has dropped below [target] by more than [tolerance]. */
+        @JvmStatic
+        @JvmOverloads
+        fun isBelow(value: Float, target: Float, tolerance: Float = 0.0001f): Boolean = value < target - tolerance
+    }
+
     /** Called once per frame while the command is active, before [advance] is called on applicable ships. */
     open fun advance(amount: Float, events: List<@JvmSuppressWildcards InputEventAPI>) {}
 
     /** Called once per applicable ship per frame while the command is active. */
     open fun advance(ship: ShipAPI, amount: Float) {}
 
-    /** Called when cheat is toggled off. Do not rely on this being called! */
+    /**
+     * Called once when a ship becomes affected by this cheat, either when it's first enabled or when a new ship
+     * deploys, before [advance] is called on that ship. Persistent effects such as stat modifiers should be applied
+     * here rather than every frame.
+     */
+    open fun onShipAdded(ship: ShipAPI) {}
+
+    /**
+     * Called once when a ship is no longer affected by this cheat while it's still active, for example when it leaves
+     * the battle or the player switches ships. Not called when the cheat is toggled off; see [unapply].
+     */
+    open fun onShipRemoved(ship: ShipAPI) {}
+
+    /** Called when cheat is toggled off, on every ship [onShipAdded] was called for. Do not rely on this being called! */
     open fun unapply(ship: ShipAPI) {}
 
     /** Called when cheat is toggled on, before [advance] is called on any ships. */
@@ -120,4 +326,17 @@ abstract class CheatPlugin {
 
     /** Whether the [advance] methods should be called while the game is paused. */
     abstract fun runWhilePaused(): Boolean
+
+    /**
+     * How many seconds of combat should pass between calls to the [advance] methods. Defaults to 0, meaning every
+     * frame. When larger, `amount` is the total time since the last call, and the console staggers cheats with the
+     * same interval so they don't all run on the same frame.
+     */
+    open fun getInterval(): Float = 0f
+
+    /**
+     * How many real seconds should pass between calls to the [advance] methods while the game is paused. Only used if
+     * [runWhilePaused] returns true. Defaults to 0, meaning every frame.
+     */
+    open fun getPausedInterval(): Float = 0f
 }